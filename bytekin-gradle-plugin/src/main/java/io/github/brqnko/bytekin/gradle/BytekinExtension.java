@@ -0,0 +1,32 @@
+package io.github.brqnko.bytekin.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * The {@code bytekin} block of a build script
+ */
+public abstract class BytekinExtension {
+
+    /**
+     * The names of the classes annotated with {@link io.github.brqnko.bytekin.injection.ModifyClass}
+     */
+    public abstract ListProperty<String> getHookClasses();
+
+    /**
+     * A mapping in the format of {@link io.github.brqnko.bytekin.mapping.impl.TextMappingProvider}
+     */
+    public abstract RegularFileProperty getMappingFile();
+
+    /**
+     * Whether the jars of the runtime classpath are woven as well, false by default
+     */
+    public abstract Property<Boolean> getWeaveDependencies();
+
+    /**
+     * The jmods of the JDK to weave for jlink, such as {@code $JAVA_HOME/jmods}. Without it no jmod is woven.
+     */
+    public abstract DirectoryProperty getJmodDirectory();
+}
@@ -0,0 +1,73 @@
+package io.github.brqnko.bytekin.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Weaves the jmods of a JDK with {@link JmodWeaver}, the output directory goes ahead of the original jmods on the
+ * module path of jlink
+ */
+@CacheableTask
+public abstract class BytekinJmodTask extends DefaultTask {
+
+    @InputDirectory
+    @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getJmodDirectory();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getHookClasspath();
+
+    @Input
+    public abstract ListProperty<String> getHookClasses();
+
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getMappingFile();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void weave() throws IOException {
+        if (!getJmodDirectory().isPresent()) {
+            return;
+        }
+
+        Path output = getOutputDirectory().get().getAsFile().toPath();
+        try (Stream<Path> previous = Files.list(output)) {
+            for (Path file : (Iterable<Path>) previous::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        File mappingFile = getMappingFile().isPresent() ? getMappingFile().get().getAsFile() : null;
+        try (HookConfiguration configuration = new HookConfiguration(getHookClasspath(), getHookClasses().get(), mappingFile)) {
+            JmodWeaver weaver = new JmodWeaver(configuration.getTransformer(), configuration.getHookLoader());
+            List<String> modules = weaver.weave(getJmodDirectory().get().getAsFile().toPath(), output);
+
+            getLogger().info("Wove the modules {}", modules);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.brqnko.bytekin.gradle;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Jar;
+
+import java.io.File;
+import java.util.Collections;
+
+/**
+ * Adds the {@code bytekin} extension and the {@value #TASK_NAME} task, which weaves the main classes of a Java
+ * project into {@code build/bytekin}. The {@value #JMOD_TASK_NAME} task weaves the jmods of a JDK into
+ * {@code build/bytekin-jmods} for jlink.
+ * <p>
+ * The woven classes are written to {@code build/bytekin/classes} and the woven dependencies to
+ * {@code build/bytekin/jars}, the regular {@code jar} task and runtime classpath keep the classes as compiled. The
+ * {@value #JAR_TASK_NAME} task packs the woven classes and the resources into a jar with the {@code woven}
+ * classifier. To run the woven classes, put {@code build/bytekin/classes} ahead of the main classes on the
+ * classpath, and the jars of {@code build/bytekin/jars} in place of the dependencies they were woven from.
+ */
+public class BytekinPlugin implements Plugin<Project> {
+
+    public static final String EXTENSION_NAME = "bytekin";
+    public static final String TASK_NAME = "weaveClasses";
+    public static final String JMOD_TASK_NAME = "weaveJmods";
+    public static final String JAR_TASK_NAME = "wovenJar";
+
+    @Override
+    public void apply(Project project) {
+        BytekinExtension extension = project.getExtensions().create(EXTENSION_NAME, BytekinExtension.class);
+        extension.getWeaveDependencies().convention(false);
+
+        project.getPlugins().withType(JavaPlugin.class, plugin -> {
+            SourceSet main = project.getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+
+            TaskProvider<BytekinWeaveTask> weaveTask = project.getTasks().register(TASK_NAME, BytekinWeaveTask.class, task -> {
+                task.setGroup("build");
+                task.setDescription("Applies the bytekin transformations to the compiled classes.");
+
+                task.getClassesDirs().from(main.getOutput().getClassesDirs());
+                task.getJars().from(extension.getWeaveDependencies().map(weave -> weave
+                        ? main.getRuntimeClasspath().filter(file -> file.getName().endsWith(".jar"))
+                        : Collections.<File>emptyList()));
+                task.getHookClasspath().from(main.getRuntimeClasspath());
+                task.getHookClasses().set(extension.getHookClasses());
+                task.getMappingFile().set(extension.getMappingFile());
+                task.getOutputDirectory().set(project.getLayout().getBuildDirectory().dir("bytekin"));
+            });
+
+            project.getTasks().register(JAR_TASK_NAME, Jar.class, task -> {
+                task.setGroup("build");
+                task.setDescription("Assembles a jar of the woven classes and the resources.");
+
+                task.getArchiveClassifier().set("woven");
+                task.from(weaveTask.flatMap(weave -> weave.getOutputDirectory().dir(ClassWeaver.CLASSES_DIRECTORY)));
+                task.from(project.getTasks().named(main.getProcessResourcesTaskName()));
+            });
+
+            project.getTasks().register(JMOD_TASK_NAME, BytekinJmodTask.class, task -> {
+                task.setGroup("build");
+                task.setDescription("Applies the bytekin transformations to the jmods of a JDK for jlink.");
+                task.onlyIf(t -> extension.getJmodDirectory().isPresent());
+
+                task.getJmodDirectory().set(extension.getJmodDirectory());
+                task.getHookClasspath().from(main.getRuntimeClasspath());
+                task.getHookClasses().set(extension.getHookClasses());
+                task.getMappingFile().set(extension.getMappingFile());
+                task.getOutputDirectory().set(project.getLayout().getBuildDirectory().dir("bytekin-jmods"));
+            });
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.brqnko.bytekin.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Applies the transformations of the hook classes to compiled classes and jars at build time.
+ * <p>
+ * The task is cacheable, its outputs only depend on the classes, the hook classes and the mapping. When it runs,
+ * {@link ClassWeaver} only weaves the entries whose bytes or hooks changed since the previous output.
+ */
+@CacheableTask
+public abstract class BytekinWeaveTask extends DefaultTask {
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @IgnoreEmptyDirectories
+    public abstract ConfigurableFileCollection getClassesDirs();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getJars();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getHookClasspath();
+
+    @Input
+    public abstract ListProperty<String> getHookClasses();
+
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getMappingFile();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void weave() throws IOException {
+        File mappingFile = getMappingFile().isPresent() ? getMappingFile().get().getAsFile() : null;
+        try (HookConfiguration configuration = new HookConfiguration(getHookClasspath(), getHookClasses().get(), mappingFile)) {
+            ClassWeaver weaver = new ClassWeaver(configuration.getTransformer(), configuration.getConfigHashes(),
+                    configuration.getHookLoader(), getOutputDirectory().get().getAsFile().toPath());
+            for (File directory : getClassesDirs()) {
+                weaver.weaveDirectory(directory.toPath());
+            }
+            for (File jar : getJars()) {
+                if (jar.isFile()) {
+                    weaver.weaveJar(jar.toPath());
+                }
+            }
+            weaver.finish();
+
+            getLogger().info("Wove {} entries, reused {} unchanged entries", weaver.getWoven(), weaver.getReused());
+        }
+    }
+}
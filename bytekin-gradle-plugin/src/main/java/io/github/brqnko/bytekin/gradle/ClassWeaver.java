@@ -0,0 +1,338 @@
+package io.github.brqnko.bytekin.gradle;
+
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Weaves class directories and jars into an output directory.
+ * <p>
+ * The output directory keeps a state file with the hash of every entry and of the hook configuration that targets
+ * it. An entry whose hashes did not change since the last run is taken from the previous output instead of being
+ * woven again, so a changed hook only weaves the classes it targets. The state is part of the output, a result
+ * restored from the build cache brings its own.
+ */
+public class ClassWeaver {
+
+    public static final String STATE_FILE = "bytekin-weave.state";
+    public static final String CLASSES_DIRECTORY = "classes";
+    public static final String JARS_DIRECTORY = "jars";
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAR_SEPARATOR = "!";
+
+    private final BytekinTransformer transformer;
+    /** The hash of the hooks and mapping that target each class, by class name */
+    private final Map<String, String> configHashes;
+    private final ClassLoader hookLoader;
+    private final Path outputDirectory;
+
+    private final Map<String, String> previousState;
+    private final Map<String, String> state = new TreeMap<>();
+    private final Set<String> jarNames = new HashSet<>();
+
+    /** The hash of the bytekin classes, a new bytekin version weaves every entry again */
+    private static final String BYTEKIN_HASH = hashBytekin();
+
+    private int woven;
+    private int reused;
+
+    public ClassWeaver(BytekinTransformer transformer, Map<String, String> configHashes, ClassLoader hookLoader, Path outputDirectory) throws IOException {
+        this.transformer = transformer;
+        this.configHashes = configHashes;
+        this.hookLoader = hookLoader;
+        this.outputDirectory = outputDirectory;
+        this.previousState = readState(outputDirectory.resolve(STATE_FILE));
+    }
+
+    public int getWoven() {
+        return woven;
+    }
+
+    public int getReused() {
+        return reused;
+    }
+
+    public static String hash(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the jar or class directory that the bytekin classes are loaded from
+     */
+    private static String hashBytekin() {
+        try {
+            Path source = Paths.get(BytekinTransformer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isRegularFile(source)) {
+                return hash(Files.readAllBytes(source));
+            }
+
+            List<byte[]> parts = new ArrayList<>();
+            try (Stream<Path> walk = Files.walk(source)) {
+                for (Path file : walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    parts.add(source.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    parts.add(Files.readAllBytes(file));
+                }
+            }
+            return hash(parts.toArray(new byte[0][]));
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // without a readable code source, the version is the best that tells two bytekin builds apart
+            String version = BytekinTransformer.class.getPackage().getImplementationVersion();
+            return version != null ? version : "";
+        }
+    }
+
+    private static Map<String, String> readState(Path file) throws IOException {
+        Map<String, String> state = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return state;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int separator = line.lastIndexOf('\t');
+            if (separator > 0) {
+                state.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return state;
+    }
+
+    private String fingerprint(String entryName, byte[] bytes) {
+        String configHash = "";
+        if (entryName.endsWith(CLASS_SUFFIX)) {
+            String className = entryName.substring(0, entryName.length() - CLASS_SUFFIX.length()).replace('/', '.');
+            configHash = configHashes.getOrDefault(className, "");
+        }
+        return hash(bytes) + ":" + configHash + ":" + BYTEKIN_HASH;
+    }
+
+    private byte[] weave(String entryName, byte[] bytes) {
+        woven++;
+        if (!entryName.endsWith(CLASS_SUFFIX)) {
+            return bytes;
+        }
+
+        return transformClass(transformer, hookLoader, entryName, bytes);
+    }
+
+    /**
+     * Transforms the class file with the entry name, such as {@code java/lang/Object.class}
+     */
+    static byte[] transformClass(BytekinTransformer transformer, ClassLoader hookLoader, String entryName, byte[] bytes) {
+        String className = entryName.substring(0, entryName.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+
+        // pure hooks are looked up and called through the context class loader while the class is transformed
+        thread.setContextClassLoader(hookLoader);
+        try {
+            return transformer.transform(className, bytes, Opcodes.ASM9);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed to weave " + entryName, e);
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+    }
+
+    /**
+     * Weaves every file of a class directory into the classes of the output
+     */
+    public void weaveDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String entryName = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            String key = CLASSES_DIRECTORY + "/" + entryName;
+            Path output = outputDirectory.resolve(CLASSES_DIRECTORY).resolve(entryName);
+
+            byte[] bytes = Files.readAllBytes(file);
+            String fingerprint = fingerprint(entryName, bytes);
+            state.put(key, fingerprint);
+            if (fingerprint.equals(previousState.get(key)) && Files.isRegularFile(output)) {
+                reused++;
+                continue;
+            }
+
+            Files.createDirectories(output.getParent());
+            Files.write(output, weave(entryName, bytes));
+        }
+    }
+
+    /**
+     * Weaves a jar into a jar of the same name in the output, the entries that did not change are copied from the
+     * previous output. Signatures are dropped once a class of the jar is changed.
+     */
+    public void weaveJar(Path jar) throws IOException {
+        String jarName = jar.getFileName().toString();
+        for (int i = 1; !jarNames.add(jarName); i++) {
+            jarName = i + "-" + jar.getFileName();
+        }
+
+        Path output = outputDirectory.resolve(JARS_DIRECTORY).resolve(jarName);
+        Map<String, byte[]> previousEntries = readPreviousJar(output);
+
+        Path temporary = output.resolveSibling(jarName + ".tmp");
+        Files.createDirectories(output.getParent());
+
+        List<ZipEntry> signatureEntries = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        boolean changed = false;
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(jar));
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(temporary))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                if (entry.isDirectory()) {
+                    out.putNextEntry(new ZipEntry(entryName));
+                    out.closeEntry();
+                    continue;
+                }
+
+                byte[] bytes = readAll(in);
+                if (isSignature(entryName)) {
+                    signatureEntries.add(new ZipEntry(entryName));
+                    signatures.add(bytes);
+                    continue;
+                }
+
+                String key = JARS_DIRECTORY + "/" + jarName + JAR_SEPARATOR + entryName;
+                String fingerprint = fingerprint(entryName, bytes);
+                state.put(key, fingerprint);
+
+                byte[] result = previousEntries.get(entryName);
+                if (result != null && fingerprint.equals(previousState.get(key))) {
+                    reused++;
+                } else {
+                    result = weave(entryName, bytes);
+                }
+                changed |= !Arrays.equals(result, bytes);
+
+                out.putNextEntry(new ZipEntry(entryName));
+                out.write(result);
+                out.closeEntry();
+            }
+
+            if (!changed) {
+                for (int i = 0; i < signatureEntries.size(); i++) {
+                    out.putNextEntry(signatureEntries.get(i));
+                    out.write(signatures.get(i));
+                    out.closeEntry();
+                }
+            }
+        }
+
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean isSignature(String entryName) {
+        if (!entryName.startsWith("META-INF/") || entryName.indexOf('/', "META-INF/".length()) >= 0) {
+            return false;
+        }
+        return entryName.endsWith(".SF") || entryName.endsWith(".RSA") || entryName.endsWith(".DSA") || entryName.endsWith(".EC");
+    }
+
+    private static Map<String, byte[]> readPreviousJar(Path jar) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        if (!Files.isRegularFile(jar)) {
+            return entries;
+        }
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    entries.put(entry.getName(), readAll(in));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the rest of the stream without closing it
+     */
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deletes the outputs of the inputs that are gone and writes the new state
+     */
+    public void finish() throws IOException {
+        Set<String> jars = new HashSet<>();
+        for (String key : state.keySet()) {
+            int separator = key.indexOf(JAR_SEPARATOR);
+            if (separator > 0) {
+                jars.add(key.substring(0, separator));
+            }
+        }
+
+        for (String key : previousState.keySet()) {
+            if (state.containsKey(key)) {
+                continue;
+            }
+            int separator = key.indexOf(JAR_SEPARATOR);
+            String path = separator > 0 ? key.substring(0, separator) : key;
+            if (separator < 0 || !jars.contains(path)) {
+                Files.deleteIfExists(outputDirectory.resolve(path));
+            }
+        }
+
+        Files.createDirectories(outputDirectory);
+        try (OutputStream out = Files.newOutputStream(outputDirectory.resolve(STATE_FILE))) {
+            for (Map.Entry<String, String> entry : state.entrySet()) {
+                out.write((entry.getKey() + "\t" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
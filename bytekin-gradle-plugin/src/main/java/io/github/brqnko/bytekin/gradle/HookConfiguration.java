@@ -0,0 +1,122 @@
+package io.github.brqnko.bytekin.gradle;
+
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.mapping.IMappingProvider;
+import io.github.brqnko.bytekin.mapping.impl.EmptyMappingProvider;
+import io.github.brqnko.bytekin.mapping.impl.TextMappingProvider;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The hook classes and mapping of a weaving task, and the transformer built from them
+ */
+class HookConfiguration implements Closeable {
+
+    private final URLClassLoader hookLoader;
+    private final BytekinTransformer transformer;
+    /** The hash of the hooks and mapping that target each class, by class name */
+    private final Map<String, String> configHashes;
+
+    HookConfiguration(Iterable<File> hookClasspath, List<String> hookClasses, File mappingFile) throws IOException {
+        byte[] mappingBytes = new byte[0];
+        IMappingProvider mapping = new EmptyMappingProvider();
+        if (mappingFile != null) {
+            mappingBytes = Files.readAllBytes(mappingFile.toPath());
+            try (Reader reader = Files.newBufferedReader(mappingFile.toPath(), StandardCharsets.UTF_8)) {
+                mapping = new TextMappingProvider(reader);
+            }
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (File file : hookClasspath) {
+            urls.add(file.toURI().toURL());
+        }
+
+        // the bytekin classes come from the plugin, so the annotations of the hooks are the ones the builder reads
+        this.hookLoader = new URLClassLoader(urls.toArray(new URL[0]), HookConfiguration.class.getClassLoader());
+
+        List<Class<?>> hooks = new ArrayList<>();
+        for (String hookClass : hookClasses) {
+            try {
+                hooks.add(Class.forName(hookClass, false, hookLoader));
+            } catch (ClassNotFoundException e) {
+                hookLoader.close();
+                throw new IllegalStateException("Hook class " + hookClass + " is not on the hook classpath", e);
+            }
+        }
+
+        this.transformer = new BytekinTransformer.Builder(hooks.toArray(new Class<?>[0]))
+                .mapping(mapping)
+                .build();
+        this.configHashes = hashConfigurations(hooks, mapping, mappingBytes);
+    }
+
+    ClassLoader getHookLoader() {
+        return hookLoader;
+    }
+
+    BytekinTransformer getTransformer() {
+        return transformer;
+    }
+
+    Map<String, String> getConfigHashes() {
+        return configHashes;
+    }
+
+    /**
+     * Hashes the hook classes that target each class together with the mapping, a change to one of them only
+     * weaves the classes it targets again
+     */
+    private Map<String, String> hashConfigurations(List<Class<?>> hooks, IMappingProvider mapping, byte[] mappingBytes) throws IOException {
+        Map<String, Map<String, byte[]>> hooksByTarget = new HashMap<>();
+        for (Class<?> hook : hooks) {
+            ModifyClass modifyClass = hook.getAnnotation(ModifyClass.class);
+            if (modifyClass == null) {
+                throw new IllegalStateException("Hook class " + hook.getName() + " is not annotated with @ModifyClass");
+            }
+
+            String target = mapping.getClassName(modifyClass.className());
+            hooksByTarget.computeIfAbsent(target, k -> new TreeMap<>()).put(hook.getName(), readClass(hook.getName()));
+        }
+
+        Map<String, String> hashes = new HashMap<>();
+        for (Map.Entry<String, Map<String, byte[]>> entry : hooksByTarget.entrySet()) {
+            List<byte[]> parts = new ArrayList<>();
+            parts.add(mappingBytes);
+            for (Map.Entry<String, byte[]> hook : entry.getValue().entrySet()) {
+                parts.add(hook.getKey().getBytes(StandardCharsets.UTF_8));
+                parts.add(hook.getValue());
+            }
+            hashes.put(entry.getKey(), ClassWeaver.hash(parts.toArray(new byte[0][])));
+        }
+        return hashes;
+    }
+
+    private byte[] readClass(String className) throws IOException {
+        try (InputStream in = hookLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (in == null) {
+                throw new IllegalStateException("Cannot read the hook class " + className);
+            }
+            return ClassWeaver.readAll(in);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        hookLoader.close();
+    }
+}
@@ -0,0 +1,443 @@
+package io.github.brqnko.bytekin.gradle;
+
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Weaves the classes of the jmod files of a JDK, so that jlink links the woven classes into a runtime image.
+ * <p>
+ * Only the jmods that change are written, link them with the output directory ahead of the original jmods:
+ * {@code jlink --module-path <output>:$JAVA_HOME/jmods}. A module such as java.base records the hashes of the modules
+ * it exports to, and jlink refuses modules whose hash differs. The recorded hash of every woven module is replaced,
+ * so the recording module is written too.
+ * <p>
+ * The woven classes run inside their module, so the hooks have to be accessible from it. Redirects to other JDK
+ * methods and constants folded at transform time, such as pure hooks and field constants, need no hook class. The
+ * weave fails when a woven class refers to a type that its module cannot read, such as a bytekin or hook class
+ * outside the jmods, because the linked image would fail to load it.
+ */
+public class JmodWeaver {
+
+    private static final byte[] JMOD_MAGIC = {0x4A, 0x4D, 0x01, 0x00};
+    private static final String JMOD_SUFFIX = ".jmod";
+    private static final String CLASSES_SECTION = "classes/";
+    private static final String MODULE_INFO = CLASSES_SECTION + "module-info.class";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String MODULE_HASHES_ATTRIBUTE = "ModuleHashes";
+
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    private final BytekinTransformer transformer;
+    private final ClassLoader hookLoader;
+
+    public JmodWeaver(BytekinTransformer transformer, ClassLoader hookLoader) {
+        this.transformer = transformer;
+        this.hookLoader = hookLoader;
+    }
+
+    /**
+     * The entries of a jmod in their original order
+     */
+    private static class Jmod {
+
+        private final byte[] file;
+        private final List<ZipEntry> entries = new ArrayList<>();
+        private final Map<String, byte[]> contents = new HashMap<>();
+        /** The original contents of the woven entries, the recorded hashes were computed over them */
+        private final Map<String, byte[]> originals = new HashMap<>();
+
+        private Jmod(byte[] file) {
+            this.file = file;
+        }
+
+        private static Jmod read(Path file) throws IOException {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < JMOD_MAGIC.length || !Arrays.equals(Arrays.copyOf(bytes, JMOD_MAGIC.length), JMOD_MAGIC)) {
+                throw new IllegalArgumentException("Not a jmod file: " + file);
+            }
+
+            Jmod jmod = new Jmod(bytes);
+            try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes, JMOD_MAGIC.length, bytes.length - JMOD_MAGIC.length))) {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    jmod.entries.add(entry);
+                    jmod.contents.put(entry.getName(), entry.isDirectory() ? new byte[0] : ClassWeaver.readAll(in));
+                }
+            }
+            return jmod;
+        }
+
+        private void replace(String name, byte[] bytes) {
+            originals.putIfAbsent(name, contents.get(name));
+            contents.put(name, bytes);
+        }
+
+        private byte[] write() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(JMOD_MAGIC);
+            try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+                for (ZipEntry entry : entries) {
+                    ZipEntry written = new ZipEntry(entry.getName());
+                    written.setTime(entry.getTime());
+                    out.putNextEntry(written);
+                    out.write(contents.get(entry.getName()));
+                    out.closeEntry();
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * The hash recorded since JDK 17, over the names and contents of the classes section in name order
+         *
+         * @param original whether to hash the contents before they were woven
+         */
+        private byte[] contentHash(String algorithm, boolean original) {
+            Map<String, byte[]> classes = new TreeMap<>();
+            for (ZipEntry entry : entries) {
+                if (!entry.isDirectory() && entry.getName().startsWith(CLASSES_SECTION)) {
+                    byte[] content = original && originals.containsKey(entry.getName()) ? originals.get(entry.getName()) : contents.get(entry.getName());
+                    classes.put(entry.getName().substring(CLASSES_SECTION.length()), content);
+                }
+            }
+
+            MessageDigest digest = digest(algorithm);
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update(entry.getValue());
+            }
+            return digest.digest();
+        }
+    }
+
+    /**
+     * The packages and dependences of a module, read from its module-info and its classes
+     */
+    private static class Module {
+
+        private final Set<String> packages = new HashSet<>();
+        private final Map<String, Boolean> requires = new HashMap<>();
+        /** The modules each package is exported to, null when it is exported to every module */
+        private final Map<String, Set<String>> exports = new HashMap<>();
+        private boolean recordsHashes;
+
+        private static Module read(Jmod jmod) {
+            Module module = new Module();
+            for (ZipEntry entry : jmod.entries) {
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.startsWith(CLASSES_SECTION) && name.endsWith(CLASS_SUFFIX) && name.lastIndexOf('/') > CLASSES_SECTION.length()) {
+                    module.packages.add(name.substring(CLASSES_SECTION.length(), name.lastIndexOf('/')));
+                }
+            }
+
+            byte[] moduleInfo = jmod.contents.get(MODULE_INFO);
+            if (moduleInfo == null) {
+                return module;
+            }
+            new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public ModuleVisitor visitModule(String name, int access, String version) {
+                    return new ModuleVisitor(Opcodes.ASM9) {
+                        @Override
+                        public void visitPackage(String packaze) {
+                            module.packages.add(packaze);
+                        }
+
+                        @Override
+                        public void visitRequire(String required, int access, String version) {
+                            module.requires.put(required, (access & Opcodes.ACC_TRANSITIVE) != 0);
+                        }
+
+                        @Override
+                        public void visitExport(String packaze, int access, String... modules) {
+                            module.packages.add(packaze);
+                            module.exports.put(packaze, modules == null ? null : new HashSet<>(Arrays.asList(modules)));
+                        }
+                    };
+                }
+
+                @Override
+                public void visitAttribute(Attribute attribute) {
+                    if (MODULE_HASHES_ATTRIBUTE.equals(attribute.type)) {
+                        module.recordsHashes = true;
+                    }
+                }
+            }, 0);
+            return module;
+        }
+
+        private boolean exports(String packaze, String module) {
+            if (!exports.containsKey(packaze)) {
+                return false;
+            }
+            Set<String> targets = exports.get(packaze);
+            return targets == null || targets.contains(module);
+        }
+    }
+
+    /**
+     * Weaves every jmod of the directory
+     *
+     * @return the names of the modules written to the output directory
+     */
+    public List<String> weave(Path jmodDirectory, Path outputDirectory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(jmodDirectory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(JMOD_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+
+        // every jmod is read once, the woven ones and the ones that record hashes are kept until they are written
+        Map<String, Module> modules = new HashMap<>();
+        Map<String, Jmod> woven = new TreeMap<>();
+        Map<String, Jmod> recorders = new TreeMap<>();
+        Map<String, Map<String, Set<String>>> addedTypes = new TreeMap<>();
+        for (Path file : files) {
+            String module = file.getFileName().toString();
+            module = module.substring(0, module.length() - JMOD_SUFFIX.length());
+
+            Jmod jmod = Jmod.read(file);
+            for (ZipEntry entry : jmod.entries) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(CLASSES_SECTION) || !name.endsWith(CLASS_SUFFIX) || name.equals(MODULE_INFO)) {
+                    continue;
+                }
+
+                byte[] bytes = jmod.contents.get(name);
+                String className = name.substring(CLASSES_SECTION.length());
+                byte[] result = ClassWeaver.transformClass(transformer, hookLoader, className, bytes);
+                if (!Arrays.equals(bytes, result)) {
+                    jmod.replace(name, result);
+
+                    Set<String> added = referencedTypes(result);
+                    added.removeAll(referencedTypes(bytes));
+                    addedTypes.computeIfAbsent(module, k -> new TreeMap<>()).put(className.substring(0, className.length() - CLASS_SUFFIX.length()), added);
+                }
+            }
+
+            Module descriptor = Module.read(jmod);
+            modules.put(module, descriptor);
+            if (!jmod.originals.isEmpty()) {
+                woven.put(module, jmod);
+            }
+            if (descriptor.recordsHashes) {
+                recorders.put(module, jmod);
+            }
+        }
+
+        // the woven classes may only refer to types their module reads, the hooks are not in the image otherwise
+        Map<String, String> packageOwners = new HashMap<>();
+        modules.forEach((module, descriptor) -> descriptor.packages.forEach(packaze -> packageOwners.putIfAbsent(packaze, module)));
+        addedTypes.forEach((module, classes) -> classes.forEach((className, types) -> {
+            Set<String> readable = readableModules(module, modules);
+            for (String type : types) {
+                int separator = type.lastIndexOf('/');
+                String packaze = separator < 0 ? "" : type.substring(0, separator);
+                String owner = packageOwners.get(packaze);
+                if (owner == null) {
+                    throw new IllegalStateException("Woven class " + className + " of " + module + " refers to " + type + ", which is in none of the jmods");
+                }
+                if (!owner.equals(module) && (!readable.contains(owner) || !modules.get(owner).exports(packaze, module))) {
+                    throw new IllegalStateException("Woven class " + className + " of " + module + " refers to " + type + ", which " + owner + " does not make accessible to it");
+                }
+            }
+        }));
+
+        Map<String, byte[]> outputs = new TreeMap<>();
+        for (Map.Entry<String, Jmod> entry : woven.entrySet()) {
+            outputs.put(entry.getKey(), entry.getValue().write());
+        }
+
+        // the modules that record hashes are patched once the hashes of the woven modules are known
+        for (Map.Entry<String, Jmod> entry : recorders.entrySet()) {
+            Jmod recorder = entry.getValue();
+            byte[] moduleInfo = recorder.contents.get(MODULE_INFO);
+            byte[] patched = patchModuleHashes(moduleInfo, woven, outputs);
+            if (patched != moduleInfo) {
+                recorder.contents.put(MODULE_INFO, patched);
+                outputs.put(entry.getKey(), recorder.write());
+            }
+        }
+
+        Files.createDirectories(outputDirectory);
+        for (Map.Entry<String, byte[]> entry : outputs.entrySet()) {
+            Files.write(outputDirectory.resolve(entry.getKey() + JMOD_SUFFIX), entry.getValue());
+        }
+        return new ArrayList<>(outputs.keySet());
+    }
+
+    /**
+     * Replaces the recorded hashes of the woven modules in a ModuleHashes attribute
+     *
+     * @return the patched module-info, or the same array if it records none of them
+     */
+    private byte[] patchModuleHashes(byte[] moduleInfo, Map<String, Jmod> woven, Map<String, byte[]> outputs) {
+        ClassReader reader = new ClassReader(moduleInfo);
+        char[] buffer = new char[reader.getMaxStringLength()];
+
+        // a module-info has no interfaces, fields or methods
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+        for (int members = 0; members < 2; members++) {
+            int count = reader.readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                offset = skipAttributes(reader, offset + 6);
+            }
+        }
+
+        byte[] patched = moduleInfo;
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            int length = reader.readInt(offset + 2);
+            if (MODULE_HASHES_ATTRIBUTE.equals(reader.readUTF8(offset, buffer))) {
+                String algorithm = reader.readUTF8(offset + 6, buffer);
+                int hashCount = reader.readUnsignedShort(offset + 8);
+                int hashOffset = offset + 10;
+                for (int j = 0; j < hashCount; j++) {
+                    String module = reader.readModule(hashOffset, buffer);
+                    int hashLength = reader.readUnsignedShort(hashOffset + 2);
+                    Jmod jmod = woven.get(module);
+                    if (jmod != null) {
+                        byte[] recorded = Arrays.copyOfRange(moduleInfo, hashOffset + 4, hashOffset + 4 + hashLength);
+                        byte[] hash = newHash(module, algorithm, recorded, jmod, outputs.get(module));
+                        if (hash.length != hashLength) {
+                            throw new IllegalStateException("Unexpected hash length for " + module);
+                        }
+                        if (patched == moduleInfo) {
+                            patched = moduleInfo.clone();
+                        }
+                        System.arraycopy(hash, 0, patched, hashOffset + 4, hashLength);
+                    }
+                    hashOffset += 4 + hashLength;
+                }
+            }
+            offset += 6 + length;
+        }
+        return patched;
+    }
+
+    /**
+     * Hashes the woven module the way its original hash was computed, over the classes since JDK 17 and over the
+     * whole file before
+     */
+    private byte[] newHash(String module, String algorithm, byte[] recorded, Jmod jmod, byte[] output) {
+        if (Arrays.equals(recorded, jmod.contentHash(algorithm, true))) {
+            return jmod.contentHash(algorithm, false);
+        }
+        if (Arrays.equals(recorded, digest(algorithm).digest(jmod.file))) {
+            return digest(algorithm).digest(output);
+        }
+        throw new IllegalStateException("The recorded hash of " + module + " does not match its jmod, it belongs to another JDK");
+    }
+
+    /**
+     * The module itself, the modules it requires and the modules they require transitively
+     */
+    private static Set<String> readableModules(String module, Map<String, Module> modules) {
+        Set<String> readable = new HashSet<>();
+        readable.add(module);
+        List<String> pending = new ArrayList<>(modules.get(module).requires.keySet());
+        readable.addAll(pending);
+        while (!pending.isEmpty()) {
+            Module required = modules.get(pending.remove(pending.size() - 1));
+            if (required == null) {
+                continue;
+            }
+            required.requires.forEach((transitive, isTransitive) -> {
+                if (isTransitive && readable.add(transitive)) {
+                    pending.add(transitive);
+                }
+            });
+        }
+        return readable;
+    }
+
+    /**
+     * The classes a class file refers to through its constant pool, as classes and in descriptors
+     */
+    private static Set<String> referencedTypes(byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Set<String> types = new HashSet<>();
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0) {
+                continue;
+            }
+            switch (reader.readByte(offset - 1)) {
+                case CONSTANT_CLASS:
+                    String name = reader.readUTF8(offset, buffer);
+                    if (name.startsWith("[")) {
+                        addDescriptorTypes(name, types);
+                    } else {
+                        types.add(name);
+                    }
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addDescriptorTypes(reader.readUTF8(offset + 2, buffer), types);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addDescriptorTypes(reader.readUTF8(offset, buffer), types);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return types;
+    }
+
+    private static void addDescriptorTypes(String descriptor, Set<String> types) {
+        int start = descriptor.indexOf('L');
+        while (start >= 0) {
+            int end = descriptor.indexOf(';', start);
+            types.add(descriptor.substring(start + 1, end));
+            start = descriptor.indexOf('L', end);
+        }
+    }
+
+    private static int skipAttributes(ClassReader reader, int offset) {
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
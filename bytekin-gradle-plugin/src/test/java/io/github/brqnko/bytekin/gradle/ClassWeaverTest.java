@@ -0,0 +1,86 @@
+package io.github.brqnko.bytekin.gradle;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassWeaverTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.gradle.target.GreeterTarget";
+    private static final String TARGET_ENTRY = TARGET.replace('.', '/') + ".class";
+
+    private static final BytekinTransformer TRANSFORMER = new BytekinTransformer.Builder()
+            .modifyConstant(TARGET, new ConstantModification("greet", "()Ljava/lang/String;", "hello", -1, "example.Hooks", "greeting"))
+            .build();
+
+    private static byte[] readTarget() throws IOException {
+        try (InputStream in = ClassWeaverTest.class.getClassLoader().getResourceAsStream(TARGET_ENTRY)) {
+            Assertions.assertNotNull(in);
+            return ClassWeaver.readAll(in);
+        }
+    }
+
+    private static ClassWeaver weave(Path classes, Path jar, Path output, Map<String, String> configHashes) throws IOException {
+        ClassWeaver weaver = new ClassWeaver(TRANSFORMER, configHashes, ClassWeaverTest.class.getClassLoader(), output);
+        weaver.weaveDirectory(classes);
+        weaver.weaveJar(jar);
+        weaver.finish();
+        return weaver;
+    }
+
+    @Test
+    void incrementalWeaveTest(@TempDir Path directory) throws IOException {
+        byte[] target = readTarget();
+
+        Path classes = directory.resolve("classes");
+        Files.createDirectories(classes.resolve(TARGET_ENTRY).getParent());
+        Files.write(classes.resolve(TARGET_ENTRY), target);
+        Files.write(classes.resolve("app.properties"), "name=app".getBytes(StandardCharsets.UTF_8));
+
+        Path jar = directory.resolve("library.jar");
+        try (OutputStream file = Files.newOutputStream(jar); ZipOutputStream out = new ZipOutputStream(file)) {
+            out.putNextEntry(new ZipEntry(TARGET_ENTRY));
+            out.write(target);
+            out.closeEntry();
+        }
+
+        Path output = directory.resolve("output");
+        Map<String, String> hooks = Collections.singletonMap(TARGET, "hooks-1");
+
+        ClassWeaver first = weave(classes, jar, output, hooks);
+        Assertions.assertEquals(3, first.getWoven());
+        Assertions.assertEquals(0, first.getReused());
+
+        byte[] woven = Files.readAllBytes(output.resolve(ClassWeaver.CLASSES_DIRECTORY).resolve(TARGET_ENTRY));
+        Assertions.assertTrue(new String(woven, StandardCharsets.ISO_8859_1).contains("example/Hooks"));
+        Assertions.assertTrue(Files.isRegularFile(output.resolve(ClassWeaver.JARS_DIRECTORY).resolve("library.jar")));
+
+        // nothing changed, every entry comes from the previous output
+        ClassWeaver second = weave(classes, jar, output, hooks);
+        Assertions.assertEquals(0, second.getWoven());
+        Assertions.assertEquals(3, second.getReused());
+
+        // a changed hook only weaves the classes it targets
+        ClassWeaver third = weave(classes, jar, output, Collections.singletonMap(TARGET, "hooks-2"));
+        Assertions.assertEquals(2, third.getWoven());
+        Assertions.assertEquals(1, third.getReused());
+
+        // removed inputs are removed from the output
+        Files.delete(classes.resolve("app.properties"));
+        weave(classes, jar, output, Collections.singletonMap(TARGET, "hooks-2"));
+        Assertions.assertFalse(Files.exists(output.resolve(ClassWeaver.CLASSES_DIRECTORY).resolve("app.properties")));
+    }
+}
@@ -0,0 +1,285 @@
+package io.github.brqnko.bytekin.gradle;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ByteVector;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class JmodWeaverTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.gradle.target.GreeterTarget";
+    private static final String TARGET_ENTRY = "classes/" + TARGET.replace('.', '/') + ".class";
+    private static final String MODULE_INFO_ENTRY = "classes/module-info.class";
+
+    /**
+     * A ModuleHashes attribute with the hash of one module
+     */
+    private static class ModuleHashes extends Attribute {
+
+        private String algorithm;
+        private String module;
+        private byte[] hash;
+
+        ModuleHashes() {
+            super("ModuleHashes");
+        }
+
+        ModuleHashes(String algorithm, String module, byte[] hash) {
+            this();
+            this.algorithm = algorithm;
+            this.module = module;
+            this.hash = hash;
+        }
+
+        @Override
+        protected Attribute read(ClassReader classReader, int offset, int length, char[] charBuffer, int codeAttributeOffset, Label[] labels) {
+            int hashLength = classReader.readUnsignedShort(offset + 6);
+            byte[] hash = new byte[hashLength];
+            for (int i = 0; i < hashLength; i++) {
+                hash[i] = (byte) classReader.readByte(offset + 8 + i);
+            }
+            return new ModuleHashes(classReader.readUTF8(offset, charBuffer), classReader.readModule(offset + 4, charBuffer), hash);
+        }
+
+        @Override
+        protected ByteVector write(ClassWriter classWriter, byte[] code, int codeLength, int maxStack, int maxLocals) {
+            return new ByteVector()
+                    .putShort(classWriter.newUTF8(algorithm))
+                    .putShort(1)
+                    .putShort(classWriter.newModule(module))
+                    .putShort(hash.length)
+                    .putByteArray(hash, 0, hash.length);
+        }
+    }
+
+    private static byte[] readTarget() throws IOException {
+        try (InputStream in = JmodWeaverTest.class.getClassLoader().getResourceAsStream(TARGET.replace('.', '/') + ".class")) {
+            Assertions.assertNotNull(in);
+            return ClassWeaver.readAll(in);
+        }
+    }
+
+    /**
+     * @param hashes the recorded hashes, or null
+     * @param exports the exported package, or null
+     */
+    private static byte[] moduleInfo(String name, ModuleHashes hashes, String exports, String... requires) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor module = writer.visitModule(name, 0, null);
+        for (String required : requires) {
+            module.visitRequire(required, 0, null);
+        }
+        if (exports != null) {
+            module.visitExport(exports, 0);
+        }
+        module.visitEnd();
+        if (hashes != null) {
+            writer.visitAttribute(hashes);
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * The greeter module, which requires java.base and the other modules
+     */
+    private static Map<String, byte[]> greeterEntries(String... requires) throws IOException {
+        String[] modules = Arrays.copyOf(requires, requires.length + 1);
+        modules[requires.length] = "java.base";
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(TARGET_ENTRY, readTarget());
+        entries.put(MODULE_INFO_ENTRY, moduleInfo("example.greeter", null, null, modules));
+        return entries;
+    }
+
+    /**
+     * A java.base that only declares the package the hook descriptors use
+     */
+    private static void writeBaseJmod(Path jmods) throws IOException {
+        writeJmod(jmods.resolve("java.base.jmod"), Collections.singletonMap(MODULE_INFO_ENTRY, moduleInfo("java.base", null, "java/lang")));
+    }
+
+    private static void writeHooksJmod(Path jmods) throws IOException {
+        writeJmod(jmods.resolve("example.hooks.jmod"), Collections.singletonMap(MODULE_INFO_ENTRY, moduleInfo("example.hooks", null, "example", "java.base")));
+    }
+
+    private static byte[] sha256(byte[]... parts) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return digest.digest();
+    }
+
+    private static byte[] readEntry(byte[] jmod, String entryName) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(jmod, 4, jmod.length - 4))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.getName().equals(entryName)) {
+                    return ClassWeaver.readAll(in);
+                }
+            }
+        }
+        throw new AssertionError(entryName + " is not in the jmod");
+    }
+
+    private static void writeJmod(Path file, Map<String, byte[]> entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(new byte[]{0x4A, 0x4D, 0x01, 0x00});
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("lib/native.so"));
+            zip.write(new byte[]{1, 2, 3});
+            zip.closeEntry();
+            zip.finish();
+        }
+    }
+
+    private static BytekinTransformer greetingTransformer() {
+        return new BytekinTransformer.Builder()
+                .modifyConstant(TARGET, new ConstantModification("greet", "()Ljava/lang/String;", "hello", -1, "example.Hooks", "greeting"))
+                .build();
+    }
+
+    @Test
+    void jmodWeaveTest(@TempDir Path directory) throws IOException {
+        Path jmods = directory.resolve("jmods");
+        Files.createDirectories(jmods);
+        writeJmod(jmods.resolve("example.greeter.jmod"), greeterEntries("example.hooks"));
+        writeJmod(jmods.resolve("example.other.jmod"), Collections.singletonMap("classes/example/other/Other.class", readTarget()));
+        writeBaseJmod(jmods);
+        writeHooksJmod(jmods);
+
+        Path output = directory.resolve("output");
+        Assertions.assertEquals(Collections.singletonList("example.greeter"),
+                new JmodWeaver(greetingTransformer(), JmodWeaverTest.class.getClassLoader()).weave(jmods, output));
+        Assertions.assertFalse(Files.exists(output.resolve("example.other.jmod")));
+
+        // the woven jmod keeps its header and every section
+        byte[] woven = Files.readAllBytes(output.resolve("example.greeter.jmod"));
+        Assertions.assertEquals(0x4A, woven[0]);
+        Assertions.assertEquals(0x4D, woven[1]);
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(woven, 4, woven.length - 4))) {
+            Assertions.assertEquals(TARGET_ENTRY, in.getNextEntry().getName());
+            Assertions.assertTrue(new String(ClassWeaver.readAll(in), StandardCharsets.ISO_8859_1).contains("example/Hooks"));
+            Assertions.assertEquals(MODULE_INFO_ENTRY, in.getNextEntry().getName());
+            Assertions.assertEquals("lib/native.so", in.getNextEntry().getName());
+        }
+    }
+
+    @Test
+    void unreadableHookTest(@TempDir Path directory) throws IOException {
+        Path jmods = directory.resolve("jmods");
+        Files.createDirectories(jmods);
+        writeJmod(jmods.resolve("example.greeter.jmod"), greeterEntries());
+        writeBaseJmod(jmods);
+
+        // the hook class is in none of the jmods, so the linked image could not load it
+        JmodWeaver weaver = new JmodWeaver(greetingTransformer(), JmodWeaverTest.class.getClassLoader());
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> weaver.weave(jmods, directory.resolve("output")));
+        Assertions.assertTrue(e.getMessage().contains("none of the jmods"));
+
+        // the module of the hook exists, but the greeter does not read it
+        writeHooksJmod(jmods);
+        e = Assertions.assertThrows(IllegalStateException.class, () -> weaver.weave(jmods, directory.resolve("output")));
+        Assertions.assertTrue(e.getMessage().contains("does not make accessible"));
+        Assertions.assertFalse(Files.exists(directory.resolve("output")));
+    }
+
+    /**
+     * Weaves the greeter module with a base module that records its hash, and returns the patched hash
+     */
+    private static byte[] weaveRecorded(Path directory, boolean contentHash) throws Exception {
+        Path jmods = directory.resolve("jmods");
+        Files.createDirectories(jmods);
+        Path greeter = jmods.resolve("example.greeter.jmod");
+        Map<String, byte[]> greeterEntries = greeterEntries("example.hooks");
+        writeJmod(greeter, greeterEntries);
+        writeBaseJmod(jmods);
+        writeHooksJmod(jmods);
+
+        // since JDK 17 the hash covers the names and contents of the classes, before it covered the whole file
+        byte[] recorded = contentHash
+                ? classesHash(readTarget(), greeterEntries.get(MODULE_INFO_ENTRY))
+                : sha256(Files.readAllBytes(greeter));
+        writeJmod(jmods.resolve("example.base.jmod"), Collections.singletonMap(MODULE_INFO_ENTRY,
+                moduleInfo("example.base", new ModuleHashes("SHA-256", "example.greeter", recorded), null)));
+
+        Path output = directory.resolve("output");
+        Assertions.assertEquals(Arrays.asList("example.base", "example.greeter"),
+                new JmodWeaver(greetingTransformer(), JmodWeaverTest.class.getClassLoader()).weave(jmods, output));
+
+        byte[] moduleInfo = readEntry(Files.readAllBytes(output.resolve("example.base.jmod")), MODULE_INFO_ENTRY);
+        List<Attribute> attributes = new ArrayList<>();
+        new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitAttribute(Attribute attribute) {
+                attributes.add(attribute);
+            }
+        }, new Attribute[]{new ModuleHashes()}, 0);
+
+        Assertions.assertEquals(1, attributes.size());
+        ModuleHashes hashes = (ModuleHashes) attributes.get(0);
+        Assertions.assertEquals("SHA-256", hashes.algorithm);
+        Assertions.assertEquals("example.greeter", hashes.module);
+        Assertions.assertFalse(Arrays.equals(recorded, hashes.hash));
+        return hashes.hash;
+    }
+
+    /**
+     * The hash of the greeter's classes section, the target sorts before the module-info
+     */
+    private static byte[] classesHash(byte[] target, byte[] moduleInfo) throws NoSuchAlgorithmException {
+        return sha256(TARGET_ENTRY.substring("classes/".length()).getBytes(StandardCharsets.UTF_8), target,
+                MODULE_INFO_ENTRY.substring("classes/".length()).getBytes(StandardCharsets.UTF_8), moduleInfo);
+    }
+
+    @Test
+    void contentHashPatchTest(@TempDir Path directory) throws Exception {
+        byte[] hash = weaveRecorded(directory, true);
+
+        byte[] jmod = Files.readAllBytes(directory.resolve("output").resolve("example.greeter.jmod"));
+        Assertions.assertArrayEquals(classesHash(readEntry(jmod, TARGET_ENTRY), readEntry(jmod, MODULE_INFO_ENTRY)), hash);
+    }
+
+    @Test
+    void fileHashPatchTest(@TempDir Path directory) throws Exception {
+        byte[] hash = weaveRecorded(directory, false);
+
+        Assertions.assertArrayEquals(sha256(Files.readAllBytes(directory.resolve("output").resolve("example.greeter.jmod"))), hash);
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.brqnko.bytekin.gradle.target;
+
+@SuppressWarnings("unused")
+public class GreeterTarget {
+
+    public static String greet() {
+        return "hello";
+    }
+}
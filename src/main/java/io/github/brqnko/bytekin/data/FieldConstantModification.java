@@ -0,0 +1,26 @@
+package io.github.brqnko.bytekin.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Replaces the value of a static field with a constant, see {@link io.github.brqnko.bytekin.transformer.method.FieldConstantMethodTransformer}
+ */
+@Data
+@AllArgsConstructor
+public class FieldConstantModification {
+
+    private final String fieldName;
+    private final String fieldDesc;
+    private final Object constantValue;
+
+    /**
+     * Also replaces the copies of the old value javac inlined into the class. They cannot be told apart from
+     * unrelated literals with the same value, so every LDC of the old value in the class is replaced.
+     */
+    private final boolean replaceInlined;
+
+    public FieldConstantModification(String fieldName, String fieldDesc, Object constantValue) {
+        this(fieldName, fieldDesc, constantValue, false);
+    }
+}
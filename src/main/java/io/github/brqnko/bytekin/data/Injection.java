@@ -1,10 +1,13 @@
 package io.github.brqnko.bytekin.data;
 
 import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.injection.Shift;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
+@AllArgsConstructor
 public class Injection {
 
     private final String methodName;
@@ -13,4 +16,10 @@ public class Injection {
 
     private final String hookMethodOwner;
     private final String hookMethodName;
+
+    private final Linkage linkage;
+
+    public Injection(String methodName, String methodDesc, At at, String hookMethodOwner, String hookMethodName) {
+        this(methodName, methodDesc, at, hookMethodOwner, hookMethodName, Linkage.STATIC);
+    }
 }
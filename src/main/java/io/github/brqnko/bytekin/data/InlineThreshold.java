@@ -0,0 +1,28 @@
+package io.github.brqnko.bytekin.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The default bytecode size limits of HotSpot, a method larger than a limit loses the optimization of it
+ */
+@Getter
+@AllArgsConstructor
+public enum InlineThreshold {
+
+    /** Methods up to this size are inlined even when they are called rarely */
+    MAX_INLINE_SIZE(35),
+    /** Methods up to this size are inlined at hot call sites */
+    FREQ_INLINE_SIZE(325),
+    /** Methods larger than this are never compiled by the JIT */
+    HUGE_METHOD_LIMIT(8000);
+
+    private final int limit;
+
+    /**
+     * @return whether a method of the size before the transformation was within the limit and is not anymore
+     */
+    public boolean isCrossed(int sizeBefore, int sizeAfter) {
+        return sizeBefore <= limit && sizeAfter > limit;
+    }
+}
@@ -1,9 +1,12 @@
 package io.github.brqnko.bytekin.data;
 
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.injection.Shift;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
+@AllArgsConstructor
 public class Invocation {
     private final String targetMethodName;
     private final String targetMethodDesc;
@@ -14,4 +17,10 @@ public class Invocation {
 
     private final String hookMethodOwner;
     private final String hookMethodName;
+
+    private final Linkage linkage;
+
+    public Invocation(String targetMethodName, String targetMethodDesc, String invokeMethodOwner, String invokeMethodName, String invokeMethodDesc, Shift shift, String hookMethodOwner, String hookMethodName) {
+        this(targetMethodName, targetMethodDesc, invokeMethodOwner, invokeMethodName, invokeMethodDesc, shift, hookMethodOwner, hookMethodName, Linkage.STATIC);
+    }
 }
@@ -0,0 +1,16 @@
+package io.github.brqnko.bytekin.data;
+
+import io.github.brqnko.bytekin.injection.LockStrategy;
+import lombok.Data;
+
+@Data
+public class LockRewrite {
+
+    private final String methodName;
+    private final String methodDesc;
+
+    private final LockStrategy strategy;
+    private final int stripeArgument;
+    private final int stripes;
+
+}
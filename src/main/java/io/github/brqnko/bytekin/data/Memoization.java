@@ -0,0 +1,14 @@
+package io.github.brqnko.bytekin.data;
+
+import lombok.Data;
+
+@Data
+public class Memoization {
+
+    private final String methodName;
+    private final String methodDesc;
+
+    private final int maximumSize;
+    private final long expireAfterWriteMillis;
+
+}
@@ -1,9 +1,15 @@
 package io.github.brqnko.bytekin.data;
 
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.injection.RedirectType;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.Collections;
+import java.util.List;
+
 @Data
+@AllArgsConstructor
 public class RedirectData {
 
     private final String targetMethodName;
@@ -17,4 +23,17 @@ public class RedirectData {
 
     private final String hookMethodOwner;
     private final String hookMethodName;
+
+    private final Linkage linkage;
+
+    /** The expected receiver classes of {@link RedirectType#DEVIRTUALIZE}, the hook may be null to call them directly */
+    private final List<String> receivers;
+
+    public RedirectData(String targetMethodName, String targetMethodDesc, RedirectType type, String owner, String name, String desc, int ordinal, String hookMethodOwner, String hookMethodName) {
+        this(targetMethodName, targetMethodDesc, type, owner, name, desc, ordinal, hookMethodOwner, hookMethodName, Linkage.STATIC);
+    }
+
+    public RedirectData(String targetMethodName, String targetMethodDesc, RedirectType type, String owner, String name, String desc, int ordinal, String hookMethodOwner, String hookMethodName, Linkage linkage) {
+        this(targetMethodName, targetMethodDesc, type, owner, name, desc, ordinal, hookMethodOwner, hookMethodName, linkage, Collections.emptyList());
+    }
 }
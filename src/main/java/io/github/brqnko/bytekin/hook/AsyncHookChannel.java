@@ -0,0 +1,284 @@
+package io.github.brqnko.bytekin.hook;
+
+import io.github.brqnko.bytekin.injection.Async;
+import io.github.brqnko.bytekin.injection.Backpressure;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded multi-producer single-consumer queue that delivers the events of an {@link Async} hook.
+ * <p>
+ * Producers claim a preallocated {@link Slot} with a single CAS, fill in the arguments and publish it.
+ * A consumer thread calls the hook with the arguments of each published slot and recycles it. The thread is
+ * started by the first event, and parks while the queue is empty until a producer publishes again.
+ */
+public final class AsyncHookChannel {
+
+    public static final String CHANNEL_OWNER = "io/github/brqnko/bytekin/hook/AsyncHookChannel";
+    public static final String SLOT_OWNER = CHANNEL_OWNER + "$Slot";
+    public static final String SLOT_DESC = "L" + SLOT_OWNER + ";";
+
+    public static final String METHOD_CLAIM = "claim";
+    public static final String METHOD_CLAIM_DESC = "(Ljava/lang/String;)" + SLOT_DESC;
+    public static final String METHOD_PUBLISH = "publish";
+    public static final String FIELD_ARGS = "args";
+
+    private static final Map<String, AsyncHookChannel> CHANNELS = new ConcurrentHashMap<>();
+
+    private static final int SPINS = 64;
+
+    private final MethodHandle hook;
+
+    private final Slot[] slots;
+    private final int mask;
+
+    private final Backpressure backpressure;
+    private final int sampleRate;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long head;
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+
+    private final Thread consumer;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    /** Set by the consumer before it parks on an empty queue, so a producer knows it has to wake it */
+    private volatile boolean waiting;
+
+    private AsyncHookChannel(String key, MethodHandle hook, int capacity, Backpressure backpressure, int sampleRate, boolean virtualThread) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity + " for async hook " + key);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        int arity = hook.type().parameterCount();
+        this.hook = hook.asSpreader(Object[].class, arity).asType(MethodType.methodType(void.class, Object[].class));
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(this, i, arity);
+        }
+        this.backpressure = backpressure;
+        this.sampleRate = Math.max(1, sampleRate);
+
+        this.consumer = newConsumer(this::consume, "bytekin-async-" + key, virtualThread);
+    }
+
+    /**
+     * Creates the channel of an {@link Async} hook if it does not exist yet. Classes woven at build time find no
+     * channel until the hooks are registered again in the JVM that runs them, through {@link #registerAll(Class)}.
+     *
+     * @return the key the injected code uses to find the channel
+     */
+    public static String register(Method method, Async async) {
+        String key = key(method);
+        CHANNELS.computeIfAbsent(key, k -> create(k, method, async));
+        return key;
+    }
+
+    /**
+     * Registers every {@link Async} hook declared by the class
+     */
+    public static void registerAll(Class<?> hookClass) {
+        for (Method method : hookClass.getDeclaredMethods()) {
+            Async async = method.getAnnotation(Async.class);
+            if (async != null) {
+                register(method, async);
+            }
+        }
+    }
+
+    /**
+     * Stops the consumer of the channel after it has delivered every event that was already published, the events
+     * published after it are dropped
+     */
+    public static void unregister(String key) {
+        AsyncHookChannel channel = CHANNELS.remove(key);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * The key of a hook, overloads of the same name have different keys
+     *
+     * @param descriptor the descriptor of the hook method
+     */
+    public static String key(String owner, String name, String descriptor) {
+        return owner.replace('/', '.') + "." + name + descriptor;
+    }
+
+    public static String key(Method method) {
+        String descriptor = MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+        return key(method.getDeclaringClass().getName(), method.getName(), descriptor);
+    }
+
+    /**
+     * Called by the injected code, it never looks up a hook so the caller does not wait for one
+     *
+     * @return a slot to fill in and publish, or null if the event is dropped or the channel is not registered
+     */
+    public static Slot claim(String key) {
+        AsyncHookChannel channel = CHANNELS.get(key);
+        return channel != null ? channel.claim() : null;
+    }
+
+    /**
+     * @return how many events of the channel were dropped because of its {@link Backpressure}
+     */
+    public static long getDroppedCount(String key) {
+        AsyncHookChannel channel = CHANNELS.get(key);
+        return channel != null ? channel.dropped.get() : 0L;
+    }
+
+    private Slot claim() {
+        // a weave only registers the channel, the thread is started once a woven method runs
+        if (!started.get() && started.compareAndSet(false, true)) {
+            consumer.start();
+        }
+
+        if (backpressure == Backpressure.SAMPLE && tail.get() - head >= slots.length >> 1
+                && (sampleCounter.incrementAndGet() & Integer.MAX_VALUE) % sampleRate != 0) {
+            dropped.incrementAndGet();
+            return null;
+        }
+
+        while (true) {
+            long position = tail.get();
+            Slot slot = slots[(int) position & mask];
+            long diff = slot.sequence - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.position = position;
+                    return slot;
+                }
+            } else if (diff < 0) {
+                // the consumer has not recycled this slot yet, so the queue is full
+                if (backpressure != Backpressure.BLOCK || !running) {
+                    dropped.incrementAndGet();
+                    return null;
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    private void consume() {
+        int idle = 0;
+        while (true) {
+            long position = head;
+            Slot slot = slots[(int) position & mask];
+            if (slot.sequence != position + 1) {
+                if (!running && tail.get() == position) {
+                    return;
+                }
+
+                if (++idle < SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // the slot is checked again after the flag is set, a producer that published in between sees the flag
+                waiting = true;
+                if (slot.sequence != position + 1 && running) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+
+            idle = 0;
+            try {
+                hook.invokeExact(slot.args);
+            } catch (Throwable t) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+
+            Arrays.fill(slot.args, null);
+            slot.sequence = position + slots.length;
+            head = position + 1;
+        }
+    }
+
+    private void signal() {
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+
+    private static AsyncHookChannel create(String key, Method method, Async async) {
+        if (!Modifier.isStatic(method.getModifiers()) || method.getReturnType() != void.class) {
+            throw new IllegalArgumentException("Async hook must be a static method returning void: " + key);
+        }
+
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return new AsyncHookChannel(key, handle, async.capacity(), async.backpressure(), async.sampleRate(), async.virtualThread());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Async hook is not accessible: " + key, e);
+        }
+    }
+
+    private static Thread newConsumer(Runnable task, String name, boolean virtualThread) {
+        if (virtualThread) {
+            try {
+                // Thread.ofVirtual() is only available on Java 21 and above
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+                return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, task);
+            } catch (ReflectiveOperationException ignored) {
+            }
+        }
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * A preallocated event, the injected code writes the hook arguments into {@link #args}
+     */
+    public static final class Slot {
+
+        public final Object[] args;
+
+        private final AsyncHookChannel channel;
+        private volatile long sequence;
+        private long position;
+
+        private Slot(AsyncHookChannel channel, long sequence, int arity) {
+            this.channel = channel;
+            this.sequence = sequence;
+            this.args = new Object[arity];
+        }
+
+        public void publish() {
+            sequence = position + 1;
+            channel.signal();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package io.github.brqnko.bytekin.hook;
+
+import io.github.brqnko.bytekin.injection.Batch;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The calls of a {@link Batch} hook that were recorded by one thread.
+ * <p>
+ * Every value the hook would have received is a column, and every call is a row. Columns of
+ * boolean, byte, char, short, int and float values are stored in an {@code int[]}, long and double
+ * values in a {@code long[]} and references in an {@code Object[]}. A batch is only valid during the
+ * hook call, its buffers are reused for the next batch of the same thread.
+ * <p>
+ * Delivery is lossy: a partial batch is only delivered when its thread records another call, when
+ * {@link #flush(String)} or {@link #flushAll()} drains it, or when the JVM shuts down. Batches of threads
+ * that have exited are drained by the next flush or by the next thread that starts recording. The flush
+ * interval is only checked when the thread records its next call, so the batch of an idle thread waits
+ * until one of those happens.
+ * <p>
+ * The hook runs on whichever thread fills or drains the batch. A failing hook does not fail that call, the
+ * failure is counted and reported to the uncaught exception handler of the thread.
+ */
+public final class HookBatch {
+
+    public static final String BATCH_OWNER = "io/github/brqnko/bytekin/hook/HookBatch";
+    public static final String BATCH_DESC = "L" + BATCH_OWNER + ";";
+
+    public static final String METHOD_BEGIN = "begin";
+    public static final String METHOD_BEGIN_DESC = "(Ljava/lang/String;Ljava/lang/String;)" + BATCH_DESC;
+    public static final String METHOD_ADD = "add";
+    public static final String METHOD_COMMIT = "commit";
+
+    /** Column kinds used in the column layout string */
+    public static final char COLUMN_INT = 'I';
+    public static final char COLUMN_LONG = 'J';
+    public static final char COLUMN_OBJECT = 'L';
+
+    private static final Map<String, Channel> CHANNELS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(HookBatch::shutdown, "bytekin-batch-shutdown"));
+    }
+
+    private final Channel channel;
+    private final Thread owner;
+
+    private final int[][] ints;
+    private final long[][] longs;
+    private final Object[][] objects;
+
+    private int size;
+    private int column;
+    private long deadline;
+    /** Set by another thread that wants this batch delivered, checked by the owner when it records a call */
+    private volatile boolean flushRequested;
+
+    private HookBatch(Channel channel) {
+        this.channel = channel;
+        this.owner = Thread.currentThread();
+
+        int columns = channel.columns.length();
+        this.ints = new int[columns][];
+        this.longs = new long[columns][];
+        this.objects = new Object[columns][];
+        for (int i = 0; i < columns; i++) {
+            switch (channel.columns.charAt(i)) {
+                case COLUMN_INT:
+                    ints[i] = new int[channel.capacity];
+                    break;
+                case COLUMN_LONG:
+                    longs[i] = new long[channel.capacity];
+                    break;
+                default:
+                    objects[i] = new Object[channel.capacity];
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Creates the channel of a {@link Batch} hook if it does not exist yet
+     *
+     * @param columns the column layout, one of {@link #COLUMN_INT}, {@link #COLUMN_LONG} and {@link #COLUMN_OBJECT} per value
+     * @return the key the injected code uses to find the channel
+     */
+    public static String register(Method method, Batch batch, String columns) {
+        // every batch hook receives a single HookBatch, so the name alone tells them apart
+        String key = method.getDeclaringClass().getName() + "." + method.getName();
+        Channel channel = CHANNELS.computeIfAbsent(key, k -> create(k, method, batch, columns));
+        if (!channel.columns.equals(columns)) {
+            throw new IllegalStateException("Batch hook " + key + " is used with different values: " + channel.columns + " and " + columns);
+        }
+        return key;
+    }
+
+    /**
+     * Called by the injected code before it appends the values of a call
+     */
+    public static HookBatch begin(String key, String columns) {
+        Channel channel = CHANNELS.get(key);
+        if (channel == null) {
+            channel = CHANNELS.computeIfAbsent(key, k -> resolve(k, columns));
+        }
+        return channel.local.get();
+    }
+
+    /**
+     * Calls the hook with the calls the current thread and threads that have exited have recorded so far.
+     * Batches of other live threads are only written by their thread, so they are flushed when it records its next call.
+     */
+    public static void flush(String key) {
+        Channel channel = CHANNELS.get(key);
+        if (channel != null) {
+            channel.flush(false);
+        }
+    }
+
+    /**
+     * @return how many times the hook of the channel has failed
+     */
+    public static long getFailedCount(String key) {
+        Channel channel = CHANNELS.get(key);
+        return channel != null ? channel.failed.get() : 0L;
+    }
+
+    /**
+     * Does {@link #flush(String)} for every batch hook
+     */
+    public static void flushAll() {
+        for (Channel channel : CHANNELS.values()) {
+            channel.flush(false);
+        }
+    }
+
+    /**
+     * Delivers every batch, including those of threads that are still running. A thread that records
+     * a call at the same time may lose it, which is acceptable only while the JVM shuts down.
+     */
+    private static void shutdown() {
+        for (Channel channel : CHANNELS.values()) {
+            channel.flush(true);
+        }
+    }
+
+    public HookBatch add(int value) {
+        ints[column++][size] = value;
+        return this;
+    }
+
+    public HookBatch add(long value) {
+        longs[column++][size] = value;
+        return this;
+    }
+
+    public HookBatch add(float value) {
+        ints[column++][size] = Float.floatToRawIntBits(value);
+        return this;
+    }
+
+    public HookBatch add(double value) {
+        longs[column++][size] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public HookBatch add(Object value) {
+        objects[column++][size] = value;
+        return this;
+    }
+
+    /**
+     * Called by the injected code after it has appended every value of a call
+     */
+    public void commit() {
+        column = 0;
+        size++;
+
+        if (size == channel.capacity || flushRequested) {
+            flush();
+            return;
+        }
+
+        if (channel.intervalNanos > 0) {
+            long now = System.nanoTime();
+            if (size == 1) {
+                deadline = now + channel.intervalNanos;
+            } else if (now - deadline >= 0) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        flushRequested = false;
+        if (size == 0) {
+            return;
+        }
+
+        try {
+            channel.hook.invokeExact(this);
+        } catch (Throwable t) {
+            // the call that filled the batch is not the one that failed
+            channel.failed.incrementAndGet();
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+        } finally {
+            // do not keep references of the flushed calls alive
+            for (Object[] values : objects) {
+                if (values != null) {
+                    Arrays.fill(values, 0, size, null);
+                }
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * @return the number of recorded calls
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getInt(int column, int row) {
+        return ints[column][row];
+    }
+
+    public boolean getBoolean(int column, int row) {
+        return ints[column][row] != 0;
+    }
+
+    public float getFloat(int column, int row) {
+        return Float.intBitsToFloat(ints[column][row]);
+    }
+
+    public long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    public double getDouble(int column, int row) {
+        return Double.longBitsToDouble(longs[column][row]);
+    }
+
+    public Object getObject(int column, int row) {
+        return objects[column][row];
+    }
+
+    /**
+     * @return the raw column, only the first {@link #size()} elements are valid
+     */
+    public int[] getInts(int column) {
+        return ints[column];
+    }
+
+    public long[] getLongs(int column) {
+        return longs[column];
+    }
+
+    public Object[] getObjects(int column) {
+        return objects[column];
+    }
+
+    private static Channel create(String key, Method method, Batch batch, String columns) {
+        if (!Modifier.isStatic(method.getModifiers()) || method.getReturnType() != void.class
+                || !Arrays.equals(method.getParameterTypes(), new Class<?>[]{HookBatch.class})) {
+            throw new IllegalArgumentException("Batch hook must be declared as static void " + method.getName() + "(HookBatch): " + key);
+        }
+        if (batch.size() <= 0) {
+            throw new IllegalArgumentException("Invalid batch size " + batch.size() + " for batch hook " + key);
+        }
+
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.methodType(void.class, HookBatch.class));
+            return new Channel(handle, columns, batch.size(), TimeUnit.MILLISECONDS.toNanos(batch.flushIntervalMillis()));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Batch hook is not accessible: " + key, e);
+        }
+    }
+
+    /**
+     * Finds the hook of a channel that was not registered in this JVM, such as for classes woven at build time
+     */
+    private static Channel resolve(String key, String columns) {
+        int separator = key.lastIndexOf('.');
+        String owner = key.substring(0, separator);
+        String name = key.substring(separator + 1);
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            Class<?> clazz = Class.forName(owner, true, loader != null ? loader : HookBatch.class.getClassLoader());
+            for (Method method : clazz.getDeclaredMethods()) {
+                Batch batch = method.getAnnotation(Batch.class);
+                if (batch != null && method.getName().equals(name)) {
+                    return create(key, method, batch, columns);
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not find the owner of batch hook " + key, e);
+        }
+        throw new IllegalStateException("Could not find batch hook " + key);
+    }
+
+    private static final class Channel {
+
+        private final MethodHandle hook;
+        private final String columns;
+        private final int capacity;
+        private final long intervalNanos;
+
+        private final ThreadLocal<HookBatch> local;
+        /** The batches of every thread that has recorded a call, so they can still be drained after it exits */
+        private final Set<HookBatch> batches = ConcurrentHashMap.newKeySet();
+        private final AtomicLong failed = new AtomicLong();
+
+        private Channel(MethodHandle hook, String columns, int capacity, long intervalNanos) {
+            this.hook = hook;
+            this.columns = columns;
+            this.capacity = capacity;
+            this.intervalNanos = intervalNanos;
+            this.local = ThreadLocal.withInitial(this::newBatch);
+        }
+
+        private HookBatch newBatch() {
+            drainExited();
+            HookBatch batch = new HookBatch(this);
+            batches.add(batch);
+            return batch;
+        }
+
+        private void flush(boolean shutdown) {
+            drainExited();
+
+            Thread current = Thread.currentThread();
+            for (HookBatch batch : batches) {
+                if (batch.owner == current || shutdown) {
+                    batch.flush();
+                } else {
+                    batch.flushRequested = true;
+                }
+            }
+        }
+
+        private void drainExited() {
+            for (HookBatch batch : batches) {
+                // nothing writes the batch after its owner has exited; it is removed first so only one thread drains it
+                if (!batch.owner.isAlive() && batches.remove(batch)) {
+                    batch.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.github.brqnko.bytekin.hook;
+
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the hooks of call sites that use {@link io.github.brqnko.bytekin.injection.Linkage#DYNAMIC}.
+ * <p>
+ * Every site is linked to a {@link MutableCallSite}, so registering a hook again retargets all
+ * sites that already have been linked while the JIT can still inline through them.
+ */
+public final class HookRegistry {
+
+    public static final String BOOTSTRAP_OWNER = "io/github/brqnko/bytekin/hook/HookRegistry";
+    public static final String BOOTSTRAP_NAME = "bootstrap";
+    public static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private static final MethodHandle EMPTY_CALLBACK;
+    private static final MethodHandle UNLINKED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            EMPTY_CALLBACK = lookup.findStatic(CallbackInfo.class, "empty", MethodType.methodType(CallbackInfo.class));
+            UNLINKED = lookup.findStatic(HookRegistry.class, "unlinked", MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private HookRegistry() {
+    }
+
+    /**
+     * Registers or replaces the hook that is called by the sites bound to the owner and name
+     *
+     * @param owner the hook owner used in the injection data
+     * @param name the hook name used in the injection data
+     * @param handle the hook, it is adapted to the type of each site with {@link MethodHandle#asType}
+     */
+    public static void register(String owner, String name, MethodHandle handle) {
+        if (handle == null) {
+            throw new IllegalArgumentException("Hook handle must not be null: " + key(owner, name));
+        }
+        entry(key(owner, name)).update(handle);
+    }
+
+    /**
+     * Registers or replaces the hook with an implementation of a functional interface, such as a lambda
+     *
+     * @param owner the hook owner used in the injection data
+     * @param name the hook name used in the injection data
+     * @param functionalInterface the interface that the hook implements
+     * @param hook the hook
+     */
+    public static <T> void register(String owner, String name, Class<T> functionalInterface, T hook) {
+        Method method = findFunctionalMethod(functionalInterface);
+        try {
+            register(owner, name, MethodHandles.publicLookup().unreflect(method).bindTo(hook));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Functional interface is not accessible: " + functionalInterface.getName(), e);
+        }
+    }
+
+    /**
+     * Removes the hook, sites bound to it return {@link CallbackInfo#empty()} or throw from then on
+     */
+    public static void unregister(String owner, String name) {
+        Entry entry = ENTRIES.get(key(owner, name));
+        if (entry != null) {
+            entry.update(null);
+        }
+    }
+
+    public static boolean isRegistered(String owner, String name) {
+        Entry entry = ENTRIES.get(key(owner, name));
+        return entry != null && entry.handle != null;
+    }
+
+    /**
+     * The bootstrap method of every dynamic hook site
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String owner) {
+        return entry(key(owner, name)).link(type);
+    }
+
+    private static Entry entry(String key) {
+        return ENTRIES.computeIfAbsent(key, Entry::new);
+    }
+
+    private static String key(String owner, String name) {
+        return owner.replace('/', '.') + "." + name;
+    }
+
+    private static Method findFunctionalMethod(Class<?> functionalInterface) {
+        if (!functionalInterface.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + functionalInterface.getName());
+        }
+
+        Method found = null;
+        for (Method method : functionalInterface.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers()) || isObjectMethod(method)) {
+                continue;
+            }
+            if (found != null) {
+                throw new IllegalArgumentException("Not a functional interface: " + functionalInterface.getName());
+            }
+            found = method;
+        }
+
+        if (found == null) {
+            throw new IllegalArgumentException("Not a functional interface: " + functionalInterface.getName());
+        }
+        return found;
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static Object unlinked(String key) {
+        throw new IllegalStateException("No hook registered for " + key);
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        /** Held weakly, the class of a site keeps it alive, so the sites of unloaded classes are dropped */
+        private final List<WeakReference<MutableCallSite>> sites = new ArrayList<>();
+
+        private volatile MethodHandle handle;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        private synchronized CallSite link(MethodType type) {
+            MutableCallSite site = new MutableCallSite(type);
+            site.setTarget(adapt(handle, type));
+            liveSites();
+            sites.add(new WeakReference<>(site));
+            return site;
+        }
+
+        private synchronized void update(MethodHandle handle) {
+            this.handle = handle;
+            List<MutableCallSite> live = liveSites();
+            if (live.isEmpty()) {
+                return;
+            }
+
+            for (MutableCallSite site : live) {
+                site.setTarget(adapt(handle, site.type()));
+            }
+            MutableCallSite.syncAll(live.toArray(new MutableCallSite[0]));
+        }
+
+        /**
+         * Prunes the sites that were collected and returns the others
+         */
+        private List<MutableCallSite> liveSites() {
+            List<MutableCallSite> live = new ArrayList<>(sites.size());
+            for (Iterator<WeakReference<MutableCallSite>> iterator = sites.iterator(); iterator.hasNext(); ) {
+                MutableCallSite site = iterator.next().get();
+                if (site == null) {
+                    iterator.remove();
+                } else {
+                    live.add(site);
+                }
+            }
+            return live;
+        }
+
+        private MethodHandle adapt(MethodHandle handle, MethodType type) {
+            if (handle != null) {
+                return handle.asType(type);
+            }
+
+            // an unregistered hook keeps the target method running when it can, and fails loudly otherwise
+            MethodHandle fallback = type.returnType() == CallbackInfo.class
+                    ? EMPTY_CALLBACK
+                    : MethodHandles.insertArguments(UNLINKED, 0, key);
+            return MethodHandles.dropArguments(fallback, 0, type.parameterList()).asType(type);
+        }
+    }
+}
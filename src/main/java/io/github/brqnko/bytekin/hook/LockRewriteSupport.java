@@ -0,0 +1,171 @@
+package io.github.brqnko.bytekin.hook;
+
+import io.github.brqnko.bytekin.injection.LockStrategy;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The locks that replace the monitors of a method transformed with {@link io.github.brqnko.bytekin.injection.RewriteLock}.
+ * <p>
+ * Every rewritten site calls {@link #enter} and {@link #exit} with the monitor and a key hash. Each monitor
+ * has its own read-write lock in one table shared by every rewritten method, whatever class declares it and
+ * whatever strategy or number of stripes it uses, so methods that synchronized on the same object still exclude
+ * each other and unrelated monitors never meet. {@link LockStrategy#READ} takes its read side and
+ * {@link LockStrategy#WRITE} its write side. {@link LockStrategy#STRIPED} takes its read side and then one of
+ * the monitor's stripes chosen by the key hash, so it excludes writers and calls with the same key, but runs
+ * alongside readers. The number of stripes of a monitor is fixed by the first method that locks it.
+ * <p>
+ * A read lock cannot be upgraded, so taking the write side while the thread holds the read side of the same
+ * monitor throws instead of waiting for itself.
+ */
+public final class LockRewriteSupport {
+
+    public static final String SUPPORT_OWNER = "io/github/brqnko/bytekin/hook/LockRewriteSupport";
+    public static final String SUPPORT_DESC = "L" + SUPPORT_OWNER + ";";
+
+    public static final String METHOD_OF = "of";
+    public static final String METHOD_OF_DESC = "(Ljava/lang/String;II)" + SUPPORT_DESC;
+    public static final String METHOD_ENTER = "enter";
+    public static final String METHOD_EXIT = "exit";
+    public static final String METHOD_ENTER_WRITE = "enterWrite";
+    public static final String METHOD_EXIT_WRITE = "exitWrite";
+    public static final String METHOD_ENTER_DESC = "(Ljava/lang/Object;I)V";
+
+    /** The locks of every rewritten monitor, the monitors are held weakly so they can still be collected */
+    private static final Map<MonitorKey, MonitorLocks> MONITORS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+
+    private final boolean striped;
+    private final int stripes;
+
+    private LockRewriteSupport(boolean striped, int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) {
+            size <<= 1;
+        }
+
+        this.striped = striped;
+        this.stripes = size;
+    }
+
+    /**
+     * Called by the transformed method to find its locks
+     *
+     * @param key the owner, name and descriptor of the method
+     * @param strategy the ordinal of the {@link LockStrategy}
+     * @param stripes the number of stripes of the monitors this method locks first
+     */
+    public static LockRewriteSupport of(String key, int strategy, int stripes) {
+        LockStrategy lockStrategy = LockStrategy.values()[strategy];
+        if (lockStrategy == LockStrategy.NONE) {
+            throw new IllegalArgumentException("Removed locks have no support: " + key);
+        }
+        return new LockRewriteSupport(lockStrategy == LockStrategy.STRIPED, stripes);
+    }
+
+    private MonitorLocks locks(Object monitor) {
+        MonitorLocks locks = MONITORS.get(new MonitorKey(monitor, null));
+        if (locks != null) {
+            return locks;
+        }
+
+        Reference<?> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            MONITORS.remove(collected);
+        }
+        return MONITORS.computeIfAbsent(new MonitorKey(monitor, COLLECTED), k -> new MonitorLocks(stripes));
+    }
+
+    public void enter(Object monitor, int hash) {
+        MonitorLocks locks = locks(monitor);
+        locks.readWrite.readLock().lock();
+        if (striped) {
+            locks.stripe(hash).lock();
+        }
+    }
+
+    public void exit(Object monitor, int hash) {
+        MonitorLocks locks = locks(monitor);
+        if (striped) {
+            locks.stripe(hash).unlock();
+        }
+        locks.readWrite.readLock().unlock();
+    }
+
+    public void enterWrite(Object monitor, int hash) {
+        ReentrantReadWriteLock lock = locks(monitor).readWrite;
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("Cannot take the write lock of a rewritten monitor while the thread holds its read lock");
+        }
+        lock.writeLock().lock();
+    }
+
+    public void exitWrite(Object monitor, int hash) {
+        locks(monitor).readWrite.writeLock().unlock();
+    }
+
+    /**
+     * Compares monitors by identity, the key of a lookup has no queue and is never stored
+     */
+    private static final class MonitorKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        MonitorKey(Object monitor, ReferenceQueue<Object> queue) {
+            super(monitor, queue);
+            this.hash = System.identityHashCode(monitor);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MonitorKey)) {
+                return false;
+            }
+            Object monitor = get();
+            return monitor != null && monitor == ((MonitorKey) obj).get();
+        }
+    }
+
+    private static final class MonitorLocks {
+
+        private final ReentrantReadWriteLock readWrite = new ReentrantReadWriteLock();
+        private final AtomicReferenceArray<ReentrantLock> stripes;
+        private final int mask;
+
+        MonitorLocks(int stripes) {
+            this.stripes = new AtomicReferenceArray<>(stripes);
+            this.mask = stripes - 1;
+        }
+
+        private static int spread(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /** Stripes are created on first use, so monitors that are never striped stay small */
+        ReentrantLock stripe(int hash) {
+            int index = spread(hash) & mask;
+            ReentrantLock lock = stripes.get(index);
+            if (lock != null) {
+                return lock;
+            }
+            stripes.compareAndSet(index, null, new ReentrantLock());
+            return stripes.get(index);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package io.github.brqnko.bytekin.hook;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The cache of a method transformed with {@link io.github.brqnko.bytekin.injection.Memoize}.
+ * <p>
+ * Entries are spread over stripes that are locked independently, each stripe evicts its oldest entry once it
+ * is full. Methods keyed on a single primitive use a long-keyed table, so the key is never boxed.
+ * Concurrent misses of the same key are single-flight: the first caller computes the value, the others wait
+ * for it and share the result.
+ * <p>
+ * Caches are attached to the class that declares the method, so the same class loaded by different loaders
+ * has separate caches, and a cache is unloaded together with its class.
+ */
+public final class MemoCache {
+
+    public static final String CACHE_OWNER = "io/github/brqnko/bytekin/hook/MemoCache";
+    public static final String CACHE_DESC = "L" + CACHE_OWNER + ";";
+    public static final String ENTRY_OWNER = CACHE_OWNER + "$Entry";
+    public static final String ENTRY_DESC = "L" + ENTRY_OWNER + ";";
+
+    public static final String METHOD_OF = "of";
+    public static final String METHOD_OF_DESC = "(Ljava/lang/Class;Ljava/lang/String;IJ)" + CACHE_DESC;
+    public static final String METHOD_BEGIN = "begin";
+    public static final String METHOD_BEGIN_LONG_DESC = "(J)" + ENTRY_DESC;
+    public static final String METHOD_BEGIN_ARGS_DESC = "([Ljava/lang/Object;)" + ENTRY_DESC;
+    public static final String METHOD_IS_DONE = "isDone";
+    public static final String METHOD_GET_VALUE = "getValue";
+    public static final String METHOD_COMPLETE = "complete";
+    public static final String METHOD_FAIL = "fail";
+
+    private static final ClassValue<Map<String, MemoCache>> CACHES = new ClassValue<Map<String, MemoCache>>() {
+        @Override
+        protected Map<String, MemoCache> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final int MAX_STRIPES = 16;
+    private static final long NEVER = 0L;
+
+    private final long expireNanos;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    private MemoCache(int maximumSize, long expireNanos) {
+        int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(maximumSize));
+        int stripeSize = (maximumSize + stripes - 1) / stripes;
+
+        this.expireNanos = expireNanos;
+        this.stripes = new Stripe[stripes];
+        this.mask = stripes - 1;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(stripeSize);
+        }
+    }
+
+    /**
+     * Called by the transformed method to find its cache
+     *
+     * @param owner the class that declares the method
+     * @param key the owner, name and descriptor of the method
+     * @param maximumSize the maximum number of entries
+     * @param expireNanos the time after which an entry is recomputed, 0 to keep entries until they are evicted
+     */
+    public static MemoCache of(Class<?> owner, String key, int maximumSize, long expireNanos) {
+        Map<String, MemoCache> caches = CACHES.get(owner);
+        MemoCache cache = caches.get(key);
+        if (cache != null) {
+            return cache;
+        }
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize + " for memoized method " + key);
+        }
+        return caches.computeIfAbsent(key, k -> new MemoCache(maximumSize, expireNanos));
+    }
+
+    /**
+     * Removes every entry of the cache of the method
+     *
+     * @param owner the class that declares the method
+     */
+    public static void invalidate(Class<?> owner, String key) {
+        MemoCache cache = CACHES.get(owner).get(key);
+        if (cache != null) {
+            for (Stripe stripe : cache.stripes) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Looks up a single primitive key, widened to a long or converted to its raw bits
+     *
+     * @return a done entry on a hit, otherwise a pending entry that the caller has to complete or fail
+     */
+    public Entry begin(long key) {
+        int hash = Long.hashCode(key * 0x9E3779B97F4A7C15L);
+        Stripe stripe = stripes[hash & mask];
+        while (true) {
+            Entry entry;
+            synchronized (stripe) {
+                entry = stripe.getLong(key, hash);
+                if (entry == null || isExpired(entry)) {
+                    if (entry != null) {
+                        stripe.removeLong(key, hash);
+                    }
+                    entry = new Entry(stripe, key, null, hash);
+                    stripe.putLong(entry);
+                    return entry;
+                }
+            }
+
+            Entry result = await(entry);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Looks up the arguments of a call
+     *
+     * @return a done entry on a hit, otherwise a pending entry that the caller has to complete or fail
+     */
+    public Entry begin(Object[] args) {
+        Args key = new Args(args);
+        Stripe stripe = stripes[key.hash & mask];
+        while (true) {
+            Entry entry;
+            synchronized (stripe) {
+                entry = stripe.get(key);
+                if (entry == null || isExpired(entry)) {
+                    entry = new Entry(stripe, 0L, key, key.hash);
+                    stripe.put(key, entry);
+                    return entry;
+                }
+            }
+
+            Entry result = await(entry);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return expireNanos != NEVER && entry.done && System.nanoTime() - entry.writeTime >= expireNanos;
+    }
+
+    /**
+     * @return the entry once it is done, an uncached entry for a recursive call, or null if the computation failed
+     */
+    private static Entry await(Entry entry) {
+        if (entry.done) {
+            return entry;
+        }
+
+        // a recursive call with the same key would wait for itself, so it computes the value without the cache
+        if (entry.owner == Thread.currentThread()) {
+            return new Entry(null, 0L, null, 0);
+        }
+
+        synchronized (entry) {
+            boolean interrupted = false;
+            while (!entry.done && !entry.failed) {
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return entry.done ? entry : null;
+    }
+
+    /**
+     * A cached value, or the computation of one
+     */
+    public static final class Entry {
+
+        private final Stripe stripe;
+        private final long longKey;
+        private final Args key;
+        private final int hash;
+
+        private volatile Thread owner;
+        private volatile boolean done;
+        private volatile boolean failed;
+        private Object value;
+        private long writeTime;
+
+        private Entry(Stripe stripe, long longKey, Args key, int hash) {
+            this.stripe = stripe;
+            this.longKey = longKey;
+            this.key = key;
+            this.hash = hash;
+            this.owner = Thread.currentThread();
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Called by the transformed method before it returns the computed value
+         */
+        public void complete(Object value) {
+            if (done) {
+                return;
+            }
+
+            synchronized (this) {
+                this.value = value;
+                this.writeTime = System.nanoTime();
+                this.done = true;
+                this.owner = null;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Called by the transformed method when it throws, the next call computes the value again
+         */
+        public void fail() {
+            if (done || stripe == null) {
+                return;
+            }
+
+            synchronized (stripe) {
+                if (key != null) {
+                    stripe.remove(key, this);
+                } else {
+                    stripe.removeLong(longKey, hash, this);
+                }
+            }
+            synchronized (this) {
+                this.failed = true;
+                this.owner = null;
+                notifyAll();
+            }
+        }
+    }
+
+    private static final class Args {
+
+        private final Object[] values;
+        private final int hash;
+
+        private Args(Object[] values) {
+            this.values = values;
+            int h = Arrays.hashCode(values);
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Args && Arrays.equals(values, ((Args) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A part of the cache guarded by its own monitor. Argument keys are kept in insertion order, long keys in
+     * an open-addressing table whose insertion order is tracked with a ring of slots.
+     */
+    private static final class Stripe {
+
+        private final int maximumSize;
+        private final LinkedHashMap<Args, Entry> entries;
+
+        private final long[] longKeys;
+        private final Entry[] longEntries;
+        private final int longMask;
+        private final Entry[] order;
+        private int orderHead;
+        private int longSize;
+
+        private Stripe(int maximumSize) {
+            this.maximumSize = maximumSize;
+            this.entries = new LinkedHashMap<Args, Entry>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Args, MemoCache.Entry> eldest) {
+                    return size() > Stripe.this.maximumSize;
+                }
+            };
+
+            int capacity = Integer.highestOneBit(Math.max(2, maximumSize * 2 - 1)) << 1;
+            this.longKeys = new long[capacity];
+            this.longEntries = new Entry[capacity];
+            this.longMask = capacity - 1;
+            this.order = new Entry[maximumSize];
+        }
+
+        private Entry get(Args key) {
+            return entries.get(key);
+        }
+
+        private void put(Args key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        private void remove(Args key, Entry entry) {
+            entries.remove(key, entry);
+        }
+
+        private Entry getLong(long key, int hash) {
+            for (int i = hash & longMask; longEntries[i] != null; i = (i + 1) & longMask) {
+                if (longKeys[i] == key) {
+                    return longEntries[i];
+                }
+            }
+            return null;
+        }
+
+        private void putLong(Entry entry) {
+            // evict the oldest entry, it is always at the head of the ring
+            if (longSize == maximumSize) {
+                Entry eldest = order[orderHead];
+                order[orderHead] = null;
+                orderHead = (orderHead + 1) % order.length;
+                removeLong(eldest.longKey, eldest.hash, eldest);
+            }
+
+            int i = entry.hash & longMask;
+            while (longEntries[i] != null) {
+                i = (i + 1) & longMask;
+            }
+            longKeys[i] = entry.longKey;
+            longEntries[i] = entry;
+            longSize++;
+
+            int slot = (orderHead + longSize - 1) % order.length;
+            order[slot] = entry;
+        }
+
+        private void removeLong(long key, int hash) {
+            Entry entry = getLong(key, hash);
+            if (entry != null) {
+                removeLong(key, hash, entry);
+            }
+        }
+
+        private void removeLong(long key, int hash, Entry entry) {
+            int i = hash & longMask;
+            while (longEntries[i] != null && longEntries[i] != entry) {
+                i = (i + 1) & longMask;
+            }
+            if (longEntries[i] == null) {
+                return;
+            }
+
+            longEntries[i] = null;
+            longSize--;
+            forgetOrder(entry);
+
+            // shift the following entries back, so lookups do not stop at the hole
+            int hole = i;
+            for (int j = (i + 1) & longMask; longEntries[j] != null; j = (j + 1) & longMask) {
+                int home = longEntries[j].hash & longMask;
+                if (((j - home) & longMask) >= ((j - hole) & longMask)) {
+                    longKeys[hole] = longKeys[j];
+                    longEntries[hole] = longEntries[j];
+                    longEntries[j] = null;
+                    hole = j;
+                }
+            }
+        }
+
+        private void forgetOrder(Entry entry) {
+            // keep the ring compact, so its live entries stay contiguous from the head
+            int index = -1;
+            for (int i = 0; i <= longSize; i++) {
+                int slot = (orderHead + i) % order.length;
+                if (order[slot] == entry) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+
+            for (int i = index; i < longSize; i++) {
+                order[(orderHead + i) % order.length] = order[(orderHead + i + 1) % order.length];
+            }
+            order[(orderHead + longSize) % order.length] = null;
+        }
+
+        private void clear() {
+            synchronized (this) {
+                entries.clear();
+                Arrays.fill(longEntries, null);
+                Arrays.fill(order, null);
+                orderHead = 0;
+                longSize = 0;
+            }
+        }
+    }
+}
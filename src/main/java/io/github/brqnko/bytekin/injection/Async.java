@@ -0,0 +1,34 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes an {@link Inject} hook run on a background consumer instead of the calling thread.
+ * <p>
+ * The injected code copies the arguments into a preallocated slot of a lock-free queue and returns
+ * immediately, so the hook must return void and cannot cancel the target method. The hook receives the self
+ * reference of an instance method followed by the arguments of the target method.
+ * <p>
+ * The queue is created when the hook is registered, the injected code drops the events of a hook that is not
+ * registered. Classes woven at build time need {@link io.github.brqnko.bytekin.hook.AsyncHookChannel#registerAll(Class)}
+ * at startup.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Async {
+
+    /** The number of slots in the queue, rounded up to a power of two */
+    int capacity() default 1024;
+
+    Backpressure backpressure() default Backpressure.DROP;
+
+    /** Used by {@link Backpressure#SAMPLE} */
+    int sampleRate() default 16;
+
+    /** Runs the consumer on a virtual thread when the JVM supports them */
+    boolean virtualThread() default true;
+
+}
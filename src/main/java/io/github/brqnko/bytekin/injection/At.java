@@ -9,6 +9,12 @@ public enum At {
     HEAD,
 
     /** Injects the code before the return statement */
-    RETURN
+    RETURN,
+
+    /**
+     * Injects the code where the method exits with an exception, the hook receives the {@link Throwable}
+     * after the parameters. The exception is rethrown unless the hook cancels the method.
+     */
+    THROW
 
 }
@@ -0,0 +1,17 @@
+package io.github.brqnko.bytekin.injection;
+
+/**
+ * Used in {@link Async} to decide what happens when the queue of an async hook is full
+ */
+public enum Backpressure {
+
+    /** Drops the event, the calling thread never waits */
+    DROP,
+
+    /** Waits until the consumer has made room for the event */
+    BLOCK,
+
+    /** Keeps one of every {@link Async#sampleRate()} events once the queue is half full, and drops the event when it is full */
+    SAMPLE
+
+}
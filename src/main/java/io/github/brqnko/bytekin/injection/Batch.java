@@ -0,0 +1,33 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes an {@link Inject} or {@link Invoke} hook receive its calls in batches.
+ * <p>
+ * The injected code appends the values that the hook would have received into thread-local
+ * columnar buffers, and the hook is called with a whole {@link io.github.brqnko.bytekin.hook.HookBatch}
+ * once the buffer is full or the flush interval has expired. The hook must be declared as
+ * {@code static void hook(HookBatch batch)} and cannot cancel the target method.
+ * <p>
+ * Delivery is lossy, calls that are still buffered are only delivered by the next call of the same
+ * thread, by {@link io.github.brqnko.bytekin.hook.HookBatch#flush(String)} or when the JVM shuts down.
+ * An exception thrown by the hook is reported instead of being thrown into the call that filled the batch.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batch {
+
+    /** The number of calls in a batch */
+    int size() default 1024;
+
+    /**
+     * Flushes a batch that is older than this when its thread records the next call, 0 only flushes full batches.
+     * Nothing checks the interval in between, the batch of a thread that stops calling waits for a flush.
+     */
+    long flushIntervalMillis() default 0;
+
+}
@@ -0,0 +1,16 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a hook that returns the same value for the same arguments, but needs runtime state and so cannot be
+ * {@link Pure}. In class files of Java 11 and above, the hooks of constant modifications are then called once
+ * per site through a dynamic constant, and the JIT treats the result as a constant.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Deterministic {
+}
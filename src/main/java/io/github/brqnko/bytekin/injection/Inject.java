@@ -20,4 +20,11 @@ public @interface Inject {
 
     At at();
 
+    /**
+     * Shares a value between the hooks of one call of the target method. A {@link At#HEAD} hook with a local
+     * returns the value instead of a {@link CallbackInfo}, and it is stored in a fresh local of the target method.
+     * {@link At#RETURN} and {@link At#THROW} hooks with the same local receive it as their last parameter.
+     */
+    String local() default "";
+
 }
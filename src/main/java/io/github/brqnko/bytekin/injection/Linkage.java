@@ -0,0 +1,17 @@
+package io.github.brqnko.bytekin.injection;
+
+/**
+ * Decides how an injected call site is bound to its hook
+ */
+public enum Linkage {
+
+    /** The hook is a static method that is called with INVOKESTATIC */
+    STATIC,
+
+    /**
+     * The hook is looked up in {@link io.github.brqnko.bytekin.hook.HookRegistry} through INVOKEDYNAMIC,
+     * so it can be registered or replaced at runtime
+     */
+    DYNAMIC
+
+}
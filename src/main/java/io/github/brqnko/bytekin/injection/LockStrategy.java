@@ -0,0 +1,20 @@
+package io.github.brqnko.bytekin.injection;
+
+/**
+ * Used in {@link RewriteLock} to specify what replaces the monitor of a synchronized method or block
+ */
+public enum LockStrategy {
+
+    /** Locks one of several stripes chosen by the hash of an argument, so calls with different keys run in parallel, and excludes {@link #WRITE} */
+    STRIPED,
+
+    /** Takes the read side of a read-write lock, for methods that only read the guarded state */
+    READ,
+
+    /** Takes the write side of the read-write lock that {@link #READ} methods share */
+    WRITE,
+
+    /** Removes the lock, the method must only ever be called from one thread at a time */
+    NONE
+
+}
@@ -0,0 +1,31 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * With this annotation, the target method caches its return values keyed on its arguments.
+ * <p>
+ * A hit returns before the original code runs. Instance methods are also keyed on the receiver, and
+ * static methods with a single primitive parameter are keyed on it without boxing. The annotated
+ * method itself is never called.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Memoize {
+
+    /** The name of the target method that might be changed by the mapping */
+    String methodName();
+
+    /** The description of the target method that might be changed by the mapping */
+    String methodDesc();
+
+    /** The maximum number of cached values, the oldest ones are evicted first */
+    int maximumSize() default 1024;
+
+    /** Recomputes values that are older than this, 0 keeps them until they are evicted */
+    long expireAfterWriteMillis() default 0;
+
+}
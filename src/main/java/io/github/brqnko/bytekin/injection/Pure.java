@@ -0,0 +1,16 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a hook whose result only depends on its arguments and on configuration that is fixed before the target
+ * class is loaded. The hooks of constant modifications and of static field reads are then called once while the
+ * class is transformed, and their result is written into the target as a constant the JIT can fold.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Pure {
+}
@@ -22,4 +22,7 @@ public @interface Redirect {
     RedirectType type() default RedirectType.METHOD;
 
     int ordinal() default -1;
+
+    /** The expected receiver classes or interfaces of {@link RedirectType#DEVIRTUALIZE}, checked in order */
+    String[] receivers() default {};
 }
@@ -4,6 +4,22 @@ public enum RedirectType {
 
     METHOD,
     FIELD_GET,
-    FIELD_SET
+    FIELD_SET,
+
+    /**
+     * Guards a virtual or interface call with type checks against the expected receivers. A matching receiver
+     * is called directly, or through the hook overload that takes it, and any other receiver falls back to the
+     * original call.
+     */
+    DEVIRTUALIZE,
+
+    /**
+     * Replaces the allocation {@code NEW owner / DUP / INVOKESPECIAL owner.<init>desc} with a call to a factory
+     * hook that takes the constructor arguments and returns the instance, such as a pooled one or a subclass.
+     * The name of the redirect is ignored, and the ordinal counts the calls of that constructor in the order they
+     * are made, so an inner allocation of an argument comes before the outer one. Until the redirect is used,
+     * allocations of the owner that call another constructor are rebuilt after their arguments.
+     */
+    NEW
 
 }
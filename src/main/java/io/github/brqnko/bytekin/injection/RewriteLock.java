@@ -0,0 +1,38 @@
+package io.github.brqnko.bytekin.injection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * With this annotation, the synchronized blocks of the target method and the method itself, if it is
+ * synchronized, use the configured {@link LockStrategy} instead of their monitor.
+ * <p>
+ * The exception handlers that release the monitor release the new lock instead. Each monitor has
+ * one lock shared by every rewritten method that synchronizes on it, whatever class declares the method.
+ * {@link Object#wait()} and {@link Object#notify()} need the monitor, so a target method that calls them
+ * is rejected; calls made by other methods it calls cannot be detected and throw
+ * {@link IllegalMonitorStateException}. A {@link LockStrategy#READ} region that reaches a
+ * {@link LockStrategy#WRITE} region on the same monitor throws {@link IllegalStateException}, because a
+ * read lock cannot be upgraded. The annotated method itself is never called.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RewriteLock {
+
+    /** The name of the target method that might be changed by the mapping */
+    String methodName();
+
+    /** The description of the target method that might be changed by the mapping */
+    String methodDesc();
+
+    LockStrategy strategy();
+
+    /** The index of the parameter whose hash chooses the stripe of {@link LockStrategy#STRIPED}, it must not be reassigned */
+    int stripeArgument() default 0;
+
+    /** The number of stripes of a monitor, rounded up to a power of two, fixed by the first method that locks the monitor */
+    int stripes() default 64;
+
+}
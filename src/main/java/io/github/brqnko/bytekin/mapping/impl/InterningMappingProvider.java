@@ -0,0 +1,41 @@
+package io.github.brqnko.bytekin.mapping.impl;
+
+import io.github.brqnko.bytekin.mapping.IMappingProvider;
+
+/**
+ * Interns every name another mapping returns, so the transformers built from it share one copy of each class name,
+ * method name and descriptor instead of the fresh strings a mapping computes on every call
+ */
+public class InterningMappingProvider implements IMappingProvider {
+
+    private final IMappingProvider mapping;
+
+    public InterningMappingProvider(IMappingProvider mapping) {
+        this.mapping = mapping;
+    }
+
+    private static String intern(String name) {
+        return name == null ? null : name.intern();
+    }
+
+    @Override
+    public String getClassName(String className) {
+        return intern(mapping.getClassName(className));
+    }
+
+    @Override
+    public String getMethodName(String className, String methodName, String methodDesc) {
+        return intern(mapping.getMethodName(className, methodName, methodDesc));
+    }
+
+    @Override
+    public String getFieldName(String className, String fieldName, String fieldDesc) {
+        return intern(mapping.getFieldName(className, fieldName, fieldDesc));
+    }
+
+    @Override
+    public String getDesc(String desc) {
+        return intern(mapping.getDesc(desc));
+    }
+
+}
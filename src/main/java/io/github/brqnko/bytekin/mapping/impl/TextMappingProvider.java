@@ -0,0 +1,109 @@
+package io.github.brqnko.bytekin.mapping.impl;
+
+import io.github.brqnko.bytekin.mapping.IMappingProvider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A mapping read from a text file, one entry per line:
+ * <pre>
+ * class &lt;name&gt; &lt;mapped name&gt;
+ * method &lt;class&gt; &lt;name&gt; &lt;descriptor&gt; &lt;mapped name&gt;
+ * field &lt;class&gt; &lt;name&gt; &lt;descriptor&gt; &lt;mapped name&gt;
+ * </pre>
+ * Class names are written with dots, descriptors with the unmapped names. Empty lines and lines starting with # are
+ * ignored, anything that is not listed keeps its name.
+ */
+public class TextMappingProvider implements IMappingProvider {
+
+    private final Map<String, String> classes = new HashMap<>();
+    /** The internal names, used to map descriptors */
+    private final Map<String, String> internalClasses = new HashMap<>();
+    private final Map<String, String> methods = new HashMap<>();
+    private final Map<String, String> fields = new HashMap<>();
+
+    public TextMappingProvider(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] parts = line.split("\\s+");
+            if (parts[0].equals("class") && parts.length == 3) {
+                classes.put(parts[1], parts[2]);
+                internalClasses.put(parts[1].replace('.', '/'), parts[2].replace('.', '/'));
+            } else if (parts[0].equals("method") && parts.length == 5) {
+                methods.put(parts[1] + "." + parts[2] + parts[3], parts[4]);
+            } else if (parts[0].equals("field") && parts.length == 5) {
+                fields.put(parts[1] + "." + parts[2] + ":" + parts[3], parts[4]);
+            } else {
+                throw new IllegalArgumentException("Invalid mapping at line " + lineNumber + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * Bytekin passes the mapped name of the class, members are also found by the name they were written with
+     */
+    private String findMember(Map<String, String> members, String className, String key) {
+        String mapped = members.get(className + key);
+        if (mapped != null) {
+            return mapped;
+        }
+        for (Map.Entry<String, String> entry : classes.entrySet()) {
+            if (entry.getValue().equals(className)) {
+                mapped = members.get(entry.getKey() + key);
+                if (mapped != null) {
+                    return mapped;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getClassName(String className) {
+        return classes.getOrDefault(className, className);
+    }
+
+    @Override
+    public String getMethodName(String className, String methodName, String methodDesc) {
+        String mapped = findMember(methods, className, "." + methodName + methodDesc);
+        return mapped == null ? methodName : mapped;
+    }
+
+    @Override
+    public String getFieldName(String className, String fieldName, String fieldDesc) {
+        String mapped = findMember(fields, className, "." + fieldName + ":" + fieldDesc);
+        return mapped == null ? fieldName : mapped;
+    }
+
+    @Override
+    public String getDesc(String desc) {
+        StringBuilder mapped = new StringBuilder(desc.length());
+        int i = 0;
+        while (i < desc.length()) {
+            char c = desc.charAt(i);
+            int end = c == 'L' ? desc.indexOf(';', i) : -1;
+            if (end < 0) {
+                mapped.append(c);
+                i++;
+                continue;
+            }
+
+            String internalName = desc.substring(i + 1, end);
+            mapped.append('L').append(internalClasses.getOrDefault(internalName, internalName)).append(';');
+            i = end + 1;
+        }
+        return mapped.toString();
+    }
+}
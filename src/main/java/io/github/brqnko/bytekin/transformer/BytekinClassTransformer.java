@@ -1,24 +1,42 @@
 package io.github.brqnko.bytekin.transformer;
 
 import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.data.FieldConstantModification;
 import io.github.brqnko.bytekin.data.Injection;
 import io.github.brqnko.bytekin.data.Invocation;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
+import io.github.brqnko.bytekin.data.LockRewrite;
+import io.github.brqnko.bytekin.data.Memoization;
 import io.github.brqnko.bytekin.data.MethodData;
 import io.github.brqnko.bytekin.data.RedirectData;
 import io.github.brqnko.bytekin.data.VariableModification;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.transformer.method.FieldConstantMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.FusedInjectMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.LockRewriteMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.MemoizeMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.ModifyConstantMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.RedirectMethodTransformer;
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.api.IClassVisitorStage;
 import io.github.brqnko.bytekin.transformer.method.InjectMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.InvokeMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.ModifyVariableMethodTransformer;
 import io.github.brqnko.bytekin.transformer.visitor.BytekinClassVisitor;
+import io.github.brqnko.bytekin.util.ClassHierarchy;
+import io.github.brqnko.bytekin.util.ConstantPoolFilter;
+import io.github.brqnko.bytekin.util.ConstantPoolPatcher;
+import io.github.brqnko.bytekin.util.FrozenMap;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +44,25 @@ import java.util.Map;
 @Getter
 public class BytekinClassTransformer {
 
-    private final Map<MethodData, List<IBytekinMethodTransformer>> methodTransformers;
+    /** Replaced by a {@link FrozenMap} once the transformer is {@link #freeze() frozen} */
+    private Map<MethodData, List<IBytekinMethodTransformer>> methodTransformers;
+
+    /** The static fields whose values are replaced, by their name and descriptor */
+    private Map<String, FieldConstantModification> fieldConstants = new HashMap<>();
+
+    /** Built on the first transformation, once every transformer has been added */
+    @Getter(AccessLevel.NONE)
+    private volatile ConstantPoolFilter constantPoolFilter;
+
+    /** Custom visitors that see the class after the method transformers, in the same pass */
+    private List<IClassVisitorStage> classVisitorStages = new ArrayList<>();
+
+    /** Whether frames are left as they are when every method transformer keeps them */
+    private boolean incrementalFrames;
+
+    /** The number of synthetic dispatcher methods named so far */
+    @Getter(AccessLevel.NONE)
+    private int dispatchers;
 
     public BytekinClassTransformer() {
         this.methodTransformers = new HashMap<>();
@@ -50,7 +86,8 @@ public class BytekinClassTransformer {
                 mapping.getDesc(injection.getMethodDesc()),
                 injection.getHookMethodOwner(),
                 injection.getHookMethodName(),
-                injection.getAt()
+                injection.getAt(),
+                injection.getLinkage()
         ));
     }
 
@@ -72,7 +109,8 @@ public class BytekinClassTransformer {
                 mapping.getDesc(invocation.getInvokeMethodDesc()),
                 invocation.getShift(),
                 invocation.getHookMethodOwner(),
-                invocation.getHookMethodName()
+                invocation.getHookMethodName(),
+                invocation.getLinkage()
         ));
     }
 
@@ -91,7 +129,9 @@ public class BytekinClassTransformer {
                 redirect.getDesc(),
                 redirect.getOrdinal(),
                 redirect.getHookMethodOwner(),
-                redirect.getHookMethodName()
+                redirect.getHookMethodName(),
+                redirect.getLinkage(),
+                redirect.getReceivers()
         ));
     }
 
@@ -113,6 +153,16 @@ public class BytekinClassTransformer {
         ));
     }
 
+    public void addFieldConstantModification(IMappingProvider mapping, FieldConstantModification modification, String className) {
+        String mappedName = mapping.getFieldName(className, modification.getFieldName(), modification.getFieldDesc());
+        String mappedDesc = mapping.getDesc(modification.getFieldDesc());
+
+        Object constantValue = FieldConstantMethodTransformer.toConstantValue(mappedDesc, modification.getConstantValue());
+        if (this.fieldConstants.put(mappedName + mappedDesc, new FieldConstantModification(mappedName, mappedDesc, constantValue, modification.isReplaceInlined())) != null) {
+            throw new IllegalStateException("The value of " + className + "." + mappedName + " is replaced more than once");
+        }
+    }
+
     public void addVariableModification(IMappingProvider mapping, VariableModification modification, String className) {
         String mappedName = mapping.getMethodName(className, modification.getMethodName(), modification.getMethodDesc());
         String mappedDesc = mapping.getDesc(modification.getMethodDesc());
@@ -123,12 +173,191 @@ public class BytekinClassTransformer {
         transformer.add(new ModifyVariableMethodTransformer(className.replace('.', '/'), mappedName, mappedDesc, modification));
     }
 
-    public byte[] transform(byte[] bytes, int api) {
+    /**
+     * Replaces the inject transformers that share an injection point of a method with a single
+     * {@link FusedInjectMethodTransformer}, so the hooks are called through one dispatcher.
+     */
+    public void fuseInjections() {
+        fuseInjections(2);
+    }
+
+    /**
+     * Like {@link #fuseInjections()}, with 1 even a single hook is moved into a dispatcher. The target method then
+     * only keeps the call and the cancel check, which keeps small methods within the inlining limits of the JIT.
+     *
+     * @param minimumHooks the number of hooks an injection point needs to be fused
+     */
+    public void fuseInjections(int minimumHooks) {
+        for (List<IBytekinMethodTransformer> transformers : this.methodTransformers.values()) {
+            for (At at : At.values()) {
+                List<InjectMethodTransformer> hooks = new ArrayList<>();
+                for (IBytekinMethodTransformer transformer : transformers) {
+                    if (transformer instanceof InjectMethodTransformer && ((InjectMethodTransformer) transformer).getAt() == at
+                            && ((InjectMethodTransformer) transformer).isFusable()) {
+                        hooks.add((InjectMethodTransformer) transformer);
+                    }
+                }
+
+                if (hooks.isEmpty() || hooks.size() < minimumHooks) {
+                    continue;
+                }
+
+                // the fused transformer takes the place of the first hook
+                int index = transformers.indexOf(hooks.get(0));
+                transformers.removeAll(hooks);
+                transformers.add(index, new FusedInjectMethodTransformer(hooks, at, nextDispatcherName()));
+            }
+        }
+    }
+
+    private String nextDispatcherName() {
+        return "bytekin$dispatch$" + dispatchers++;
+    }
+
+    /**
+     * Appends the transformers of another transformer of the same class after the ones already added, so they see
+     * every method after them in the same pass
+     *
+     * @throws IllegalStateException if both replace the value of the same field
+     */
+    public void merge(BytekinClassTransformer other, String className) {
+        other.methodTransformers.forEach((method, transformers) -> {
+            List<IBytekinMethodTransformer> merged = this.methodTransformers.computeIfAbsent(method, k -> new ArrayList<>());
+            for (IBytekinMethodTransformer transformer : transformers) {
+                // every transformer numbers its dispatchers from zero, so they are named again for the merged class
+                if (transformer instanceof FusedInjectMethodTransformer) {
+                    transformer = ((FusedInjectMethodTransformer) transformer).withDispatcherName(nextDispatcherName());
+                }
+                merged.add(transformer);
+            }
+        });
 
-        ClassReader reader = new ClassReader(bytes);
-        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+        this.classVisitorStages.addAll(other.classVisitorStages);
+
+        other.fieldConstants.forEach((field, modification) -> {
+            if (this.fieldConstants.put(field, modification) != null) {
+                throw new IllegalStateException("The value of " + className + "." + modification.getFieldName() + " is replaced more than once");
+            }
+        });
+    }
+
+    /**
+     * Adds a custom transformer to the method, it is applied after the transformers of the method that are already added
+     */
+    public void addMethodTransformer(IMappingProvider mapping, String className, String methodName, String methodDesc, IBytekinMethodTransformer transformer) {
+        MethodData methodData = new MethodData(
+                mapping.getMethodName(className, methodName, methodDesc),
+                mapping.getDesc(methodDesc));
+
+        this.methodTransformers.computeIfAbsent(methodData, k -> new ArrayList<>()).add(transformer);
+    }
+
+    public void addClassVisitorStage(IClassVisitorStage stage) {
+        this.classVisitorStages.add(stage);
+    }
+
+    public void addMemoization(IMappingProvider mapping, Memoization memoization, String className) {
+        String mappedName = mapping.getMethodName(className, memoization.getMethodName(), memoization.getMethodDesc());
+        String mappedDesc = mapping.getDesc(memoization.getMethodDesc());
+
+        MethodData methodData = new MethodData(mappedName, mappedDesc);
+
+        List<IBytekinMethodTransformer> transformer = this.methodTransformers.computeIfAbsent(methodData, k -> new ArrayList<>());
+        transformer.add(new MemoizeMethodTransformer(
+                className,
+                mappedName,
+                mappedDesc,
+                memoization.getMaximumSize(),
+                memoization.getExpireAfterWriteMillis()
+        ));
+    }
+
+    public void addLockRewrite(IMappingProvider mapping, LockRewrite rewrite, String className) {
+        String mappedName = mapping.getMethodName(className, rewrite.getMethodName(), rewrite.getMethodDesc());
+        String mappedDesc = mapping.getDesc(rewrite.getMethodDesc());
+
+        MethodData methodData = new MethodData(mappedName, mappedDesc);
+
+        List<IBytekinMethodTransformer> transformer = this.methodTransformers.computeIfAbsent(methodData, k -> new ArrayList<>());
+        transformer.add(new LockRewriteMethodTransformer(
+                className,
+                mappedName,
+                mappedDesc,
+                rewrite.getStrategy(),
+                rewrite.getStripeArgument(),
+                rewrite.getStripes()
+        ));
+    }
+
+    /**
+     * Checks that every hook which receives a value shared with {@link io.github.brqnko.bytekin.injection.Inject#local()}
+     * has a HEAD hook that stores a value of the same type, otherwise the local would be read before it is assigned.
+     */
+    public void checkHookLocals() {
+        for (Map.Entry<MethodData, List<IBytekinMethodTransformer>> entry : this.methodTransformers.entrySet()) {
+            Map<String, String> stored = new HashMap<>();
+            for (IBytekinMethodTransformer transformer : entry.getValue()) {
+                if (transformer instanceof InjectMethodTransformer) {
+                    InjectMethodTransformer inject = (InjectMethodTransformer) transformer;
+                    if (inject.getLocalName() != null && inject.getAt() == At.HEAD
+                            && stored.put(inject.getLocalName(), inject.getLocalDesc()) != null) {
+                        throw new IllegalStateException("Local " + inject.getLocalName() + " is stored by more than one HEAD hook in " + entry.getKey().getName());
+                    }
+                }
+            }
+
+            for (IBytekinMethodTransformer transformer : entry.getValue()) {
+                if (transformer instanceof InjectMethodTransformer) {
+                    InjectMethodTransformer inject = (InjectMethodTransformer) transformer;
+                    if (inject.getLocalName() == null || inject.getAt() == At.HEAD) {
+                        continue;
+                    }
+
+                    String desc = stored.get(inject.getLocalName());
+                    if (desc == null) {
+                        throw new IllegalStateException("Local " + inject.getLocalName() + " is not stored by a HEAD hook in " + entry.getKey().getName());
+                    }
+                    if (!desc.equals(inject.getLocalDesc())) {
+                        throw new IllegalStateException("Local " + inject.getLocalName() + " is stored as " + desc + " but received as " + inject.getLocalDesc() + " in " + entry.getKey().getName());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the registry with its compact immutable form once every transformer has been added, after which
+     * nothing can be added anymore. The method names and descriptors are interned, so every class that targets the
+     * same method or descriptor shares one copy.
+     */
+    public void freeze() {
+        Map<MethodData, List<IBytekinMethodTransformer>> frozen = new HashMap<>();
+        this.methodTransformers.forEach((method, transformers) -> frozen.put(
+                new MethodData(method.getName().intern(), method.getDescriptor().intern()),
+                transformers.isEmpty() ? Collections.emptyList() : Arrays.asList(transformers.toArray(new IBytekinMethodTransformer[0]))));
+
+        this.methodTransformers = FrozenMap.copyOf(frozen);
+        this.fieldConstants = FrozenMap.copyOf(this.fieldConstants);
+        this.classVisitorStages = this.classVisitorStages.isEmpty()
+                ? Collections.emptyList()
+                : Arrays.asList(this.classVisitorStages.toArray(new IClassVisitorStage[0]));
+    }
+
+    public void setIncrementalFrames(boolean incrementalFrames) {
+        this.incrementalFrames = incrementalFrames;
+    }
+
+    private static ClassWriter createWriter(ClassReader reader, int flags, ClassHierarchy hierarchy) {
+        return new ClassWriter(reader, flags) {
             @Override
             protected String getCommonSuperClass(String type1, String type2) {
+                if (hierarchy != null) {
+                    return hierarchy.getCommonSuperClass(type1, type2, () -> loadCommonSuperClass(type1, type2));
+                }
+                return loadCommonSuperClass(type1, type2);
+            }
+
+            private String loadCommonSuperClass(String type1, String type2) {
                 try {
                     return super.getCommonSuperClass(type1, type2);
                 } catch (Exception e) {
@@ -136,10 +365,92 @@ public class BytekinClassTransformer {
                 }
             }
         };
+    }
 
-        reader.accept(new BytekinClassVisitor(api, writer, this), 0);
+    private ConstantPoolFilter getFilter() {
+        ConstantPoolFilter filter = this.constantPoolFilter;
+        if (filter == null) {
+            filter = new ConstantPoolFilter(this.methodTransformers, this.fieldConstants.values());
+            this.constantPoolFilter = filter;
+        }
+        return filter;
+    }
+
+    /**
+     * Whether a transformer may change the class in the buffer, scanned without copying it
+     */
+    public boolean mayTransform(ByteBuffer bytes) {
+        return !this.classVisitorStages.isEmpty() || getFilter().mayMatch(bytes);
+    }
+
+    private boolean hasNoMethodTransformers() {
+        for (List<IBytekinMethodTransformer> transformers : this.methodTransformers.values()) {
+            if (!transformers.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] transform(byte[] bytes, int api) {
+        return transform(bytes, api, null);
+    }
+
+    /**
+     * @param hierarchy the classes of the batch this class is transformed with, or null to look types up from the loaded classes
+     */
+    public byte[] transform(byte[] bytes, int api, ClassHierarchy hierarchy) {
+        // nothing can match, so the class is neither parsed nor written again, a custom stage may change any class
+        if (this.classVisitorStages.isEmpty() && !getFilter().mayMatch(bytes)) {
+            return bytes;
+        }
+        return transform(bytes, 0, bytes.length, api, hierarchy);
+    }
+
+    /**
+     * Transforms the class in the range of the array without running the constant pool filter, which the caller
+     * already ran through {@link #mayTransform(ByteBuffer)}
+     *
+     * @return the transformed class, never the array itself
+     */
+    byte[] transform(byte[] bytes, int offset, int length, int api, ClassHierarchy hierarchy) {
+        // field constants alone only change constant pool entries, which are patched without parsing the methods
+        if (!this.fieldConstants.isEmpty() && hasNoMethodTransformers() && this.classVisitorStages.isEmpty()) {
+            byte[] whole = offset == 0 && length == bytes.length ? bytes : Arrays.copyOfRange(bytes, offset, offset + length);
+            byte[] patched = ConstantPoolPatcher.patch(whole, this.fieldConstants);
+            if (patched != null) {
+                return patched;
+            }
+        }
+
+        ClassReader reader = new ClassReader(bytes, offset, length);
+        // a custom stage may change the control flow of any method, so every frame is computed after it
+        int flags = ClassWriter.COMPUTE_MAXS;
+        if (!incrementalFrames || !this.classVisitorStages.isEmpty() || !keepsFrames()) {
+            flags |= ClassWriter.COMPUTE_FRAMES;
+        }
+        ClassWriter writer = createWriter(reader, flags, hierarchy);
+
+        // the first stage receives the class from the method transformers and the last one passes it to the writer
+        ClassVisitor next = writer;
+        for (int i = this.classVisitorStages.size() - 1; i >= 0; i--) {
+            next = this.classVisitorStages.get(i).wrap(api, next);
+        }
+        reader.accept(new BytekinClassVisitor(api, next, this, reader), 0);
 
         return writer.toByteArray();
     }
 
+    /**
+     * @return whether every method transformer keeps the frames of the method it changes
+     */
+    private boolean keepsFrames() {
+        for (List<IBytekinMethodTransformer> transformers : this.methodTransformers.values()) {
+            if (!IBytekinMethodTransformer.keepsFrames(transformers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
@@ -1,34 +1,218 @@
 package io.github.brqnko.bytekin.transformer;
 
 import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import io.github.brqnko.bytekin.data.InlineThreshold;
 import io.github.brqnko.bytekin.data.Injection;
 import io.github.brqnko.bytekin.data.Invocation;
+import io.github.brqnko.bytekin.data.LockRewrite;
+import io.github.brqnko.bytekin.data.Memoization;
+import io.github.brqnko.bytekin.data.MethodData;
 import io.github.brqnko.bytekin.data.RedirectData;
 import io.github.brqnko.bytekin.data.VariableModification;
 import io.github.brqnko.bytekin.injection.ModifyClass;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
 import io.github.brqnko.bytekin.mapping.impl.EmptyMappingProvider;
-
+import io.github.brqnko.bytekin.mapping.impl.InterningMappingProvider;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.api.IClassTransformListener;
+import io.github.brqnko.bytekin.transformer.api.IClassVisitorStage;
+import io.github.brqnko.bytekin.transformer.api.IMethodSizeListener;
+import io.github.brqnko.bytekin.util.ClassHierarchy;
+import io.github.brqnko.bytekin.util.FrozenMap;
+import io.github.brqnko.bytekin.util.MethodSizeReader;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 public class BytekinTransformer {
 
     private final Map<String, BytekinClassTransformer> transformers;
+    private final IMethodSizeListener sizeListener;
+    private final IClassTransformListener transformListener;
 
     public BytekinTransformer(Map<String, BytekinClassTransformer> transformers) {
+        this(transformers, null);
+    }
+
+    public BytekinTransformer(Map<String, BytekinClassTransformer> transformers, IMethodSizeListener sizeListener) {
+        this(transformers, sizeListener, null);
+    }
+
+    public BytekinTransformer(Map<String, BytekinClassTransformer> transformers, IMethodSizeListener sizeListener, IClassTransformListener transformListener) {
         this.transformers = transformers;
+        this.sizeListener = sizeListener;
+        this.transformListener = transformListener;
     }
 
     public byte[] transform(String className, byte[] bytes, int api) {
+        return transform(className, bytes, api, null);
+    }
+
+    /**
+     * @see #compose(List, IMethodSizeListener, IClassTransformListener)
+     */
+    public static BytekinTransformer compose(BytekinTransformer... transformers) {
+        return compose(Arrays.asList(transformers), null, null);
+    }
+
+    /**
+     * Combines transformers that were built independently, so a class that several of them target is read and
+     * written once with all of their transformers instead of once per transformer.
+     * <p>
+     * In every method the transformers of an earlier transformer in the list come first, as if all of them had been
+     * registered on one builder in that order. Frames are only computed incrementally for a class if every
+     * transformer of it asked for it. The listeners of the combined transformers are not called, the composite
+     * reports to its own.
+     *
+     * @throws IllegalStateException if two transformers replace the value of the same field
+     */
+    public static BytekinTransformer compose(List<BytekinTransformer> transformers, IMethodSizeListener sizeListener, IClassTransformListener transformListener) {
+        Map<String, List<BytekinClassTransformer>> contributors = new LinkedHashMap<>();
+        for (BytekinTransformer transformer : transformers) {
+            transformer.transformers.forEach((className, classTransformer) ->
+                    contributors.computeIfAbsent(className, k -> new ArrayList<>()).add(classTransformer));
+        }
+
+        Map<String, BytekinClassTransformer> composed = new HashMap<>();
+        contributors.forEach((className, classTransformers) -> {
+            if (classTransformers.size() == 1) {
+                composed.put(className, classTransformers.get(0));
+                return;
+            }
+
+            BytekinClassTransformer merged = new BytekinClassTransformer();
+            boolean incrementalFrames = true;
+            for (BytekinClassTransformer classTransformer : classTransformers) {
+                merged.merge(classTransformer, className);
+                incrementalFrames &= classTransformer.isIncrementalFrames();
+            }
+            merged.checkHookLocals();
+            merged.setIncrementalFrames(incrementalFrames);
+            merged.freeze();
+            composed.put(className, merged);
+        });
+
+        return new BytekinTransformer(FrozenMap.copyOf(composed), sizeListener, transformListener);
+    }
+
+    /**
+     * Transforms the class between the position and the limit of the input, which may be a direct buffer such as a
+     * mapped jar entry, and writes the result into the output at its position, so one output buffer can be reused
+     * for every class of a weave.
+     * <p>
+     * Classes that no transformer can change are rejected from the buffer itself, and the filter is not run again
+     * on the others. ASM reads a heap buffer in place, only a direct one is copied into an array. The input position
+     * never moves, the output position only moves past a transformed class.
+     *
+     * @return whether the class was transformed, if not the input is the class as it is and nothing was written
+     * @throws BufferOverflowException if the transformed class does not fit into the output, nothing is written then
+     */
+    public boolean transform(String className, ByteBuffer input, ByteBuffer output, int api) {
+        BytekinClassTransformer transformer = transformers.get(className);
+        if (transformer == null || !transformer.mayTransform(input)) {
+            return false;
+        }
+
+        byte[] bytes;
+        int offset;
+        int length = input.remaining();
+        if (input.hasArray()) {
+            bytes = input.array();
+            offset = input.arrayOffset() + input.position();
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            input.duplicate().get(bytes);
+        }
+
+        byte[] transformed = transformer.transform(bytes, offset, length, api, null);
+        if (sizeListener != null) {
+            reportSizes(className, transformer, bytes, offset, length, transformed);
+        }
+        if (transformListener != null) {
+            transformListener.onClassTransformed(className, transformed);
+        }
+        if (transformed.length > output.remaining()) {
+            throw new BufferOverflowException();
+        }
+        output.put(transformed);
+        return true;
+    }
+
+    /**
+     * Transforms a batch of classes on the executor. The classes share a {@link ClassHierarchy}, so the frames of
+     * one class are computed from the headers of the others instead of loading them, and every common superclass
+     * is only looked up once per batch.
+     * <p>
+     * Every class is passed to the consumer as soon as it is done, so the consumer has to be thread safe. Classes
+     * without a transformer are passed through on the calling thread before this returns.
+     *
+     * @param classes the bytes of every class by its name
+     * @return completes once every class is done, exceptionally if any of them failed
+     */
+    public CompletableFuture<Void> transformAll(Map<String, byte[]> classes, int api, Executor executor, BiConsumer<String, byte[]> consumer) {
+        ClassHierarchy hierarchy = new ClassHierarchy(classes);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String className = entry.getKey();
+            byte[] bytes = entry.getValue();
+            if (!transformers.containsKey(className)) {
+                consumer.accept(className, bytes);
+                continue;
+            }
+
+            futures.add(CompletableFuture.runAsync(() -> consumer.accept(className, transform(className, bytes, api, hierarchy)), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private byte[] transform(String className, byte[] bytes, int api, ClassHierarchy hierarchy) {
         BytekinClassTransformer transformer = transformers.get(className);
         if (transformer == null) {
             return bytes;
         }
 
-        return transformer.transform(bytes, api);
+        byte[] transformed = transformer.transform(bytes, api, hierarchy);
+        if (sizeListener != null) {
+            reportSizes(className, transformer, bytes, 0, bytes.length, transformed);
+        }
+        // classes the constant pool filter let through unchanged are the same array
+        if (transformListener != null && transformed != bytes) {
+            transformListener.onClassTransformed(className, transformed);
+        }
+        return transformed;
+    }
+
+    private void reportSizes(String className, BytekinClassTransformer transformer, byte[] bytes, int offset, int length, byte[] transformed) {
+        Map<MethodData, Integer> sizesBefore = MethodSizeReader.readCodeSizes(bytes, offset, length);
+        Map<MethodData, Integer> sizesAfter = MethodSizeReader.readCodeSizes(transformed);
+
+        for (MethodData method : transformer.getMethodTransformers().keySet()) {
+            Integer sizeBefore = sizesBefore.get(method);
+            Integer sizeAfter = sizesAfter.get(method);
+            if (sizeBefore == null || sizeAfter == null) {
+                continue;
+            }
+
+            List<InlineThreshold> crossed = new ArrayList<>();
+            for (InlineThreshold threshold : InlineThreshold.values()) {
+                if (threshold.isCrossed(sizeBefore, sizeAfter)) {
+                    crossed.add(threshold);
+                }
+            }
+            sizeListener.onMethodTransformed(className, method, sizeBefore, sizeAfter, crossed);
+        }
     }
 
     public static class Builder {
@@ -36,12 +220,22 @@ public class BytekinTransformer {
         private final Class<?>[] classes;
 
         private IMappingProvider mapping;
+        private IMethodSizeListener sizeListener;
+        private IClassTransformListener transformListener;
+        private boolean fuseInjections;
+        private boolean outlineInjections;
+        private boolean incrementalFrames;
 
         private final Map<String, List<Injection>> injections = new HashMap<>();
         private final Map<String, List<Invocation>> invocations = new HashMap<>();
         private final Map<String, List<RedirectData>> redirects = new HashMap<>();
         private final Map<String, List<ConstantModification>> constantModifications = new HashMap<>();
+        private final Map<String, List<FieldConstantModification>> fieldConstantModifications = new HashMap<>();
         private final Map<String, List<VariableModification>> variableModifications = new HashMap<>();
+        private final Map<String, List<Memoization>> memoizations = new HashMap<>();
+        private final Map<String, List<LockRewrite>> lockRewrites = new HashMap<>();
+        private final Map<String, Map<MethodData, List<IBytekinMethodTransformer>>> methodTransformers = new HashMap<>();
+        private final Map<String, List<IClassVisitorStage>> classVisitorStages = new HashMap<>();
 
         public Builder(Class<?>... classes) {
             this.classes = classes;
@@ -52,6 +246,51 @@ public class BytekinTransformer {
             return this;
         }
 
+        /**
+         * Reports the bytecode size of every transformed method before and after the transformation
+         */
+        public Builder sizeListener(IMethodSizeListener sizeListener) {
+            this.sizeListener = sizeListener;
+            return this;
+        }
+
+        /**
+         * Receives every class the transformer changed, such as a {@link io.github.brqnko.bytekin.util.WovenClassRecorder}
+         */
+        public Builder transformListener(IClassTransformListener transformListener) {
+            this.transformListener = transformListener;
+            return this;
+        }
+
+        /**
+         * Moves the hooks of an injection point with two or more hooks into a synthetic dispatcher method, so the
+         * target method only makes one call. The dispatcher is a new method of the target class, a class that is
+         * retransformed or redefined by an agent cannot add methods, so leave it off for those.
+         */
+        public Builder fuseInjections() {
+            this.fuseInjections = true;
+            return this;
+        }
+
+        /**
+         * Like {@link #fuseInjections()}, but even a single hook is moved into a dispatcher, so the target method
+         * only grows by a call and a cancel check
+         */
+        public Builder outlineInjections() {
+            this.outlineInjections = true;
+            return this;
+        }
+
+        /**
+         * Writes a class without computing frames when every transformer of it keeps the frames of the methods it
+         * changes, such as method and field redirects and constant modifications. Any other transformer or a custom
+         * stage still has the frames of the whole class computed.
+         */
+        public Builder incrementalFrames() {
+            this.incrementalFrames = true;
+            return this;
+        }
+
         public Builder inject(String className, Injection injection) {
             this.injections.computeIfAbsent(className, k -> new ArrayList<>()).add(injection);
             return this;
@@ -72,15 +311,53 @@ public class BytekinTransformer {
             return this;
         }
 
+        /**
+         * Replaces the value of a static field, the field keeps a ConstantValue attribute so it is still folded.
+         * Copies of the old value that javac inlined keep it, unless {@link FieldConstantModification#isReplaceInlined()}
+         */
+        public Builder modifyFieldConstant(String className, FieldConstantModification modification) {
+            this.fieldConstantModifications.computeIfAbsent(className, k -> new ArrayList<>()).add(modification);
+            return this;
+        }
+
         public Builder modifyVariable(String className, VariableModification modification) {
             this.variableModifications.computeIfAbsent(className, k -> new ArrayList<>()).add(modification);
             return this;
         }
 
+        public Builder memoize(String className, Memoization memoization) {
+            this.memoizations.computeIfAbsent(className, k -> new ArrayList<>()).add(memoization);
+            return this;
+        }
+
+        public Builder rewriteLock(String className, LockRewrite rewrite) {
+            this.lockRewrites.computeIfAbsent(className, k -> new ArrayList<>()).add(rewrite);
+            return this;
+        }
+
+        /**
+         * Applies a custom transformer to the method, after every transformer of the method the builder creates.
+         * The same instance visits the method on every transformation of the class.
+         */
+        public Builder transformMethod(String className, String methodName, String methodDesc, IBytekinMethodTransformer transformer) {
+            this.methodTransformers.computeIfAbsent(className, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(new MethodData(methodName, methodDesc), k -> new ArrayList<>())
+                    .add(transformer);
+            return this;
+        }
+
+        /**
+         * Passes the class through a custom ASM stage in the same pass as its transformers, stages of the same class
+         * run in the order they were added
+         */
+        public Builder visitClass(String className, IClassVisitorStage stage) {
+            this.classVisitorStages.computeIfAbsent(className, k -> new ArrayList<>()).add(stage);
+            return this;
+        }
+
         public BytekinTransformer build() {
-            if (mapping == null) {
-                mapping = new EmptyMappingProvider();
-            }
+            // interned once here, so the names the transformers keep are shared between them
+            IMappingProvider mapping = new InterningMappingProvider(this.mapping == null ? new EmptyMappingProvider() : this.mapping);
 
             Map<String, BytekinClassTransformer> transformers = new HashMap<>();
 
@@ -138,6 +415,15 @@ public class BytekinTransformer {
                 }
             });
 
+            this.fieldConstantModifications.forEach((className, modifications) -> {
+                className = mapping.getClassName(className);
+
+                BytekinClassTransformer transformer = transformers.computeIfAbsent(className, k -> new BytekinClassTransformer());
+                for (FieldConstantModification modification : modifications) {
+                    transformer.addFieldConstantModification(mapping, modification, className);
+                }
+            });
+
             this.variableModifications.forEach((className, modifications) -> {
                 className = mapping.getClassName(className);
 
@@ -147,7 +433,56 @@ public class BytekinTransformer {
                 }
             });
 
-            return new BytekinTransformer(transformers);
+            this.memoizations.forEach((className, memoizations) -> {
+                className = mapping.getClassName(className);
+
+                BytekinClassTransformer transformer = transformers.computeIfAbsent(className, k -> new BytekinClassTransformer());
+                for (Memoization memoization : memoizations) {
+                    transformer.addMemoization(mapping, memoization, className);
+                }
+            });
+
+            this.lockRewrites.forEach((className, rewrites) -> {
+                className = mapping.getClassName(className);
+
+                BytekinClassTransformer transformer = transformers.computeIfAbsent(className, k -> new BytekinClassTransformer());
+                for (LockRewrite rewrite : rewrites) {
+                    transformer.addLockRewrite(mapping, rewrite, className);
+                }
+            });
+
+            this.methodTransformers.forEach((className, methods) -> {
+                String mappedClassName = mapping.getClassName(className);
+
+                BytekinClassTransformer transformer = transformers.computeIfAbsent(mappedClassName, k -> new BytekinClassTransformer());
+                methods.forEach((method, methodTransformers) -> {
+                    for (IBytekinMethodTransformer methodTransformer : methodTransformers) {
+                        transformer.addMethodTransformer(mapping, mappedClassName, method.getName(), method.getDescriptor(), methodTransformer);
+                    }
+                });
+            });
+
+            this.classVisitorStages.forEach((className, stages) -> {
+                className = mapping.getClassName(className);
+
+                BytekinClassTransformer transformer = transformers.computeIfAbsent(className, k -> new BytekinClassTransformer());
+                for (IClassVisitorStage stage : stages) {
+                    transformer.addClassVisitorStage(stage);
+                }
+            });
+
+            transformers.values().forEach(BytekinClassTransformer::checkHookLocals);
+            if (incrementalFrames) {
+                transformers.values().forEach(transformer -> transformer.setIncrementalFrames(true));
+            }
+
+            if (fuseInjections || outlineInjections) {
+                int minimumHooks = outlineInjections ? 1 : 2;
+                transformers.values().forEach(transformer -> transformer.fuseInjections(minimumHooks));
+            }
+            transformers.values().forEach(BytekinClassTransformer::freeze);
+
+            return new BytekinTransformer(FrozenMap.copyOf(transformers), sizeListener, transformListener);
         }
     }
 }
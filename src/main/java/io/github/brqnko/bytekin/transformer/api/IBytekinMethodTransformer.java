@@ -4,19 +4,27 @@ import io.github.brqnko.bytekin.data.MethodData;
 import io.github.brqnko.bytekin.data.VariableModification;
 import io.github.brqnko.bytekin.injection.Inject;
 import io.github.brqnko.bytekin.injection.Invoke;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.injection.Memoize;
 import io.github.brqnko.bytekin.injection.ModifyVariable;
 import io.github.brqnko.bytekin.injection.Redirect;
+import io.github.brqnko.bytekin.injection.RewriteLock;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
 import io.github.brqnko.bytekin.transformer.method.InjectMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.InvokeMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.LockRewriteMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.MemoizeMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.ModifyVariableMethodTransformer;
 import io.github.brqnko.bytekin.transformer.method.RedirectMethodTransformer;
 import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +33,16 @@ public interface IBytekinMethodTransformer {
 
     default void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {}
 
+    /**
+     * Called after every transformer has visited {@link #beforeCode}, before the original code
+     */
+    default void afterCode(MethodVisitor mv, BytekinMethodVisitor visitor) {}
+
+    /**
+     * Called after the original code, before the maximum stack size and locals are computed
+     */
+    default void beforeMaxs(MethodVisitor mv, BytekinMethodVisitor visitor) {}
+
     default void beforeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {}
 
     default void beforeMethodInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor, boolean isInterface) {}
@@ -35,6 +53,15 @@ public interface IBytekinMethodTransformer {
 
     default void afterFieldInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor) {}
 
+    /**
+     * Called before labels and the instructions without a method of their own, such as jumps, switches and IINC
+     */
+    default void beforeOtherInsn(MethodVisitor mv, BytekinMethodVisitor visitor) {}
+
+    default boolean transformInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        return false;
+    }
+
     default boolean transformMethodInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor, boolean isInterface) {
         return false;
     }
@@ -43,6 +70,13 @@ public interface IBytekinMethodTransformer {
         return false;
     }
 
+    /**
+     * Called for NEW, ANEWARRAY, CHECKCAST and INSTANCEOF
+     */
+    default boolean transformTypeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String type) {
+        return false;
+    }
+
     default boolean transformLdcInsn(MethodVisitor mv, BytekinMethodVisitor visitor, Object value) {
         return false;
     }
@@ -51,6 +85,48 @@ public interface IBytekinMethodTransformer {
         return false;
     }
 
+    /**
+     * The UTF8 constants, such as the owner, name and descriptor of a call site, that a class has to contain for
+     * this transformer to change it. Classes without them are returned as they are, without being parsed.
+     */
+    default List<String> getRequiredSymbols() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether the code this transformer emits leaves the original frames of the method valid, it adds no branches,
+     * no locals and no members and keeps the types on the stack. Classes whose transformers all keep the frames are
+     * written without computing frames when frames are computed incrementally.
+     */
+    default boolean keepsFrames() {
+        return false;
+    }
+
+    /**
+     * @return whether every transformer of a method keeps its frames
+     */
+    static boolean keepsFrames(List<IBytekinMethodTransformer> transformers) {
+        for (IBytekinMethodTransformer transformer : transformers) {
+            if (!transformer.keepsFrames()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Changes the access flags of the method before it is written, such as to remove {@link org.objectweb.asm.Opcodes#ACC_SYNCHRONIZED}
+     */
+    default int transformMethodAccess(int access) {
+        return access;
+    }
+
+    /**
+     * Called once the whole class has been visited, for every method this transformer was applied to.
+     * Use it to add members such as synthetic helper methods to the class.
+     */
+    default void visitClassEnd(ClassVisitor cv, BytekinMethodVisitor visitor) {}
+
     static Map<MethodData, List<IBytekinMethodTransformer>> createTransformers(IMappingProvider mapping, Class<?> clazz, String className) {
 
         Map<MethodData, List<IBytekinMethodTransformer>> transformers = new HashMap<>();
@@ -93,7 +169,42 @@ public interface IBytekinMethodTransformer {
                             redirect.desc(),
                             redirect.ordinal(),
                             clazz.getName(),
-                            method.getName()
+                            method.getName(),
+                            Linkage.STATIC,
+                            Arrays.asList(redirect.receivers())
+                    ));
+                }
+
+                if (annotation instanceof Memoize) {
+                    Memoize memoize = (Memoize) annotation;
+                    MethodData methodData = new MethodData(
+                            mapping.getMethodName(className, memoize.methodName(), memoize.methodDesc()),
+                            mapping.getDesc(memoize.methodDesc())
+                    );
+                    List<IBytekinMethodTransformer> methodTransformers = transformers.computeIfAbsent(methodData, k -> new ArrayList<>());
+                    methodTransformers.add(new MemoizeMethodTransformer(
+                            className,
+                            methodData.getName(),
+                            methodData.getDescriptor(),
+                            memoize.maximumSize(),
+                            memoize.expireAfterWriteMillis()
+                    ));
+                }
+
+                if (annotation instanceof RewriteLock) {
+                    RewriteLock rewriteLock = (RewriteLock) annotation;
+                    MethodData methodData = new MethodData(
+                            mapping.getMethodName(className, rewriteLock.methodName(), rewriteLock.methodDesc()),
+                            mapping.getDesc(rewriteLock.methodDesc())
+                    );
+                    List<IBytekinMethodTransformer> methodTransformers = transformers.computeIfAbsent(methodData, k -> new ArrayList<>());
+                    methodTransformers.add(new LockRewriteMethodTransformer(
+                            className,
+                            methodData.getName(),
+                            methodData.getDescriptor(),
+                            rewriteLock.strategy(),
+                            rewriteLock.stripeArgument(),
+                            rewriteLock.stripes()
                     ));
                 }
 
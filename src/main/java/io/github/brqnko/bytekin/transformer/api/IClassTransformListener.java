@@ -0,0 +1,16 @@
+package io.github.brqnko.bytekin.transformer.api;
+
+/**
+ * Receives every class the transformer changed, see {@link io.github.brqnko.bytekin.transformer.BytekinTransformer.Builder#transformListener}
+ * and {@link io.github.brqnko.bytekin.util.WovenClassRecorder}
+ */
+@FunctionalInterface
+public interface IClassTransformListener {
+
+    /**
+     * @param className the name of the transformed class
+     * @param transformed the class file the transformer returned
+     */
+    void onClassTransformed(String className, byte[] transformed);
+
+}
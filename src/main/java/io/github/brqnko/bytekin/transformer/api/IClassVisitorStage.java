@@ -0,0 +1,23 @@
+package io.github.brqnko.bytekin.transformer.api;
+
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A custom ASM stage that runs in the same pass as the transformers of a class, for changes the annotations cannot
+ * express. See {@link io.github.brqnko.bytekin.transformer.BytekinTransformer.Builder#visitClass}.
+ * <p>
+ * The stage sees the class after every method transformer of it, so it works on the transformed code, and the
+ * frames of every method are computed after it. It is used for every transformation of the class, possibly from
+ * several threads, so the visitor it returns should hold any state of its own.
+ */
+@FunctionalInterface
+public interface IClassVisitorStage {
+
+    /**
+     * @param api the ASM api the class is transformed with
+     * @param next the visitor the stage has to pass the class on to
+     * @return the visitor that receives the transformed class
+     */
+    ClassVisitor wrap(int api, ClassVisitor next);
+
+}
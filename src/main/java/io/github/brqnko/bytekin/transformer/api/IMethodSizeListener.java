@@ -0,0 +1,24 @@
+package io.github.brqnko.bytekin.transformer.api;
+
+import io.github.brqnko.bytekin.data.InlineThreshold;
+import io.github.brqnko.bytekin.data.MethodData;
+
+import java.util.List;
+
+/**
+ * Receives the bytecode size of every transformed method, so hooks that push a method past the limits
+ * of the JIT can be noticed. See {@link io.github.brqnko.bytekin.transformer.BytekinTransformer.Builder#sizeListener}.
+ */
+@FunctionalInterface
+public interface IMethodSizeListener {
+
+    /**
+     * @param className the name of the transformed class
+     * @param method the transformed method
+     * @param sizeBefore the code length before the transformation
+     * @param sizeAfter the code length after the transformation
+     * @param crossed the thresholds the method was within before and exceeds now, empty if there are none
+     */
+    void onMethodTransformed(String className, MethodData method, int sizeBefore, int sizeAfter, List<InlineThreshold> crossed);
+
+}
@@ -0,0 +1,150 @@
+package io.github.brqnko.bytekin.transformer.method;
+
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import io.github.brqnko.bytekin.util.DescriptorParser;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the static fields of a class whose values were replaced with {@link io.github.brqnko.bytekin.data.FieldConstantModification}
+ * constant everywhere in the class.
+ * <p>
+ * The class visitor writes the new value as the ConstantValue attribute of the field, so the field stays a
+ * constant the JIT folds. This transformer replaces the value the static initializer stores into the field.
+ * Copies of the old value that javac inlined into the methods keep it, unless the modification opts in with
+ * {@link io.github.brqnko.bytekin.data.FieldConstantModification#isReplaceInlined()}; then every LDC of the old
+ * value in the class is replaced, because an inlined copy cannot be told apart from an unrelated literal. Small
+ * numbers pushed with an instruction of their own are never replaced, and classes that inlined the old value from
+ * another class always keep it.
+ */
+public class FieldConstantMethodTransformer implements IBytekinMethodTransformer {
+
+    private static final String STATIC_INITIALIZER = "<clinit>";
+
+    private final String owner;
+
+    /** The new values, by the name and descriptor of the field */
+    private final Map<String, Object> stores = new HashMap<>();
+    /** The new values, by the old value javac may have inlined */
+    private final Map<Object, Object> inlined = new HashMap<>();
+
+    public FieldConstantMethodTransformer(String owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Converts the value to the type the ConstantValue attribute of a field with the descriptor has
+     */
+    public static Object toConstantValue(String fieldDesc, Object value) {
+        switch (fieldDesc) {
+            case "Z":
+                if (value instanceof Boolean) {
+                    return (Boolean) value ? 1 : 0;
+                }
+                break;
+            case "C":
+                if (value instanceof Character) {
+                    return (int) (Character) value;
+                }
+                break;
+            case "B":
+            case "S":
+            case "I":
+                if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return ((Number) value).intValue();
+                }
+                break;
+            case "J":
+                if (value instanceof Long || value instanceof Integer) {
+                    return ((Number) value).longValue();
+                }
+                break;
+            case "F":
+                if (value instanceof Float) {
+                    return value;
+                }
+                break;
+            case "D":
+                if (value instanceof Double || value instanceof Float) {
+                    return ((Number) value).doubleValue();
+                }
+                break;
+            case "Ljava/lang/String;":
+                if (value instanceof String) {
+                    return value;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Fields of type " + fieldDesc + " cannot have a constant value");
+        }
+        throw new IllegalArgumentException("Invalid constant " + value + " for a field of type " + fieldDesc);
+    }
+
+    /**
+     * Registers a field of the class whose value is replaced
+     *
+     * @param oldValue the ConstantValue the field had, or null
+     * @param newValue the new value, converted with {@link #toConstantValue(String, Object)}
+     * @param replaceInlined whether every LDC of the old value is replaced as well
+     */
+    public void addField(String name, String desc, Object oldValue, Object newValue, boolean replaceInlined) {
+        stores.put(name + desc, newValue);
+
+        // javac only inlines the fields that have a ConstantValue
+        if (!replaceInlined || oldValue == null || oldValue.equals(newValue)) {
+            return;
+        }
+        Object previous = inlined.put(oldValue, newValue);
+        if (previous != null && !previous.equals(newValue)) {
+            throw new IllegalStateException("Fields of " + owner + " with the value " + oldValue + " are replaced with " + previous + " and " + newValue);
+        }
+    }
+
+    /**
+     * @return whether this transformer changes the method with the name
+     */
+    public boolean appliesTo(String methodName) {
+        return !inlined.isEmpty() || STATIC_INITIALIZER.equals(methodName) && !stores.isEmpty();
+    }
+
+    @Override
+    public boolean keepsFrames() {
+        return true;
+    }
+
+    @Override
+    public boolean transformLdcInsn(MethodVisitor mv, BytekinMethodVisitor visitor, Object value) {
+        Object newValue = inlined.get(value);
+        if (newValue == null) {
+            return false;
+        }
+
+        mv.visitLdcInsn(newValue);
+        return true;
+    }
+
+    @Override
+    public boolean transformFieldInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor) {
+        if (opcode != Opcodes.PUTSTATIC || !this.owner.equals(owner) || !STATIC_INITIALIZER.equals(visitor.getName())) {
+            return false;
+        }
+
+        Object newValue = stores.get(name + descriptor);
+        if (newValue == null) {
+            return false;
+        }
+
+        // the initializer is still evaluated for its side effects, only its result is dropped
+        TypeCategory category = DescriptorParser.parseReturnType("()" + descriptor).getCategory();
+        mv.visitInsn(category.getSize() == 2 ? Opcodes.POP2 : Opcodes.POP);
+        BytecodeManipulator.pushConstant(mv, newValue instanceof Integer ? TypeCategory.INT : category, newValue);
+        mv.visitFieldInsn(opcode, owner, name, descriptor);
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.brqnko.bytekin.transformer.method;
+
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.data.TypeData;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.List;
+
+/**
+ * Replaces several {@link InjectMethodTransformer}s at the same injection point with one call to a
+ * synthetic dispatcher method, which calls every hook in order and returns the first cancelled
+ * {@link CallbackInfo} or null. Each site then only needs a single call and a single cancel check.
+ */
+public class FusedInjectMethodTransformer implements IBytekinMethodTransformer {
+
+    private final List<InjectMethodTransformer> hooks;
+    private final At at;
+    private final String dispatcherName;
+
+    private final String targetMethodOwner;
+    private final String targetMethodDesc;
+    private final List<TypeData> parameterTypes;
+    private final TypeData returnType;
+
+    public FusedInjectMethodTransformer(List<InjectMethodTransformer> hooks, At at, String dispatcherName) {
+        if (hooks.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to fuse for " + dispatcherName);
+        }
+
+        this.hooks = hooks;
+        this.at = at;
+        this.dispatcherName = dispatcherName;
+
+        this.targetMethodOwner = hooks.get(0).getTargetMethodOwner();
+        this.targetMethodDesc = hooks.get(0).getTargetMethodDesc();
+        this.parameterTypes = hooks.get(0).getParameterTypes();
+        this.returnType = hooks.get(0).getReturnType();
+    }
+
+    /**
+     * The same dispatcher under another name, for a class whose dispatchers are numbered again
+     */
+    public FusedInjectMethodTransformer withDispatcherName(String dispatcherName) {
+        return new FusedInjectMethodTransformer(hooks, at, dispatcherName);
+    }
+
+    private boolean isStatic(BytekinMethodVisitor visitor) {
+        return (visitor.getAccess() & Opcodes.ACC_STATIC) != 0;
+    }
+
+    private boolean isInterface(BytekinMethodVisitor visitor) {
+        return (visitor.getClassVisitor().getAccess() & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Private static interface methods need Java 9 class files, older interfaces get the hooks inlined instead
+     */
+    private boolean canDispatch(BytekinMethodVisitor visitor) {
+        return !isInterface(visitor) || (visitor.getClassVisitor().getVersion() & 0xFFFF) >= Opcodes.V9;
+    }
+
+    private void callDispatcher(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        boolean isStatic = isStatic(visitor);
+
+        // load self reference and all parameters that target method has to stack
+        if (!isStatic) {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+        int localIndex = isStatic ? 0 : 1;
+        for (TypeData type : parameterTypes) {
+            BytecodeManipulator.load(mv, type.getCategory(), localIndex);
+            localIndex += type.getCategory().getSize();
+        }
+
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, visitor.getClassVisitor().getClassName(), dispatcherName,
+                InjectMethodTransformer.getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic), isInterface(visitor));
+
+        // the dispatcher returns null unless one of the hooks cancelled the target method
+        Label continueLabel = new Label();
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNULL, continueLabel);
+
+        if (returnType.getCategory() == TypeCategory.VOID) {
+            mv.visitInsn(Opcodes.POP);
+        } else {
+            mv.visitFieldInsn(Opcodes.GETFIELD, CallbackInfo.CALLBACK_OWNER, CallbackInfo.FIELD_RETURN_VALUE, "Ljava/lang/Object;");
+            BytecodeManipulator.cast(mv, returnType);
+        }
+        BytecodeManipulator.doReturn(mv, returnType);
+
+        mv.visitLabel(continueLabel);
+        mv.visitInsn(Opcodes.POP);
+    }
+
+    @Override
+    public void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (at != At.HEAD) {
+            return;
+        }
+
+        if (!canDispatch(visitor)) {
+            hooks.forEach(hook -> hook.beforeCode(mv, visitor));
+            return;
+        }
+
+        callDispatcher(mv, visitor);
+    }
+
+    @Override
+    public void beforeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        if (at != At.RETURN) {
+            return;
+        }
+
+        if (!canDispatch(visitor)) {
+            hooks.forEach(hook -> hook.beforeInsn(mv, visitor, opcode));
+            return;
+        }
+
+        if (Opcodes.IRETURN <= opcode && opcode <= Opcodes.RETURN) {
+            callDispatcher(mv, visitor);
+        }
+    }
+
+    @Override
+    public void visitClassEnd(ClassVisitor cv, BytekinMethodVisitor visitor) {
+        if (!canDispatch(visitor)) {
+            return;
+        }
+
+        boolean isStatic = isStatic(visitor);
+        String desc = InjectMethodTransformer.getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic);
+
+        MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, dispatcherName, desc, null, null);
+        mv.visitCode();
+
+        // the dispatcher has the same locals as the target method, so the hooks can load their arguments as usual
+        int callbackInfoIndex = isStatic ? 0 : 1;
+        for (TypeData type : parameterTypes) {
+            callbackInfoIndex += type.getCategory().getSize();
+        }
+
+        for (InjectMethodTransformer hook : hooks) {
+            hook.invokeHook(mv, visitor, isStatic);
+            mv.visitVarInsn(Opcodes.ASTORE, callbackInfoIndex);
+
+            // return the first CallbackInfo that cancels the target method
+            Label nextLabel = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, callbackInfoIndex);
+            mv.visitFieldInsn(Opcodes.GETFIELD, CallbackInfo.CALLBACK_OWNER, CallbackInfo.FIELD_CANCELLED, "Z");
+            mv.visitJumpInsn(Opcodes.IFEQ, nextLabel);
+            mv.visitVarInsn(Opcodes.ALOAD, callbackInfoIndex);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitLabel(nextLabel);
+        }
+
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
@@ -1,35 +1,70 @@
 package io.github.brqnko.bytekin.transformer.method;
 
+import io.github.brqnko.bytekin.hook.AsyncHookChannel;
+import io.github.brqnko.bytekin.hook.HookBatch;
+import io.github.brqnko.bytekin.injection.Async;
 import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Batch;
 import io.github.brqnko.bytekin.injection.CallbackInfo;
 import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
+import io.github.brqnko.bytekin.data.TypeCategory;
 import io.github.brqnko.bytekin.data.TypeData;
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
 import io.github.brqnko.bytekin.util.BytecodeManipulator;
 import io.github.brqnko.bytekin.util.DescriptorParser;
 import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import lombok.Getter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 import java.lang.reflect.Method;
 import java.util.List;
 
 public class InjectMethodTransformer implements IBytekinMethodTransformer {
 
+    private static final String CALLBACK_INFO_LOCAL = "bytekin$inject$callback";
+    private static final String THROWABLE_LOCAL = "bytekin$inject$throwable";
+
+    @Getter
     private final String targetMethodOwner;
     private final String targetMethodName;
+    @Getter
     private final String targetMethodDesc;
 
+    /** The parsed types of the target method, shared by every site the hook is injected at */
+    @Getter
+    private final List<TypeData> parameterTypes;
+    @Getter
+    private final TypeData returnType;
+
     private final String callMethodOwner;
     private final String callMethodName;
 
+    @Getter
     private final At at;
+    private final Linkage linkage;
+
+    /** The channel key of an {@link Async} hook, null when the hook runs on the calling thread */
+    private final String asyncKey;
+    /** The number of parameters of the {@link Async} hook, checked against the captured arguments */
+    private final int asyncArity;
+
+    /** The channel key of a {@link Batch} hook, null when the hook is called for every call */
+    private final String batchKey;
+    private final String batchColumns;
+
+    /** The name and descriptor of the value shared with {@link Inject#local()}, null without one */
+    private final String localName;
+    private final String localDesc;
 
     private boolean isStatic;
+    private Label throwStartLabel;
 
-    private String getCallMethodDesc(String targetMethodOwner, String targetDesc, boolean isStatic) {
+    static String getCallMethodDesc(String targetMethodOwner, String targetDesc, boolean isStatic) {
         StringBuilder builder = new StringBuilder();
 
         builder.append("(");
@@ -52,26 +87,108 @@ public class InjectMethodTransformer implements IBytekinMethodTransformer {
     public InjectMethodTransformer(IMappingProvider mapping, Method method, Inject inject, String className) {
         this.targetMethodName = mapping.getMethodName(className, inject.methodName(), inject.methodDesc());
         this.targetMethodDesc = mapping.getDesc(inject.methodDesc());
+        this.parameterTypes = DescriptorParser.parseParameterTypes(targetMethodDesc);
+        this.returnType = DescriptorParser.parseReturnType(targetMethodDesc);
 
         this.targetMethodOwner = className.replaceAll("\\.", "/");
         this.callMethodOwner = method.getDeclaringClass().getName().replace(".", "/");
         this.callMethodName = method.getName();
 
         this.at = inject.at();
+        this.linkage = Linkage.STATIC;
+
+        Async async = method.getAnnotation(Async.class);
+        Batch batch = method.getAnnotation(Batch.class);
+        if (async != null && batch != null) {
+            throw new IllegalArgumentException("Hook cannot be both async and batched: " + method);
+        }
+        this.asyncKey = async != null ? AsyncHookChannel.register(method, async) : null;
+        this.asyncArity = method.getParameterCount();
+
+        this.batchColumns = BytecodeManipulator.getBatchColumns(parameterTypes);
+        this.batchKey = batch != null ? HookBatch.register(method, batch, batchColumns) : null;
+
+        if (inject.local().isEmpty()) {
+            this.localName = null;
+            this.localDesc = null;
+        } else if (at == At.HEAD) {
+            // the HEAD hook returns the value
+            if (method.getReturnType() == void.class) {
+                throw new IllegalArgumentException("HEAD hook with a local must return its value: " + method);
+            }
+            this.localName = inject.local();
+            this.localDesc = Type.getDescriptor(method.getReturnType());
+        } else {
+            // the other hooks receive the value as their last parameter
+            Class<?>[] hookParameterTypes = method.getParameterTypes();
+            if (hookParameterTypes.length == 0) {
+                throw new IllegalArgumentException("Hook with a local must receive it as the last parameter: " + method);
+            }
+            this.localName = inject.local();
+            this.localDesc = Type.getDescriptor(hookParameterTypes[hookParameterTypes.length - 1]);
+        }
+
+        if ((async != null || batch != null) && (at == At.THROW || localName != null)) {
+            throw new IllegalArgumentException("Async and batched hooks can only be injected at HEAD or RETURN without a local: " + method);
+        }
     }
 
-    public InjectMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, String callMethodOwner, String callMethodName, At at) {
+    public InjectMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, String callMethodOwner, String callMethodName, At at, Linkage linkage) {
         this.targetMethodOwner = targetMethodOwner.replaceAll("\\.", "/");
         this.targetMethodName = targetMethodName;
         this.targetMethodDesc = targetMethodDesc;
+        this.parameterTypes = DescriptorParser.parseParameterTypes(targetMethodDesc);
+        this.returnType = DescriptorParser.parseReturnType(targetMethodDesc);
 
         this.callMethodOwner = callMethodOwner.replaceAll("\\.", "/");
         this.callMethodName = callMethodName;
 
         this.at = at;
+        this.linkage = linkage;
+        this.asyncKey = null;
+        this.asyncArity = 0;
+        this.batchKey = null;
+        this.batchColumns = null;
+        this.localName = null;
+        this.localDesc = null;
     }
 
-    private void invokeMethod(MethodVisitor mv) {
+    /**
+     * Async and batched hooks are not called in place, and hooks that share a local or catch exceptions
+     * need the locals of the target method, so none of them are fused into a dispatcher
+     */
+    public boolean isFusable() {
+        return asyncKey == null && batchKey == null && localName == null && at != At.THROW;
+    }
+
+    /**
+     * @return the name of the value shared with {@link Inject#local()}, or null
+     */
+    public String getLocalName() {
+        return localName;
+    }
+
+    public String getLocalDesc() {
+        return localDesc;
+    }
+
+    private String getHookDesc(boolean isStatic) {
+        String desc = getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic);
+        StringBuilder builder = new StringBuilder(desc.substring(0, desc.indexOf(')')));
+
+        if (at == At.THROW) {
+            builder.append("Ljava/lang/Throwable;");
+        }
+        if (localDesc != null && at != At.HEAD) {
+            builder.append(localDesc);
+        }
+
+        builder.append(")");
+        builder.append(localDesc != null && at == At.HEAD ? localDesc : CallbackInfo.CALLBACK_DESC);
+        return builder.toString();
+    }
+
+    void invokeHook(MethodVisitor mv, BytekinMethodVisitor visitor, boolean isStatic) {
         // if target method is not static, load self reference to stack
         if (!isStatic) {
             mv.visitVarInsn(Opcodes.ALOAD, 0);
@@ -79,17 +196,115 @@ public class InjectMethodTransformer implements IBytekinMethodTransformer {
 
         // load all parameters that target method has to stack
         int offset = isStatic ? 0 : 1;
-        List<TypeData> types = DescriptorParser.parseParameterTypes(targetMethodDesc);
         int localIndex = offset;
-        for (TypeData type : types) {
+        for (TypeData type : parameterTypes) {
             BytecodeManipulator.load(mv, type.getCategory(), localIndex);
             localIndex += type.getCategory().getSize();
         }
 
-        int callbackInfoIndex = 1000;//(isStatic ? 0 : 1) + types.size();
+        // load the exception and the shared value after the parameters
+        if (at == At.THROW) {
+            mv.visitVarInsn(Opcodes.ALOAD, visitor.getLocal(THROWABLE_LOCAL, 1));
+        }
+        if (localDesc != null && at != At.HEAD) {
+            BytecodeManipulator.load(mv, TypeCategory.parse(localDesc), visitor.getHookLocal(localName));
+        }
 
         // invoke the method
-        mv.visitMethodInsn(Opcodes.INVOKESTATIC, callMethodOwner, callMethodName, getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic), false);
+        BytecodeManipulator.invokeHook(mv, visitor, linkage, callMethodOwner, callMethodName, getHookDesc(isStatic));
+    }
+
+    private void publishAsync(MethodVisitor mv) {
+        int arity = parameterTypes.size() + (isStatic ? 0 : 1);
+        if (arity != asyncArity) {
+            throw new IllegalStateException("Async hook " + asyncKey + " receives " + asyncArity + " arguments, but "
+                    + targetMethodOwner + "." + targetMethodName + targetMethodDesc + " passes " + arity);
+        }
+
+        Label droppedLabel = new Label();
+        Label endLabel = new Label();
+
+        // claim a slot, it is null when the queue dropped the event
+        mv.visitLdcInsn(asyncKey);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, AsyncHookChannel.CHANNEL_OWNER, AsyncHookChannel.METHOD_CLAIM, AsyncHookChannel.METHOD_CLAIM_DESC, false);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNULL, droppedLabel);
+
+        // copy self reference and all parameters into the slot
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETFIELD, AsyncHookChannel.SLOT_OWNER, AsyncHookChannel.FIELD_ARGS, "[Ljava/lang/Object;");
+        int arrayIndex = 0;
+        if (!isStatic) {
+            mv.visitInsn(Opcodes.DUP);
+            BytecodeManipulator.push(mv, arrayIndex++);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+        int localIndex = isStatic ? 0 : 1;
+        for (TypeData type : parameterTypes) {
+            mv.visitInsn(Opcodes.DUP);
+            BytecodeManipulator.push(mv, arrayIndex++);
+            BytecodeManipulator.load(mv, type.getCategory(), localIndex);
+            BytecodeManipulator.box(mv, type.getCategory());
+            mv.visitInsn(Opcodes.AASTORE);
+            localIndex += type.getCategory().getSize();
+        }
+        mv.visitInsn(Opcodes.POP);
+
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, AsyncHookChannel.SLOT_OWNER, AsyncHookChannel.METHOD_PUBLISH, "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, endLabel);
+
+        mv.visitLabel(droppedLabel);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLabel(endLabel);
+    }
+
+    private void appendBatch(MethodVisitor mv) {
+        mv.visitLdcInsn(batchKey);
+        mv.visitLdcInsn(batchColumns);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, HookBatch.BATCH_OWNER, HookBatch.METHOD_BEGIN, HookBatch.METHOD_BEGIN_DESC, false);
+
+        // the first column is the self reference, which is null for static target methods
+        if (isStatic) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+        BytecodeManipulator.appendBatch(mv, TypeCategory.OBJECT);
+
+        int localIndex = isStatic ? 0 : 1;
+        for (TypeData type : parameterTypes) {
+            BytecodeManipulator.load(mv, type.getCategory(), localIndex);
+            BytecodeManipulator.appendBatch(mv, type.getCategory());
+            localIndex += type.getCategory().getSize();
+        }
+
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HookBatch.BATCH_OWNER, HookBatch.METHOD_COMMIT, "()V", false);
+    }
+
+    private void invokeMethod(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (asyncKey != null) {
+            publishAsync(mv);
+            return;
+        }
+        if (batchKey != null) {
+            appendBatch(mv);
+            return;
+        }
+
+        invokeHook(mv, visitor, isStatic);
+
+        // a HEAD hook with a local returns the shared value, which the later hooks load from the fresh local
+        if (localDesc != null && at == At.HEAD) {
+            BytecodeManipulator.store(mv, TypeCategory.parse(localDesc), visitor.getHookLocal(localName));
+            return;
+        }
+
+        returnIfCancelled(mv, visitor);
+    }
+
+    private void returnIfCancelled(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        int callbackInfoIndex = visitor.getLocal(CALLBACK_INFO_LOCAL, 1);
 
         // assign the CallbackInfo to variable
         mv.visitVarInsn(Opcodes.ASTORE, callbackInfoIndex);
@@ -111,7 +326,6 @@ public class InjectMethodTransformer implements IBytekinMethodTransformer {
         }
 
         // cast the return value to the target method return type
-        TypeData returnType = DescriptorParser.parseReturnType(targetMethodDesc);
         BytecodeManipulator.cast(mv, returnType);
         BytecodeManipulator.doReturn(mv, returnType);
 
@@ -126,7 +340,7 @@ public class InjectMethodTransformer implements IBytekinMethodTransformer {
         }
 
         isStatic = (visitor.getAccess() & Opcodes.ACC_STATIC) != 0;
-        invokeMethod(mv);
+        invokeMethod(mv, visitor);
 
         IBytekinMethodTransformer.super.beforeCode(mv, visitor);
     }
@@ -138,10 +352,51 @@ public class InjectMethodTransformer implements IBytekinMethodTransformer {
         }
 
         if (Opcodes.IRETURN <= opcode && opcode <= Opcodes.RETURN) {
-            invokeMethod(mv);
+            isStatic = (visitor.getAccess() & Opcodes.ACC_STATIC) != 0;
+            invokeMethod(mv, visitor);
         }
 
         IBytekinMethodTransformer.super.beforeInsn(mv, visitor, opcode);
     }
 
+    @Override
+    public void afterCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (at != At.THROW) {
+            return;
+        }
+
+        // the uninitialized this of a constructor cannot be seen by an exception handler
+        if (visitor.getName().equals("<init>")) {
+            throw new IllegalStateException("Cannot inject at THROW into a constructor: " + targetMethodOwner + "." + targetMethodName);
+        }
+
+        // the handler covers the original code, after the HEAD hooks have stored their locals
+        isStatic = (visitor.getAccess() & Opcodes.ACC_STATIC) != 0;
+        throwStartLabel = new Label();
+        mv.visitLabel(throwStartLabel);
+    }
+
+    @Override
+    public void beforeMaxs(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (at != At.THROW) {
+            return;
+        }
+
+        Label endLabel = new Label();
+        Label handlerLabel = new Label();
+        mv.visitLabel(endLabel);
+
+        // visited last, so the existing handlers of the method keep their priority
+        mv.visitTryCatchBlock(throwStartLabel, endLabel, handlerLabel, null);
+        mv.visitLabel(handlerLabel);
+        mv.visitVarInsn(Opcodes.ASTORE, visitor.getLocal(THROWABLE_LOCAL, 1));
+
+        invokeHook(mv, visitor, isStatic);
+        returnIfCancelled(mv, visitor);
+
+        // rethrow the exception if the hook did not cancel the method
+        mv.visitVarInsn(Opcodes.ALOAD, visitor.getLocal(THROWABLE_LOCAL, 1));
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
 }
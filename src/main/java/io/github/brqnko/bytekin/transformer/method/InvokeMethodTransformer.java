@@ -1,7 +1,11 @@
 package io.github.brqnko.bytekin.transformer.method;
 
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.hook.HookBatch;
+import io.github.brqnko.bytekin.injection.Batch;
 import io.github.brqnko.bytekin.injection.CallbackInfo;
 import io.github.brqnko.bytekin.injection.Invoke;
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.injection.Shift;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
 import io.github.brqnko.bytekin.data.TypeData;
@@ -14,6 +18,8 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class InvokeMethodTransformer implements IBytekinMethodTransformer {
@@ -25,6 +31,9 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
     private final String targetMethodOwner;
     private final String targetMethodName;
     private final String targetMethodDesc;
+    /** The parsed types of the target method, shared by every call site */
+    private final List<TypeData> targetParameters;
+    private final TypeData returnType;
 
     private final String invokeMethodOwner;
     private final String invokeMethodName;
@@ -33,6 +42,12 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
     private final String callMethodOwner;
     private final String callMethodName;
 
+    private final Linkage linkage;
+
+    /** The channel key of a {@link Batch} hook, null when the hook is called for every call */
+    private final String batchKey;
+    private final String batchColumns;
+
     private boolean isStatic;
 
     private int getTotalLocalSize(List<TypeData> types) {
@@ -43,36 +58,64 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         return size;
     }
 
+    /**
+     * The locals that hold the arguments of the invoked method followed by the CallbackInfo, shared by every call site
+     */
+    private int getLocals(BytekinMethodVisitor visitor) {
+        return visitor.getLocal("bytekin$invoke$" + invokeMethodOwner + "." + invokeMethodName + invokeMethodDesc,
+                getTotalLocalSize(invokeParameters) + 1);
+    }
+
     public InvokeMethodTransformer(IMappingProvider mapping, Class<?> clazz, Method method, Invoke invoke, String className) {
         this.shift = invoke.shift();
 
         this.targetMethodOwner = className.replaceAll("\\.", "/");
         this.targetMethodName = mapping.getMethodName(className, invoke.targetMethodName(), invoke.targetMethodDesc());
-    this.targetMethodDesc = mapping.getDesc(invoke.targetMethodDesc());
+        this.targetMethodDesc = mapping.getDesc(invoke.targetMethodDesc());
+        this.targetParameters = DescriptorParser.parseParameterTypes(targetMethodDesc);
+        this.returnType = DescriptorParser.parseReturnType(targetMethodDesc);
 
         this.invokeMethodOwner = mapping.getClassName(invoke.invokeMethodOwner()).replaceAll("\\.", "/");
         this.invokeMethodName = mapping.getMethodName(invoke.invokeMethodOwner(), invoke.invokeMethodName(), invoke.invokeMethodDesc());
-    this.invokeMethodDesc = mapping.getDesc(invoke.invokeMethodDesc());
+        this.invokeMethodDesc = mapping.getDesc(invoke.invokeMethodDesc());
 
         this.callMethodOwner = clazz.getName().replace(".", "/");
         this.callMethodName = method.getName();
+        this.linkage = Linkage.STATIC;
 
         this.invokeParameters = DescriptorParser.parseParameterTypes(invokeMethodDesc);
+
+        List<TypeData> values = new ArrayList<>(targetParameters);
+        values.addAll(invokeParameters);
+        this.batchColumns = BytecodeManipulator.getBatchColumns(values);
+
+        Batch batch = method.getAnnotation(Batch.class);
+        this.batchKey = batch != null ? HookBatch.register(method, batch, batchColumns) : null;
     }
 
-    public InvokeMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, String invokeMethodOwner, String invokeMethodName, String invokeMethodDesc, Shift shift, String callMethodOwner, String callMethodName) {
+    public InvokeMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, String invokeMethodOwner, String invokeMethodName, String invokeMethodDesc, Shift shift, String callMethodOwner, String callMethodName, Linkage linkage) {
         this.shift = shift;
         this.targetMethodOwner = targetMethodOwner.replaceAll("\\.", "/");
         this.targetMethodName = targetMethodName;
         this.targetMethodDesc = targetMethodDesc;
+        this.targetParameters = DescriptorParser.parseParameterTypes(targetMethodDesc);
+        this.returnType = DescriptorParser.parseReturnType(targetMethodDesc);
         this.invokeMethodOwner = invokeMethodOwner.replaceAll("\\.", "/");
         this.invokeMethodName = invokeMethodName;
         this.invokeMethodDesc = invokeMethodDesc;
 
         this.callMethodOwner = callMethodOwner.replaceAll("\\.", "/");
         this.callMethodName = callMethodName;
+        this.linkage = linkage;
 
         this.invokeParameters = DescriptorParser.parseParameterTypes(invokeMethodDesc);
+        this.batchKey = null;
+        this.batchColumns = null;
+    }
+
+    @Override
+    public List<String> getRequiredSymbols() {
+        return Arrays.asList(invokeMethodOwner, invokeMethodName, invokeMethodDesc);
     }
 
     @Override
@@ -105,7 +148,42 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         return builder.toString();
     }
 
-    private void invoke(MethodVisitor mv, int localIndex, int callbackInfoIndex) {
+    private void appendBatch(MethodVisitor mv, int localIndex) {
+        mv.visitLdcInsn(batchKey);
+        mv.visitLdcInsn(batchColumns);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, HookBatch.BATCH_OWNER, HookBatch.METHOD_BEGIN, HookBatch.METHOD_BEGIN_DESC, false);
+
+        // the first column is the self reference, which is null for static target methods
+        if (isStatic) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+        BytecodeManipulator.appendBatch(mv, TypeCategory.OBJECT);
+
+        int targetLocalIndex = isStatic ? 0 : 1;
+        for (TypeData type : targetParameters) {
+            BytecodeManipulator.load(mv, type.getCategory(), targetLocalIndex);
+            BytecodeManipulator.appendBatch(mv, type.getCategory());
+            targetLocalIndex += type.getCategory().getSize();
+        }
+
+        int invokeLocalIndex = localIndex;
+        for (TypeData type : invokeParameters) {
+            BytecodeManipulator.load(mv, type.getCategory(), invokeLocalIndex);
+            BytecodeManipulator.appendBatch(mv, type.getCategory());
+            invokeLocalIndex += type.getCategory().getSize();
+        }
+
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HookBatch.BATCH_OWNER, HookBatch.METHOD_COMMIT, "()V", false);
+    }
+
+    private void invoke(MethodVisitor mv, BytekinMethodVisitor visitor, int localIndex, int callbackInfoIndex) {
+        if (batchKey != null) {
+            appendBatch(mv, localIndex);
+            return;
+        }
+
         // load parameters from local variables to stack
         if (!isStatic) {
             mv.visitVarInsn(Opcodes.ALOAD, 0);
@@ -113,9 +191,8 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
 
         // load all parameters that target method has to stack
         int offset = isStatic ? 0 : 1;
-        List<TypeData> types = DescriptorParser.parseParameterTypes(targetMethodDesc);
         int targetLocalIndex = offset;
-        for (TypeData type : types) {
+        for (TypeData type : targetParameters) {
             BytecodeManipulator.load(mv, type.getCategory(), targetLocalIndex);
             targetLocalIndex += type.getCategory().getSize();
         }
@@ -128,7 +205,7 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         }
 
         // invoke the method
-        mv.visitMethodInsn(Opcodes.INVOKESTATIC, callMethodOwner, callMethodName, getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic), false);
+        BytecodeManipulator.invokeHook(mv, visitor, linkage, callMethodOwner, callMethodName, getCallMethodDesc(targetMethodOwner, targetMethodDesc, isStatic));
 
         // assign the CallbackInfo to variable
         mv.visitVarInsn(Opcodes.ASTORE, callbackInfoIndex);
@@ -148,7 +225,6 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         mv.visitFieldInsn(Opcodes.GETFIELD, CallbackInfo.CALLBACK_OWNER, CallbackInfo.FIELD_RETURN_VALUE, "Ljava/lang/Object;");
 
         // cast the return value to the target method return type
-        TypeData returnType = DescriptorParser.parseReturnType(targetMethodDesc);
         BytecodeManipulator.cast(mv, returnType);
         BytecodeManipulator.doReturn(mv, returnType);
 
@@ -163,8 +239,8 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
             return;
         }
         // now we have parameters in stack and assign them to local variables
-        int localIndex = 10000;
         int paramsSize = getTotalLocalSize(invokeParameters);
+        int localIndex = getLocals(visitor);
         int callbackInfoIndex = localIndex + paramsSize;
         int currentIndex = callbackInfoIndex;
         for (int i = invokeParameters.size() - 1; i >= 0; i--) {
@@ -175,18 +251,17 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         }
 
         if (shift == Shift.BEFORE) {
-            invoke(mv, localIndex, callbackInfoIndex);
+            invoke(mv, visitor, localIndex, callbackInfoIndex);
         }
 
-        if (shift == Shift.BEFORE) {
+        if (shift == Shift.BEFORE && batchKey == null) {
             // load parameters from CallbackInfo#modifiedArgs to stack
-            List<TypeData> params = DescriptorParser.parseParameterTypes(this.invokeMethodDesc);
-            for (int i = 0; i < params.size(); i++) {
+            for (int i = 0; i < invokeParameters.size(); i++) {
                 mv.visitVarInsn(Opcodes.ALOAD, callbackInfoIndex);
                 mv.visitFieldInsn(Opcodes.GETFIELD, CallbackInfo.CALLBACK_OWNER, CallbackInfo.FIELD_MODIFY_ARGS, "[Ljava/lang/Object;");
                 mv.visitIntInsn(Opcodes.BIPUSH, i);
                 mv.visitInsn(Opcodes.AALOAD);
-                BytecodeManipulator.cast(mv, params.get(i));
+                BytecodeManipulator.cast(mv, invokeParameters.get(i));
             }
         } else {
             // load parameters from local variables to stack
@@ -207,9 +282,9 @@ public class InvokeMethodTransformer implements IBytekinMethodTransformer {
         }
 
         if (shift == Shift.AFTER) {
-            int localIndex = 10000;
+            int localIndex = getLocals(visitor);
             int callbackInfoIndex = localIndex + getTotalLocalSize(invokeParameters);
-            invoke(mv, localIndex, callbackInfoIndex);
+            invoke(mv, visitor, localIndex, callbackInfoIndex);
         }
 
         IBytekinMethodTransformer.super.afterMethodInsn(mv, visitor, opcode, owner, name, descriptor, isInterface);
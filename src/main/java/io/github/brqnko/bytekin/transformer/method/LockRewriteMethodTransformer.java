@@ -0,0 +1,230 @@
+package io.github.brqnko.bytekin.transformer.method;
+
+import io.github.brqnko.bytekin.data.TypeData;
+import io.github.brqnko.bytekin.hook.LockRewriteSupport;
+import io.github.brqnko.bytekin.injection.LockStrategy;
+import io.github.brqnko.bytekin.injection.RewriteLock;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import io.github.brqnko.bytekin.util.DescriptorParser;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+
+/**
+ * Replaces the monitors of a method with the locks of its {@link LockStrategy}, see {@link RewriteLock}.
+ * <p>
+ * MONITORENTER and MONITOREXIT of synchronized blocks become calls to {@link LockRewriteSupport}, so the
+ * handlers that javac emits to release the monitor release the new lock. A synchronized method loses its
+ * flag and locks at the head, unlocks before every return and in a catch-all handler. Methods that call
+ * {@link Object#wait()} or {@link Object#notify()} are rejected, because the monitor is never locked anymore.
+ */
+public class LockRewriteMethodTransformer implements IBytekinMethodTransformer {
+
+    private static final String THROWABLE_LOCAL = "bytekin$lock$throwable";
+
+    private final String targetMethodOwner;
+    private final String targetMethodName;
+    private final String targetMethodDesc;
+
+    private final LockStrategy strategy;
+    private final int stripeArgument;
+    private final int stripes;
+
+    private final String supportKey;
+    private final String supportField;
+
+    private final List<TypeData> parameterTypes;
+
+    private Label startLabel;
+
+    public LockRewriteMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, LockStrategy strategy, int stripeArgument, int stripes) {
+        this.targetMethodOwner = targetMethodOwner.replace('.', '/');
+        this.targetMethodName = targetMethodName;
+        this.targetMethodDesc = targetMethodDesc;
+
+        this.strategy = strategy;
+        this.stripeArgument = stripeArgument;
+        this.stripes = stripes;
+
+        this.supportKey = this.targetMethodOwner.replace('/', '.') + "." + targetMethodName + targetMethodDesc;
+        this.supportField = "bytekin$locks$" + targetMethodName + "$" + Integer.toHexString(targetMethodDesc.hashCode());
+
+        this.parameterTypes = DescriptorParser.parseParameterTypes(targetMethodDesc);
+
+        if (strategy == LockStrategy.STRIPED && (stripeArgument < 0 || stripeArgument >= parameterTypes.size())) {
+            throw new IllegalArgumentException("Invalid stripe argument " + stripeArgument + " for " + supportKey);
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Invalid number of stripes " + stripes + " for " + supportKey);
+        }
+    }
+
+    private boolean isSynchronized(BytekinMethodVisitor visitor) {
+        return (visitor.getAccess() & Opcodes.ACC_SYNCHRONIZED) != 0;
+    }
+
+    private void loadSupport(MethodVisitor mv) {
+        Label readyLabel = new Label();
+
+        // the locks are looked up once and kept in a synthetic field, racing threads get the same instance
+        mv.visitFieldInsn(Opcodes.GETSTATIC, targetMethodOwner, supportField, LockRewriteSupport.SUPPORT_DESC);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, readyLabel);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLdcInsn(supportKey);
+        BytecodeManipulator.push(mv, strategy.ordinal());
+        BytecodeManipulator.push(mv, stripes);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, LockRewriteSupport.SUPPORT_OWNER, LockRewriteSupport.METHOD_OF, LockRewriteSupport.METHOD_OF_DESC, false);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, targetMethodOwner, supportField, LockRewriteSupport.SUPPORT_DESC);
+        mv.visitLabel(readyLabel);
+    }
+
+    private void pushHash(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (strategy != LockStrategy.STRIPED) {
+            mv.visitInsn(Opcodes.ICONST_0);
+            return;
+        }
+
+        int localIndex = (visitor.getAccess() & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+        for (int i = 0; i < stripeArgument; i++) {
+            localIndex += parameterTypes.get(i).getCategory().getSize();
+        }
+
+        TypeData type = parameterTypes.get(stripeArgument);
+        BytecodeManipulator.load(mv, type.getCategory(), localIndex);
+        switch (type.getCategory()) {
+            case LONG:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "hashCode", "(J)I", false);
+                break;
+            case FLOAT:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "hashCode", "(F)I", false);
+                break;
+            case DOUBLE:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "hashCode", "(D)I", false);
+                break;
+            case OBJECT:
+            case ARRAY:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Objects", "hashCode", "(Ljava/lang/Object;)I", false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Locks or unlocks the monitor on top of the stack
+     */
+    private void callSupport(MethodVisitor mv, BytekinMethodVisitor visitor, boolean enter) {
+        if (strategy == LockStrategy.NONE) {
+            mv.visitInsn(Opcodes.POP);
+            return;
+        }
+
+        loadSupport(mv);
+        mv.visitInsn(Opcodes.SWAP);
+        pushHash(mv, visitor);
+
+        String name;
+        if (strategy == LockStrategy.WRITE) {
+            name = enter ? LockRewriteSupport.METHOD_ENTER_WRITE : LockRewriteSupport.METHOD_EXIT_WRITE;
+        } else {
+            name = enter ? LockRewriteSupport.METHOD_ENTER : LockRewriteSupport.METHOD_EXIT;
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, LockRewriteSupport.SUPPORT_OWNER, name, LockRewriteSupport.METHOD_ENTER_DESC, false);
+    }
+
+    private void loadMethodMonitor(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if ((visitor.getAccess() & Opcodes.ACC_STATIC) != 0) {
+            mv.visitLdcInsn(Type.getObjectType(targetMethodOwner));
+        } else {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+    }
+
+    @Override
+    public int transformMethodAccess(int access) {
+        return access & ~Opcodes.ACC_SYNCHRONIZED;
+    }
+
+    @Override
+    public void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (strategy != LockStrategy.NONE && (visitor.getClassVisitor().getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+            throw new IllegalStateException("Cannot rewrite the locks of a method of an interface: " + supportKey);
+        }
+
+        if (isSynchronized(visitor)) {
+            loadMethodMonitor(mv, visitor);
+            callSupport(mv, visitor, true);
+        }
+    }
+
+    @Override
+    public void afterCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (isSynchronized(visitor)) {
+            startLabel = new Label();
+            mv.visitLabel(startLabel);
+        }
+    }
+
+    @Override
+    public void beforeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        if (isSynchronized(visitor) && Opcodes.IRETURN <= opcode && opcode <= Opcodes.RETURN) {
+            loadMethodMonitor(mv, visitor);
+            callSupport(mv, visitor, false);
+        }
+    }
+
+    @Override
+    public void beforeMethodInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        boolean waits = name.equals("wait") && (descriptor.equals("()V") || descriptor.equals("(J)V") || descriptor.equals("(JI)V"));
+        boolean notifies = (name.equals("notify") || name.equals("notifyAll")) && descriptor.equals("()V");
+        if (opcode == Opcodes.INVOKEVIRTUAL && (waits || notifies)) {
+            throw new IllegalStateException("Cannot rewrite the locks of " + supportKey + ", it calls " + name + " which needs the monitor");
+        }
+    }
+
+    @Override
+    public boolean transformInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        if (opcode != Opcodes.MONITORENTER && opcode != Opcodes.MONITOREXIT) {
+            return false;
+        }
+
+        callSupport(mv, visitor, opcode == Opcodes.MONITORENTER);
+        return true;
+    }
+
+    @Override
+    public void beforeMaxs(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if (!isSynchronized(visitor)) {
+            return;
+        }
+
+        Label endLabel = new Label();
+        Label handlerLabel = new Label();
+        mv.visitLabel(endLabel);
+
+        // unlock when the method exits with an exception, as the monitor of a synchronized method would
+        int throwableIndex = visitor.getHookLocal(THROWABLE_LOCAL);
+        mv.visitTryCatchBlock(startLabel, endLabel, handlerLabel, null);
+        mv.visitLabel(handlerLabel);
+        mv.visitVarInsn(Opcodes.ASTORE, throwableIndex);
+        loadMethodMonitor(mv, visitor);
+        callSupport(mv, visitor, false);
+        mv.visitVarInsn(Opcodes.ALOAD, throwableIndex);
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    @Override
+    public void visitClassEnd(ClassVisitor cv, BytekinMethodVisitor visitor) {
+        if (strategy != LockStrategy.NONE) {
+            cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, supportField, LockRewriteSupport.SUPPORT_DESC, null, null).visitEnd();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.github.brqnko.bytekin.transformer.method;
+
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.data.TypeData;
+import io.github.brqnko.bytekin.hook.MemoCache;
+import io.github.brqnko.bytekin.injection.Memoize;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import io.github.brqnko.bytekin.util.DescriptorParser;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the target method with a lookup in its {@link MemoCache}, see {@link Memoize}.
+ * A hit returns the cached value before the original code runs, every return of the original code
+ * completes the entry, and an exception fails it so the next call computes the value again.
+ */
+public class MemoizeMethodTransformer implements IBytekinMethodTransformer {
+
+    private static final String ENTRY_LOCAL = "bytekin$memo$entry";
+    private static final String THROWABLE_LOCAL = "bytekin$memo$throwable";
+
+    private final String targetMethodOwner;
+    private final String targetMethodName;
+    private final String targetMethodDesc;
+
+    private final int maximumSize;
+    private final long expireNanos;
+
+    private final String cacheKey;
+    private final String cacheField;
+
+    private final List<TypeData> parameterTypes;
+    private final TypeData returnType;
+
+    private Label startLabel;
+
+    public MemoizeMethodTransformer(String targetMethodOwner, String targetMethodName, String targetMethodDesc, int maximumSize, long expireAfterWriteMillis) {
+        this.targetMethodOwner = targetMethodOwner.replace('.', '/');
+        this.targetMethodName = targetMethodName;
+        this.targetMethodDesc = targetMethodDesc;
+
+        this.maximumSize = maximumSize;
+        this.expireNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMillis);
+
+        this.cacheKey = this.targetMethodOwner.replace('/', '.') + "." + targetMethodName + targetMethodDesc;
+        this.cacheField = "bytekin$memo$" + targetMethodName + "$" + Integer.toHexString(targetMethodDesc.hashCode());
+
+        this.parameterTypes = DescriptorParser.parseParameterTypes(targetMethodDesc);
+        this.returnType = DescriptorParser.parseReturnType(targetMethodDesc);
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize + " for memoized method " + cacheKey);
+        }
+        if (returnType.getCategory() == TypeCategory.VOID) {
+            throw new IllegalArgumentException("Cannot memoize a method without a return value: " + cacheKey);
+        }
+        if (targetMethodName.startsWith("<")) {
+            throw new IllegalArgumentException("Cannot memoize a constructor or a static initializer: " + cacheKey);
+        }
+    }
+
+    private boolean isLongKey(boolean isStatic) {
+        if (!isStatic || parameterTypes.size() != 1) {
+            return false;
+        }
+
+        TypeCategory category = parameterTypes.get(0).getCategory();
+        return category != TypeCategory.OBJECT && category != TypeCategory.ARRAY;
+    }
+
+    private void loadCache(MethodVisitor mv) {
+        Label readyLabel = new Label();
+
+        // the cache is looked up once and kept in a synthetic field, racing threads get the same instance
+        mv.visitFieldInsn(Opcodes.GETSTATIC, targetMethodOwner, cacheField, MemoCache.CACHE_DESC);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, readyLabel);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLdcInsn(Type.getObjectType(targetMethodOwner));
+        mv.visitLdcInsn(cacheKey);
+        BytecodeManipulator.push(mv, maximumSize);
+        mv.visitLdcInsn(expireNanos);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, MemoCache.CACHE_OWNER, MemoCache.METHOD_OF, MemoCache.METHOD_OF_DESC, false);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, targetMethodOwner, cacheField, MemoCache.CACHE_DESC);
+        mv.visitLabel(readyLabel);
+    }
+
+    private void beginLong(MethodVisitor mv) {
+        TypeCategory category = parameterTypes.get(0).getCategory();
+        BytecodeManipulator.load(mv, category, 0);
+
+        // widen the key to a long without boxing it
+        switch (category) {
+            case LONG:
+                break;
+            case FLOAT:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+                mv.visitInsn(Opcodes.I2L);
+                break;
+            case DOUBLE:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+                break;
+            default:
+                mv.visitInsn(Opcodes.I2L);
+                break;
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.CACHE_OWNER, MemoCache.METHOD_BEGIN, MemoCache.METHOD_BEGIN_LONG_DESC, false);
+    }
+
+    private void beginArgs(MethodVisitor mv, boolean isStatic) {
+        BytecodeManipulator.push(mv, parameterTypes.size() + (isStatic ? 0 : 1));
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+
+        int arrayIndex = 0;
+        if (!isStatic) {
+            mv.visitInsn(Opcodes.DUP);
+            BytecodeManipulator.push(mv, arrayIndex++);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+
+        int localIndex = isStatic ? 0 : 1;
+        for (TypeData type : parameterTypes) {
+            mv.visitInsn(Opcodes.DUP);
+            BytecodeManipulator.push(mv, arrayIndex++);
+            BytecodeManipulator.load(mv, type.getCategory(), localIndex);
+            BytecodeManipulator.box(mv, type.getCategory());
+            mv.visitInsn(Opcodes.AASTORE);
+            localIndex += type.getCategory().getSize();
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.CACHE_OWNER, MemoCache.METHOD_BEGIN, MemoCache.METHOD_BEGIN_ARGS_DESC, false);
+    }
+
+    @Override
+    public void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        if ((visitor.getClassVisitor().getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+            throw new IllegalStateException("Cannot memoize a method of an interface: " + cacheKey);
+        }
+
+        boolean isStatic = (visitor.getAccess() & Opcodes.ACC_STATIC) != 0;
+        int entryIndex = visitor.getHookLocal(ENTRY_LOCAL);
+
+        loadCache(mv);
+        if (isLongKey(isStatic)) {
+            beginLong(mv);
+        } else {
+            beginArgs(mv, isStatic);
+        }
+        mv.visitVarInsn(Opcodes.ASTORE, entryIndex);
+
+        // return the cached value on a hit, the same way a cancelled inject returns
+        Label missLabel = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, entryIndex);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.ENTRY_OWNER, MemoCache.METHOD_IS_DONE, "()Z", false);
+        mv.visitJumpInsn(Opcodes.IFEQ, missLabel);
+        mv.visitVarInsn(Opcodes.ALOAD, entryIndex);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.ENTRY_OWNER, MemoCache.METHOD_GET_VALUE, "()Ljava/lang/Object;", false);
+        BytecodeManipulator.cast(mv, returnType);
+        BytecodeManipulator.doReturn(mv, returnType);
+        mv.visitLabel(missLabel);
+    }
+
+    @Override
+    public void afterCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        startLabel = new Label();
+        mv.visitLabel(startLabel);
+    }
+
+    @Override
+    public void beforeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        if (opcode < Opcodes.IRETURN || opcode > Opcodes.ARETURN) {
+            return;
+        }
+
+        // complete the entry with a boxed copy of the return value on top of the stack
+        mv.visitInsn(returnType.getCategory().getSize() == 2 ? Opcodes.DUP2 : Opcodes.DUP);
+        BytecodeManipulator.box(mv, returnType.getCategory());
+        mv.visitVarInsn(Opcodes.ALOAD, visitor.getHookLocal(ENTRY_LOCAL));
+        mv.visitInsn(Opcodes.SWAP);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.ENTRY_OWNER, MemoCache.METHOD_COMPLETE, "(Ljava/lang/Object;)V", false);
+    }
+
+    @Override
+    public void beforeMaxs(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        Label endLabel = new Label();
+        Label handlerLabel = new Label();
+        mv.visitLabel(endLabel);
+
+        // fail the entry when the original code throws, so waiting callers compute the value themselves
+        int throwableIndex = visitor.getHookLocal(THROWABLE_LOCAL);
+        mv.visitTryCatchBlock(startLabel, endLabel, handlerLabel, null);
+        mv.visitLabel(handlerLabel);
+        mv.visitVarInsn(Opcodes.ASTORE, throwableIndex);
+        mv.visitVarInsn(Opcodes.ALOAD, visitor.getHookLocal(ENTRY_LOCAL));
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MemoCache.ENTRY_OWNER, MemoCache.METHOD_FAIL, "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, throwableIndex);
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    @Override
+    public void visitClassEnd(ClassVisitor cv, BytekinMethodVisitor visitor) {
+        cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, cacheField, MemoCache.CACHE_DESC, null, null).visitEnd();
+    }
+}
@@ -1,12 +1,31 @@
 package io.github.brqnko.bytekin.transformer.method;
 
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.injection.Deterministic;
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
 import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import io.github.brqnko.bytekin.util.DescriptorParser;
+import io.github.brqnko.bytekin.util.PureHooks;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
 public class ModifyConstantMethodTransformer implements IBytekinMethodTransformer {
 
+    /** Calls the hook with the static arguments of a dynamic constant, available since Java 11 */
+    private static final Handle INVOKE_BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "java/lang/invoke/ConstantBootstraps",
+            "invoke",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;[Ljava/lang/Object;)Ljava/lang/Object;",
+            false);
+
     private final String targetMethodName;
     private final String targetMethodDesc;
 
@@ -16,9 +35,16 @@ public class ModifyConstantMethodTransformer implements IBytekinMethodTransforme
     private final String hookOwner;
     private final String hookName;
     private final String hookDesc;
+    private final TypeCategory hookReturnCategory;
 
     private int occurrence;
 
+    /** The {@link io.github.brqnko.bytekin.injection.Pure} hook, looked up on the first matching constant */
+    private boolean pureResolved;
+    private Method pureHook;
+    private Object pureValue;
+    private boolean deterministic;
+
     public ModifyConstantMethodTransformer(String targetMethodName,
                                            String targetMethodDesc,
                                            Object constantValue,
@@ -34,6 +60,7 @@ public class ModifyConstantMethodTransformer implements IBytekinMethodTransforme
         this.hookOwner = hookOwner.replace('.', '/');
         this.hookName = hookName;
         this.hookDesc = buildHookDescriptor(constantValue);
+        this.hookReturnCategory = DescriptorParser.parseReturnType(hookDesc).getCategory();
     }
 
     private String buildHookDescriptor(Object constant) {
@@ -71,6 +98,22 @@ public class ModifyConstantMethodTransformer implements IBytekinMethodTransforme
         return ordinal < 0 || current == ordinal;
     }
 
+    /**
+     * Only string constants are stored as UTF8, numbers do not narrow down the classes
+     */
+    @Override
+    public List<String> getRequiredSymbols() {
+        if (constantValue instanceof String) {
+            return Collections.singletonList((String) constantValue);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean keepsFrames() {
+        return true;
+    }
+
     @Override
     public void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
         occurrence = 0;
@@ -92,11 +135,51 @@ public class ModifyConstantMethodTransformer implements IBytekinMethodTransforme
             return false;
         }
 
+        if (!pureResolved) {
+            pureResolved = true;
+            pureHook = PureHooks.findPureHook(hookOwner, hookName, hookDesc);
+            if (pureHook != null) {
+                pureValue = PureHooks.evaluate(pureHook, value);
+                // a result without a constant form, such as a boxed value or an enum, is still computed at runtime
+                if (!BytecodeManipulator.isConstant(hookReturnCategory, pureValue)) {
+                    pureHook = null;
+                }
+            }
+            if (pureHook == null) {
+                deterministic = PureHooks.findHook(hookOwner, hookName, hookDesc, Deterministic.class) != null;
+            }
+        }
+
+        // the constant only depends on the original one, so it is replaced with the result
+        if (pureHook != null) {
+            BytecodeManipulator.pushConstant(mv, hookReturnCategory, pureValue);
+            return true;
+        }
+
+        // the first execution of the site calls the hook and the constant pool keeps the result
+        if (deterministic && canUseDynamicConstant(visitor, value)) {
+            Handle hook = new Handle(Opcodes.H_INVOKESTATIC, hookOwner, hookName, hookDesc, false);
+            String constantDesc = hookDesc.substring(hookDesc.indexOf(')') + 1);
+            mv.visitLdcInsn(new ConstantDynamic(hookName, constantDesc, INVOKE_BOOTSTRAP, hook, value));
+            return true;
+        }
+
         pushConstant(mv, value);
         mv.visitMethodInsn(Opcodes.INVOKESTATIC, hookOwner, hookName, hookDesc, false);
         return true;
     }
 
+    /**
+     * Dynamic constants need Java 11 class files, and the constant has to be a static argument of the hook's type
+     */
+    private boolean canUseDynamicConstant(BytekinMethodVisitor visitor, Object value) {
+        if ((visitor.getClassVisitor().getVersion() & 0xFFFF) < Opcodes.V11) {
+            return false;
+        }
+        return value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Float || value instanceof Double;
+    }
+
     private void pushConstant(MethodVisitor mv, Object value) {
         if (value == null) {
             mv.visitInsn(Opcodes.ACONST_NULL);
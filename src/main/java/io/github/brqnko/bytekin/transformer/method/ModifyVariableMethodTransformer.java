@@ -24,7 +24,6 @@ public class ModifyVariableMethodTransformer implements IBytekinMethodTransforme
     private final String hookOwner;
     private final String hookName;
 
-    private boolean headApplied;
     private int occurrence;
 
     public ModifyVariableMethodTransformer(String ownerInternalName,
@@ -55,7 +54,10 @@ public class ModifyVariableMethodTransformer implements IBytekinMethodTransforme
             return;
         }
 
-        if (target != VariableTarget.HEAD || headApplied) {
+        // the same transformer visits the method again when the class is transformed again
+        occurrence = 0;
+
+        if (target != VariableTarget.HEAD) {
             return;
         }
 
@@ -88,8 +90,6 @@ public class ModifyVariableMethodTransformer implements IBytekinMethodTransforme
 
         mv.visitMethodInsn(Opcodes.INVOKESTATIC, hookOwner, hookName, descriptor, false);
         mv.visitVarInsn(argumentType.getOpcode(Opcodes.ISTORE), localIndex);
-
-        headApplied = true;
     }
 
     @Override
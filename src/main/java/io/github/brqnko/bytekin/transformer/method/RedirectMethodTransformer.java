@@ -1,29 +1,73 @@
 package io.github.brqnko.bytekin.transformer.method;
 
+import io.github.brqnko.bytekin.injection.Linkage;
 import io.github.brqnko.bytekin.injection.RedirectType;
 import io.github.brqnko.bytekin.mapping.IMappingProvider;
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
 import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import io.github.brqnko.bytekin.util.BytecodeManipulator;
+import io.github.brqnko.bytekin.data.TypeCategory;
+import io.github.brqnko.bytekin.data.TypeData;
+import io.github.brqnko.bytekin.util.DescriptorParser;
+import io.github.brqnko.bytekin.util.PureHooks;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
 public class RedirectMethodTransformer implements IBytekinMethodTransformer {
 
+    private static final String DEVIRTUALIZE_LOCAL = "bytekin$devirtualize$";
+    private static final String NEW_LOCAL = "bytekin$new$";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
     private final RedirectType type;
     private final String targetOwner;
     private final String targetName;
     private final String targetDesc;
+    /** The parsed parameters of a devirtualized call, shared by every site */
+    private final List<TypeData> targetParameters;
     private final int ordinal;
 
     private final String hookOwner;
     private final String hookName;
+    private final Linkage linkage;
+
+    private final List<String> receivers;
+    /** Whether each receiver is an interface, read from its class file on the first devirtualized site */
+    private boolean[] interfaceReceivers;
 
     private int occurrences;
     private boolean handled;
 
+    /** The value of a {@link io.github.brqnko.bytekin.injection.Pure} hook of a static field get, looked up on the first redirected site */
+    private boolean pureResolved;
+    private boolean pureConstant;
+    private Object pureValue;
+
+    /** Whether each allocation of the owner that has not been initialized yet is redirected, innermost first */
+    private final Deque<Boolean> allocations = new ArrayDeque<>();
+    private boolean pendingDup;
+
+    public RedirectMethodTransformer(IMappingProvider mapping, RedirectType type,
+                                     String owner, String name, String desc, int ordinal,
+                                     String hookMethodOwner, String hookMethodName, Linkage linkage) {
+        this(mapping, type, owner, name, desc, ordinal, hookMethodOwner, hookMethodName, linkage, Collections.emptyList());
+    }
+
     public RedirectMethodTransformer(IMappingProvider mapping, RedirectType type,
                                      String owner, String name, String desc, int ordinal,
-                                     String hookMethodOwner, String hookMethodName) {
+                                     String hookMethodOwner, String hookMethodName, Linkage linkage, List<String> receivers) {
         this.type = type;
         this.ordinal = ordinal;
 
@@ -33,6 +77,7 @@ public class RedirectMethodTransformer implements IBytekinMethodTransformer {
 
         switch (type) {
             case METHOD:
+            case DEVIRTUALIZE:
                 this.targetName = mapping.getMethodName(normalizedOwner, name, desc);
                 this.targetDesc = mapping.getDesc(desc);
                 break;
@@ -41,12 +86,40 @@ public class RedirectMethodTransformer implements IBytekinMethodTransformer {
                 this.targetName = mapping.getFieldName(normalizedOwner, name, desc);
                 this.targetDesc = mapping.getDesc(desc);
                 break;
+            case NEW:
+                this.targetName = CONSTRUCTOR_NAME;
+                this.targetDesc = mapping.getDesc(desc);
+                break;
             default:
                 throw new IllegalStateException("Unsupported redirect type: " + type);
         }
 
-        this.hookOwner = hookMethodOwner.replace('.', '/');
+        this.targetParameters = type == RedirectType.DEVIRTUALIZE ? DescriptorParser.parseParameterTypes(targetDesc) : Collections.emptyList();
+
+        this.hookOwner = hookMethodOwner == null ? null : hookMethodOwner.replace('.', '/');
         this.hookName = hookMethodName;
+        this.linkage = linkage;
+
+        this.receivers = new ArrayList<>();
+        for (String receiver : receivers) {
+            this.receivers.add(mapping.getClassName(receiver.replace('/', '.')).replace('.', '/'));
+        }
+        if (type == RedirectType.DEVIRTUALIZE && this.receivers.isEmpty()) {
+            throw new IllegalArgumentException("Devirtualizing redirect needs at least one receiver: " + targetOwner + "." + targetName);
+        }
+        if (type == RedirectType.NEW && hookMethodName == null) {
+            throw new IllegalArgumentException("Allocation redirect needs a factory hook: " + targetOwner + targetDesc);
+        }
+    }
+
+    @Override
+    public void beforeCode(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        // the same transformer visits the method again when the class is transformed again
+        occurrences = 0;
+        handled = false;
+        allocations.clear();
+        pendingDup = false;
+        IBytekinMethodTransformer.super.beforeCode(mv, visitor);
     }
 
     private boolean shouldHandle(int currentOrdinal) {
@@ -66,9 +139,117 @@ public class RedirectMethodTransformer implements IBytekinMethodTransformer {
         return false;
     }
 
+    @Override
+    public List<String> getRequiredSymbols() {
+        return Arrays.asList(targetOwner, targetName, targetDesc);
+    }
+
+    /**
+     * Method and field redirects replace one instruction with a hook call of the same stack effect
+     */
+    @Override
+    public boolean keepsFrames() {
+        return type == RedirectType.METHOD || type == RedirectType.FIELD_GET || type == RedirectType.FIELD_SET;
+    }
+
+    @Override
+    public boolean transformTypeInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String type) {
+        if (this.type != RedirectType.NEW) {
+            return false;
+        }
+        restoreAllocation(mv);
+
+        if (opcode != Opcodes.NEW || !type.equals(targetOwner)) {
+            return false;
+        }
+
+        // the constructor is not known yet, so every allocation is dropped until the redirect is used and the
+        // ordinal is only counted at the constructor call, allocations of other constructors are rebuilt there
+        boolean dropped = !handled;
+        allocations.push(dropped);
+        if (!dropped) {
+            return false;
+        }
+
+        // the factory creates the instance, so the NEW and the DUP that javac emits after it are dropped
+        pendingDup = true;
+        return true;
+    }
+
+    @Override
+    public boolean transformInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+        if (pendingDup && opcode == Opcodes.DUP) {
+            pendingDup = false;
+            return true;
+        }
+        restoreAllocation(mv);
+        return false;
+    }
+
+    /**
+     * Emits the dropped NEW again when it is not followed by a DUP, the allocation is then left as it was
+     */
+    private void restoreAllocation(MethodVisitor mv) {
+        if (!pendingDup) {
+            return;
+        }
+
+        pendingDup = false;
+        mv.visitTypeInsn(Opcodes.NEW, targetOwner);
+        allocations.pop();
+        allocations.push(false);
+    }
+
+    private boolean redirectConstructor(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor) {
+        restoreAllocation(mv);
+
+        // a constructor without an allocation of its own is a super or this call
+        if (opcode != Opcodes.INVOKESPECIAL || !owner.equals(targetOwner) || !name.equals(CONSTRUCTOR_NAME) || allocations.isEmpty()) {
+            return false;
+        }
+
+        if (!allocations.pop()) {
+            return false;
+        }
+
+        if (descriptor.equals(targetDesc) && !shouldHandle(occurrences++)) {
+            String hookDescriptor = descriptor.substring(0, descriptor.lastIndexOf(')') + 1) + "L" + targetOwner + ";";
+            BytecodeManipulator.invokeHook(mv, visitor, linkage, hookOwner, hookName, hookDescriptor);
+            return true;
+        }
+
+        // another constructor or ordinal of the owner, the arguments are already on the stack, so put the allocation below them
+        List<TypeData> parameters = DescriptorParser.parseParameterTypes(descriptor);
+        int size = 0;
+        for (TypeData parameter : parameters) {
+            size += parameter.getCategory().getSize();
+        }
+        int firstIndex = visitor.getLocal(NEW_LOCAL + descriptor, size);
+        int localIndex = firstIndex + size;
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            TypeData parameter = parameters.get(i);
+            localIndex -= parameter.getCategory().getSize();
+            BytecodeManipulator.store(mv, parameter.getCategory(), localIndex);
+        }
+        mv.visitTypeInsn(Opcodes.NEW, owner);
+        mv.visitInsn(Opcodes.DUP);
+        loadArguments(mv, parameters, firstIndex);
+        mv.visitMethodInsn(opcode, owner, name, descriptor, false);
+        return true;
+    }
+
     @Override
     public boolean transformMethodInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor, boolean isInterface) {
-        if (type != RedirectType.METHOD) {
+        if (type == RedirectType.NEW) {
+            return redirectConstructor(mv, visitor, opcode, owner, name, descriptor);
+        }
+
+        if (type != RedirectType.METHOD && type != RedirectType.DEVIRTUALIZE) {
+            return false;
+        }
+
+        // only virtual and interface calls have a receiver to guard
+        if (type == RedirectType.DEVIRTUALIZE && opcode != Opcodes.INVOKEVIRTUAL && opcode != Opcodes.INVOKEINTERFACE) {
             return false;
         }
 
@@ -81,14 +262,106 @@ public class RedirectMethodTransformer implements IBytekinMethodTransformer {
             return false;
         }
 
+        if (type == RedirectType.DEVIRTUALIZE) {
+            devirtualize(mv, visitor, opcode, owner, name, descriptor, isInterface);
+            return true;
+        }
+
         String hookDescriptor = buildMethodHookDescriptor(opcode, descriptor, owner);
-        mv.visitMethodInsn(Opcodes.INVOKESTATIC, hookOwner, hookName, hookDescriptor, false);
+        BytecodeManipulator.invokeHook(mv, visitor, linkage, hookOwner, hookName, hookDescriptor);
         return true;
     }
 
+    private void devirtualize(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        List<TypeData> parameters = targetParameters;
+
+        // the receiver is below the arguments, so move everything into locals to check it
+        int size = 1;
+        for (TypeData parameter : parameters) {
+            size += parameter.getCategory().getSize();
+        }
+        int receiverIndex = visitor.getLocal(DEVIRTUALIZE_LOCAL + owner + "." + name + descriptor, size);
+        int localIndex = receiverIndex + size;
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            TypeData parameter = parameters.get(i);
+            localIndex -= parameter.getCategory().getSize();
+            BytecodeManipulator.store(mv, parameter.getCategory(), localIndex);
+        }
+        mv.visitVarInsn(Opcodes.ASTORE, receiverIndex);
+
+        if (hookName == null && interfaceReceivers == null) {
+            boolean[] interfaces = new boolean[receivers.size()];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = isInterface(receivers.get(i));
+            }
+            interfaceReceivers = interfaces;
+        }
+
+        Label endLabel = new Label();
+        for (int i = 0; i < receivers.size(); i++) {
+            String receiver = receivers.get(i);
+            Label nextLabel = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, receiverIndex);
+            mv.visitTypeInsn(Opcodes.INSTANCEOF, receiver);
+            mv.visitJumpInsn(Opcodes.IFEQ, nextLabel);
+
+            mv.visitVarInsn(Opcodes.ALOAD, receiverIndex);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, receiver);
+            loadArguments(mv, parameters, receiverIndex + 1);
+            if (hookName == null) {
+                // the call site is monomorphic from here, so the JIT can inline the concrete implementation
+                if (interfaceReceivers[i]) {
+                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, receiver, name, descriptor, true);
+                } else {
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, receiver, name, descriptor, false);
+                }
+            } else {
+                BytecodeManipulator.invokeHook(mv, visitor, linkage, hookOwner, hookName, buildMethodHookDescriptor(opcode, descriptor, receiver));
+            }
+            mv.visitJumpInsn(Opcodes.GOTO, endLabel);
+
+            mv.visitLabel(nextLabel);
+        }
+
+        // any other receiver takes the original call
+        mv.visitVarInsn(Opcodes.ALOAD, receiverIndex);
+        loadArguments(mv, parameters, receiverIndex + 1);
+        mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        mv.visitLabel(endLabel);
+    }
+
+    /**
+     * Reads the access flags of the receiver without loading it, an interface has to be called with INVOKEINTERFACE
+     */
+    private static boolean isInterface(String receiver) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
+        }
+
+        try (InputStream in = loader.getResourceAsStream(receiver + ".class")) {
+            if (in == null) {
+                throw new IllegalStateException("Cannot find the devirtualized receiver " + receiver);
+            }
+            return (new ClassReader(in).getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the devirtualized receiver " + receiver, e);
+        }
+    }
+
+    private void loadArguments(MethodVisitor mv, List<TypeData> parameters, int localIndex) {
+        for (TypeData parameter : parameters) {
+            BytecodeManipulator.load(mv, parameter.getCategory(), localIndex);
+            localIndex += parameter.getCategory().getSize();
+        }
+    }
+
     @Override
     public boolean transformFieldInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, String owner, String name, String descriptor) {
-        if (type == RedirectType.METHOD) {
+        if (type == RedirectType.NEW) {
+            restoreAllocation(mv);
+        }
+        if (type != RedirectType.FIELD_GET && type != RedirectType.FIELD_SET) {
             return false;
         }
 
@@ -108,10 +381,45 @@ public class RedirectMethodTransformer implements IBytekinMethodTransformer {
             hookDescriptor = buildFieldSetHookDescriptor(opcode, descriptor, owner);
         }
 
-        mv.visitMethodInsn(Opcodes.INVOKESTATIC, hookOwner, hookName, hookDescriptor, false);
+        // a pure hook of a static field has no arguments, so its value is known while the class is transformed
+        if (type == RedirectType.FIELD_GET && opcode == Opcodes.GETSTATIC) {
+            TypeCategory category = TypeCategory.parse(descriptor);
+            if (!pureResolved) {
+                pureResolved = true;
+                Method pureHook = PureHooks.findPureHook(hookOwner, hookName, hookDescriptor);
+                if (pureHook != null) {
+                    pureValue = PureHooks.evaluate(pureHook);
+                    // a result without a constant form, such as a boxed value or an enum, is still read at runtime
+                    pureConstant = BytecodeManipulator.isConstant(category, pureValue);
+                }
+            }
+            if (pureConstant) {
+                BytecodeManipulator.pushConstant(mv, category, pureValue);
+                return true;
+            }
+        }
+
+        BytecodeManipulator.invokeHook(mv, visitor, linkage, hookOwner, hookName, hookDescriptor);
         return true;
     }
 
+    @Override
+    public void beforeOtherInsn(MethodVisitor mv, BytekinMethodVisitor visitor) {
+        restoreAllocation(mv);
+    }
+
+    @Override
+    public boolean transformLdcInsn(MethodVisitor mv, BytekinMethodVisitor visitor, Object value) {
+        restoreAllocation(mv);
+        return false;
+    }
+
+    @Override
+    public boolean transformVarInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode, int varIndex) {
+        restoreAllocation(mv);
+        return false;
+    }
+
     private String buildMethodHookDescriptor(int opcode, String descriptor, String owner) {
         if (opcode == Opcodes.INVOKESTATIC) {
             return descriptor;
@@ -1,32 +1,115 @@
 package io.github.brqnko.bytekin.transformer.visitor;
 
+import io.github.brqnko.bytekin.data.FieldConstantModification;
 import io.github.brqnko.bytekin.data.MethodData;
 import io.github.brqnko.bytekin.transformer.BytekinClassTransformer;
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.method.FieldConstantMethodTransformer;
+import io.github.brqnko.bytekin.util.MethodSizeReader;
+import lombok.Getter;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class BytekinClassVisitor extends ClassVisitor {
 
     private final BytekinClassTransformer transformer;
+    private final List<BytekinMethodVisitor> methodVisitors = new ArrayList<>();
 
-    public BytekinClassVisitor(int api, ClassWriter writer, BytekinClassTransformer transformer) {
-        super(api, writer);
+    /** The class being transformed, its max locals are read when the first method is transformed */
+    private final ClassReader reader;
+    private Map<MethodData, Integer> maxLocals;
+
+    /** Rewrites the uses of the replaced field constants, created when the class is visited */
+    private FieldConstantMethodTransformer fieldConstants;
+
+    @Getter
+    private int version;
+    @Getter
+    private int access;
+    @Getter
+    private String className;
+
+    /**
+     * @param next the writer, or the first custom stage in front of it
+     * @param reader the reader that visits this visitor
+     */
+    public BytekinClassVisitor(int api, ClassVisitor next, BytekinClassTransformer transformer, ClassReader reader) {
+        super(api, next);
         this.transformer = transformer;
+        this.reader = reader;
     }
 
     @Override
-    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-        MethodVisitor visitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.version = version;
+        this.access = access;
+        this.className = name;
+        if (!transformer.getFieldConstants().isEmpty()) {
+            this.fieldConstants = new FieldConstantMethodTransformer(name);
+        }
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
 
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        FieldConstantModification modification = transformer.getFieldConstants().get(name + descriptor);
+        if (modification != null) {
+            if ((access & Opcodes.ACC_STATIC) == 0) {
+                throw new IllegalStateException("Cannot replace the value of " + className + "." + name + ", it is not static");
+            }
+            fieldConstants.addField(name, descriptor, value, modification.getConstantValue(), modification.isReplaceInlined());
+            value = modification.getConstantValue();
+        }
+        return super.visitField(access, name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
         List<IBytekinMethodTransformer> transformers = transformer.getMethodTransformers().get(new MethodData(name, descriptor));
+        if (transformers != null && transformers.isEmpty()) {
+            transformers = null;
+        }
+        // the reader visits the fields first, so every replaced field constant is known here
+        if (fieldConstants != null && fieldConstants.appliesTo(name)) {
+            transformers = transformers == null ? new ArrayList<>() : new ArrayList<>(transformers);
+            transformers.add(fieldConstants);
+        }
+        // the writer's own method visitor has to be returned unwrapped, the reader then copies the method as it is
+        // without decoding its instructions, and the constant pool it was built from keeps every index valid
         if (transformers == null) {
-            return visitor;
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
+
+        // the method visitor keeps the original access, so transformers can still see the flags they removed
+        int transformedAccess = access;
+        for (IBytekinMethodTransformer methodTransformer : transformers) {
+            transformedAccess = methodTransformer.transformMethodAccess(transformedAccess);
         }
+        MethodVisitor visitor = super.visitMethod(transformedAccess, name, descriptor, signature, exceptions);
 
-        return new BytekinMethodVisitor(api, visitor, transformers, access, name, descriptor, signature, exceptions);
+        if (maxLocals == null) {
+            maxLocals = MethodSizeReader.readMaxLocals(reader);
+        }
+        BytekinMethodVisitor methodVisitor = new BytekinMethodVisitor(api, visitor, this, transformers, access, name, descriptor, signature, exceptions,
+                maxLocals.getOrDefault(new MethodData(name, descriptor), 0));
+        methodVisitors.add(methodVisitor);
+        return methodVisitor;
+    }
+
+    @Override
+    public void visitEnd() {
+        for (BytekinMethodVisitor methodVisitor : methodVisitors) {
+            for (IBytekinMethodTransformer methodTransformer : methodVisitor.getTransformers()) {
+                methodTransformer.visitClassEnd(cv, methodVisitor);
+            }
+        }
+        super.visitEnd();
     }
 }
@@ -1,14 +1,20 @@
 package io.github.brqnko.bytekin.transformer.visitor;
 
 import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 public class BytekinMethodVisitor extends MethodVisitor {
 
+    private final BytekinClassVisitor classVisitor;
     private final List<IBytekinMethodTransformer> transformers;
 
     private final int access;
@@ -17,26 +23,79 @@ public class BytekinMethodVisitor extends MethodVisitor {
     private final String signature;
     private final String[] exceptions;
 
-    public BytekinMethodVisitor(int api, MethodVisitor visitor, List<IBytekinMethodTransformer> transformers, int access, String name, String descriptor, String signature, String[] exceptions) {
+    /** Locals added by the transformers by name, allocated after the locals of the original method */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Integer> addedLocals = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private int nextLocal;
+
+    /**
+     * @param maxLocals the max locals of the original method, the added locals start there
+     */
+    public BytekinMethodVisitor(int api, MethodVisitor visitor, BytekinClassVisitor classVisitor, List<IBytekinMethodTransformer> transformers, int access, String name, String descriptor, String signature, String[] exceptions, int maxLocals) {
         super(api, visitor);
+        this.classVisitor = classVisitor;
         this.transformers = transformers;
         this.access = access;
         this.name = name;
         this.descriptor = descriptor;
         this.signature = signature;
         this.exceptions = exceptions;
+        this.nextLocal = maxLocals;
+    }
+
+    /**
+     * @return the index of the local that the hooks use to share the value with the name, two slots so long and
+     * double values fit
+     */
+    public int getHookLocal(String name) {
+        return getLocal(name, 2);
+    }
+
+    /**
+     * Allocates the slots with the name the first time it is asked for, every later call of the method returns the
+     * same index
+     *
+     * @param size the number of slots, the same for every call with the name
+     * @return the index of the first slot
+     */
+    public int getLocal(String name, int size) {
+        Integer index = addedLocals.get(name);
+        if (index == null) {
+            index = nextLocal;
+            nextLocal += size;
+            addedLocals.put(name, index);
+        }
+        return index;
     }
 
     @Override
     public void visitCode() {
         transformers.forEach(transformer -> transformer.beforeCode(mv, this));
+        transformers.forEach(transformer -> transformer.afterCode(mv, this));
         super.visitCode();
     }
 
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        transformers.forEach(transformer -> transformer.beforeMaxs(mv, this));
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
     @Override
     public void visitInsn(int opcode) {
         transformers.forEach(transformer -> transformer.beforeInsn(mv, this, opcode));
-        super.visitInsn(opcode);
+
+        boolean handled = false;
+        for (IBytekinMethodTransformer transformer : transformers) {
+            if (!handled) {
+                handled = transformer.transformInsn(mv, this, opcode);
+            }
+        }
+
+        if (!handled) {
+            super.visitInsn(opcode);
+        }
     }
 
     @Override
@@ -81,6 +140,20 @@ public class BytekinMethodVisitor extends MethodVisitor {
         }
     }
 
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        boolean handled = false;
+        for (IBytekinMethodTransformer transformer : transformers) {
+            if (!handled) {
+                handled = transformer.transformTypeInsn(mv, this, opcode, type);
+            }
+        }
+
+        if (!handled) {
+            super.visitTypeInsn(opcode, type);
+        }
+    }
+
     @Override
     public void visitLdcInsn(Object value) {
         boolean handled = false;
@@ -108,4 +181,52 @@ public class BytekinMethodVisitor extends MethodVisitor {
             super.visitVarInsn(opcode, var);
         }
     }
+
+    @Override
+    public void visitLabel(Label label) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitLabel(label);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitIincInsn(var, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitMultiANewArrayInsn(descriptor, numDimensions);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        transformers.forEach(transformer -> transformer.beforeOtherInsn(mv, this));
+        super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+    }
 }
@@ -2,13 +2,39 @@ package io.github.brqnko.bytekin.util;
 
 import io.github.brqnko.bytekin.data.TypeCategory;
 import io.github.brqnko.bytekin.data.TypeData;
+import io.github.brqnko.bytekin.hook.HookBatch;
+import io.github.brqnko.bytekin.hook.HookRegistry;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
 import lombok.experimental.UtilityClass;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.util.List;
+
 @UtilityClass
 public class BytecodeManipulator {
 
+    private final Handle HOOK_BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            HookRegistry.BOOTSTRAP_OWNER,
+            HookRegistry.BOOTSTRAP_NAME,
+            HookRegistry.BOOTSTRAP_DESC,
+            false);
+
+    public void invokeHook(MethodVisitor mv, BytekinMethodVisitor visitor, Linkage linkage, String owner, String name, String desc) {
+        if (linkage != Linkage.DYNAMIC) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, name, desc, false);
+            return;
+        }
+
+        if ((visitor.getClassVisitor().getVersion() & 0xFFFF) < Opcodes.V1_7) {
+            throw new IllegalStateException("Dynamic hook linkage requires class file version 51 or above: " + visitor.getClassVisitor().getClassName());
+        }
+        mv.visitInvokeDynamicInsn(name, desc, HOOK_BOOTSTRAP, owner);
+    }
+
     public void cast(MethodVisitor mv, TypeData returnType) {
         switch (returnType.getCategory()) {
             case BOOLEAN:
@@ -50,6 +76,148 @@ public class BytecodeManipulator {
         }
     }
 
+    public void push(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * @return whether {@link #pushConstant} can write the value, references other than strings and null have no constant form
+     */
+    public boolean isConstant(TypeCategory category, Object value) {
+        if (category != TypeCategory.OBJECT && category != TypeCategory.ARRAY) {
+            return value != null;
+        }
+        return value == null || value instanceof String;
+    }
+
+    /**
+     * Pushes a value computed at transform time as a constant of the category, see {@link #isConstant}
+     */
+    public void pushConstant(MethodVisitor mv, TypeCategory category, Object value) {
+        switch (category) {
+            case BOOLEAN:
+                push(mv, (Boolean) value ? 1 : 0);
+                break;
+            case CHAR:
+                push(mv, (Character) value);
+                break;
+            case BYTE:
+            case SHORT:
+            case INT:
+                push(mv, ((Number) value).intValue());
+                break;
+            case LONG:
+                long longValue = (Long) value;
+                if (longValue == 0L || longValue == 1L) {
+                    mv.visitInsn(Opcodes.LCONST_0 + (int) longValue);
+                } else {
+                    mv.visitLdcInsn(longValue);
+                }
+                break;
+            case FLOAT:
+            case DOUBLE:
+                mv.visitLdcInsn(value);
+                break;
+            default:
+                if (value == null) {
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                } else if (value instanceof String) {
+                    mv.visitLdcInsn(value);
+                } else {
+                    throw new IllegalStateException("Cannot write a value of " + value.getClass() + " as a constant");
+                }
+                break;
+        }
+    }
+
+    public void box(MethodVisitor mv, TypeCategory category) {
+        switch (category) {
+            case BOOLEAN:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+                break;
+            case BYTE:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Byte", "valueOf", "(B)Ljava/lang/Byte;", false);
+                break;
+            case CHAR:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Character", "valueOf", "(C)Ljava/lang/Character;", false);
+                break;
+            case SHORT:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Short", "valueOf", "(S)Ljava/lang/Short;", false);
+                break;
+            case INT:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+                break;
+            case LONG:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+                break;
+            case FLOAT:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;", false);
+                break;
+            case DOUBLE:
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the {@link HookBatch} column layout of a self reference followed by the values
+     */
+    public String getBatchColumns(List<TypeData> types) {
+        StringBuilder builder = new StringBuilder().append(HookBatch.COLUMN_OBJECT);
+        for (TypeData type : types) {
+            switch (type.getCategory()) {
+                case LONG:
+                case DOUBLE:
+                    builder.append(HookBatch.COLUMN_LONG);
+                    break;
+                case OBJECT:
+                case ARRAY:
+                    builder.append(HookBatch.COLUMN_OBJECT);
+                    break;
+                default:
+                    builder.append(HookBatch.COLUMN_INT);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the value on top of the stack to the {@link HookBatch} below it, leaving the batch on the stack
+     */
+    public void appendBatch(MethodVisitor mv, TypeCategory category) {
+        String desc;
+        switch (category) {
+            case LONG:
+                desc = "(J)";
+                break;
+            case FLOAT:
+                desc = "(F)";
+                break;
+            case DOUBLE:
+                desc = "(D)";
+                break;
+            case OBJECT:
+            case ARRAY:
+                desc = "(Ljava/lang/Object;)";
+                break;
+            default:
+                desc = "(I)";
+                break;
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HookBatch.BATCH_OWNER, HookBatch.METHOD_ADD, desc + HookBatch.BATCH_DESC, false);
+    }
+
     public void doReturn(MethodVisitor mv, TypeData returnType) {
         switch (returnType.getCategory()) {
             case VOID:
@@ -0,0 +1,158 @@
+package io.github.brqnko.bytekin.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The superclasses and interfaces of a batch of classes, shared by every class of
+ * {@link io.github.brqnko.bytekin.transformer.BytekinTransformer#transformAll}.
+ * <p>
+ * The common superclasses the frames need are answered from the batch when every type on the way is in it, so the
+ * classes do not have to be loaded, and cached either way. Headers are only read when a class is first asked for.
+ */
+public class ClassHierarchy {
+
+    private static final String OBJECT = "java/lang/Object";
+
+    /** The bytes of every class of the batch by its internal name */
+    private final Map<String, byte[]> classes = new HashMap<>();
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, String> commonSuperClasses = new ConcurrentHashMap<>();
+
+    /**
+     * @param classes the bytes of every class by its name
+     */
+    public ClassHierarchy(Map<String, byte[]> classes) {
+        classes.forEach((name, bytes) -> this.classes.put(name.replace('.', '/'), bytes));
+    }
+
+    /**
+     * @param loaded computes the common superclass from the loaded classes, when a type is not in the batch
+     */
+    public String getCommonSuperClass(String type1, String type2, Supplier<String> loaded) {
+        String key = type1 + ' ' + type2;
+        String common = commonSuperClasses.get(key);
+        if (common != null) {
+            return common;
+        }
+
+        common = findCommonSuperClass(type1, type2);
+        if (common == null) {
+            common = loaded.get();
+        }
+        commonSuperClasses.put(key, common);
+        return common;
+    }
+
+    /**
+     * The same walk as {@link org.objectweb.asm.ClassWriter#getCommonSuperClass}, or null when it leaves the batch
+     */
+    private String findCommonSuperClass(String type1, String type2) {
+        Boolean assignable = isAssignableFrom(type1, type2);
+        if (assignable == null) {
+            return null;
+        }
+        if (assignable) {
+            return type1;
+        }
+        assignable = isAssignableFrom(type2, type1);
+        if (assignable == null) {
+            return null;
+        }
+        if (assignable) {
+            return type2;
+        }
+
+        Node node = node(type1);
+        Node other = node(type2);
+        if (node == null || other == null) {
+            return null;
+        }
+        if (node.isInterface || other.isInterface) {
+            return OBJECT;
+        }
+
+        do {
+            if (node.superName == null) {
+                return null;
+            }
+            String type = node.superName;
+            assignable = isAssignableFrom(type, type2);
+            if (assignable == null) {
+                return null;
+            }
+            if (assignable) {
+                return type;
+            }
+            node = node(type);
+        } while (node != null);
+        return null;
+    }
+
+    /**
+     * @return null when it cannot be told without a type that is not in the batch
+     */
+    private Boolean isAssignableFrom(String type, String subtype) {
+        if (type.equals(subtype) || type.equals(OBJECT)) {
+            return true;
+        }
+        if (subtype.equals(OBJECT)) {
+            return false;
+        }
+
+        Node node = node(subtype);
+        if (node == null) {
+            return null;
+        }
+
+        boolean unknown = false;
+        if (node.superName != null) {
+            Boolean assignable = isAssignableFrom(type, node.superName);
+            if (assignable == null) {
+                unknown = true;
+            } else if (assignable) {
+                return true;
+            }
+        }
+        for (String itf : node.interfaces) {
+            Boolean assignable = isAssignableFrom(type, itf);
+            if (assignable == null) {
+                unknown = true;
+            } else if (assignable) {
+                return true;
+            }
+        }
+        return unknown ? null : Boolean.FALSE;
+    }
+
+    private Node node(String type) {
+        Node node = nodes.get(type);
+        if (node != null) {
+            return node;
+        }
+
+        byte[] bytes = classes.get(type);
+        if (bytes == null) {
+            return null;
+        }
+        return nodes.computeIfAbsent(type, k -> new Node(new ClassReader(bytes)));
+    }
+
+    private static final class Node {
+
+        private final String superName;
+        private final String[] interfaces;
+        private final boolean isInterface;
+
+        private Node(ClassReader reader) {
+            this.superName = reader.getSuperName();
+            this.interfaces = reader.getInterfaces();
+            this.isInterface = (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.brqnko.bytekin.util;
+
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import io.github.brqnko.bytekin.data.MethodData;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides from the raw constant pool of a class whether any transformer can change it. A transformer needs the name
+ * and descriptor of its method and its {@link IBytekinMethodTransformer#getRequiredSymbols() required symbols}, all of
+ * them are UTF8 entries of the pool of a class it applies to. A replaced field constant needs the name and descriptor
+ * of its field.
+ */
+public class ConstantPoolFilter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /** Every required symbol once, encoded the way the class file stores it */
+    private final List<byte[]> symbols = new ArrayList<>();
+    /** The indices into {@link #symbols} of the symbols with each length */
+    private final int[][] symbolsByLength;
+    /** The symbols one transformer needs, the class may be changed if any of them is complete */
+    private final List<int[]> alternatives = new ArrayList<>();
+
+    public ConstantPoolFilter(Map<MethodData, List<IBytekinMethodTransformer>> methodTransformers) {
+        this(methodTransformers, Collections.emptyList());
+    }
+
+    public ConstantPoolFilter(Map<MethodData, List<IBytekinMethodTransformer>> methodTransformers, Collection<FieldConstantModification> fieldConstants) {
+        Map<String, Integer> indices = new HashMap<>();
+        int maxLength = 0;
+
+        for (Map.Entry<MethodData, List<IBytekinMethodTransformer>> entry : methodTransformers.entrySet()) {
+            for (IBytekinMethodTransformer transformer : entry.getValue()) {
+                List<String> required = new ArrayList<>();
+                required.add(entry.getKey().getName());
+                required.add(entry.getKey().getDescriptor());
+                required.addAll(transformer.getRequiredSymbols());
+                addAlternative(indices, required);
+            }
+        }
+        for (FieldConstantModification fieldConstant : fieldConstants) {
+            addAlternative(indices, Arrays.asList(fieldConstant.getFieldName(), fieldConstant.getFieldDesc()));
+        }
+
+        for (byte[] symbol : symbols) {
+            maxLength = Math.max(maxLength, symbol.length);
+        }
+        int[] counts = new int[maxLength + 1];
+        for (byte[] symbol : symbols) {
+            counts[symbol.length]++;
+        }
+        this.symbolsByLength = new int[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            this.symbolsByLength[length] = new int[counts[length]];
+        }
+        for (int i = symbols.size() - 1; i >= 0; i--) {
+            int length = symbols.get(i).length;
+            this.symbolsByLength[length][--counts[length]] = i;
+        }
+    }
+
+    private void addAlternative(Map<String, Integer> indices, List<String> required) {
+        int[] alternative = new int[required.size()];
+        for (int i = 0; i < alternative.length; i++) {
+            alternative[i] = indices.computeIfAbsent(required.get(i), symbol -> {
+                symbols.add(encode(symbol));
+                return symbols.size() - 1;
+            });
+        }
+        alternatives.add(alternative);
+    }
+
+    /**
+     * Encodes a string as modified UTF-8, the encoding of CONSTANT_Utf8 entries
+     */
+    private static byte[] encode(String symbol) {
+        byte[] bytes = new byte[symbol.length() * 3];
+        int length = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[length++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                bytes[length++] = (byte) (0xC0 | c >> 6 & 0x1F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                bytes[length++] = (byte) (0xE0 | c >> 12 & 0xF);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static int readUnsignedShort(ByteBuffer bytes, int offset) {
+        return (bytes.get(offset) & 0xFF) << 8 | bytes.get(offset + 1) & 0xFF;
+    }
+
+    private static boolean regionEquals(ByteBuffer bytes, int offset, byte[] symbol) {
+        for (int i = 0; i < symbol.length; i++) {
+            if (bytes.get(offset + i) != symbol[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the constant pool without parsing the rest of the class
+     *
+     * @param bytes the class file
+     * @return false if no transformer can change the class, true if one may or the class file could not be scanned
+     */
+    public boolean mayMatch(byte[] bytes) {
+        return mayMatch(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Scans the constant pool of the class between the position and the limit of the buffer, which may be direct,
+     * without moving the position
+     *
+     * @param buffer the class file
+     * @return false if no transformer can change the class, true if one may or the class file could not be scanned
+     */
+    public boolean mayMatch(ByteBuffer buffer) {
+        if (alternatives.isEmpty()) {
+            return false;
+        }
+
+        ByteBuffer bytes = buffer.slice();
+        if (bytes.limit() < 10 || (readUnsignedShort(bytes, 0) << 16 | readUnsignedShort(bytes, 2)) != MAGIC) {
+            return true;
+        }
+
+        boolean[] found = new boolean[symbols.size()];
+        int count = readUnsignedShort(bytes, 8);
+        int offset = 10;
+        try {
+            for (int i = 1; i < count; i++) {
+                int tag = bytes.get(offset);
+                switch (tag) {
+                    case 1: {
+                        int length = readUnsignedShort(bytes, offset + 1);
+                        if (length < symbolsByLength.length) {
+                            for (int symbol : symbolsByLength[length]) {
+                                if (!found[symbol] && regionEquals(bytes, offset + 3, symbols.get(symbol))) {
+                                    found[symbol] = true;
+                                }
+                            }
+                        }
+                        offset += 3 + length;
+                        break;
+                    }
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        offset += 3;
+                        break;
+                    case 15:
+                        offset += 4;
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        offset += 5;
+                        break;
+                    case 5:
+                    case 6:
+                        // long and double entries take two slots
+                        offset += 9;
+                        i++;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return true;
+        }
+
+        for (int[] alternative : alternatives) {
+            boolean complete = true;
+            for (int symbol : alternative) {
+                if (!found[symbol]) {
+                    complete = false;
+                    break;
+                }
+            }
+            if (complete) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,390 @@
+package io.github.brqnko.bytekin.util;
+
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import lombok.experimental.UtilityClass;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces field constants by patching the constant pool of a class, without decoding its methods.
+ * <p>
+ * A static field with a ConstantValue attribute shares its constant pool entry with every LDC of the value in the
+ * class. By default only the field gets the new value, so its attribute points to a new entry at the end of the pool
+ * and the LDCs keep the old one, as on the ASM path. A modification that replaces the inlined copies, which
+ * {@link io.github.brqnko.bytekin.transformer.method.FieldConstantMethodTransformer} then rewrites, gets the new
+ * value written into the shared entry instead, as long as nothing else refers to it. The attributes are scanned for
+ * other references, and any attribute that is not known to be free of them makes the patch give up.
+ */
+@UtilityClass
+public class ConstantPoolPatcher {
+
+    private final String CONSTANT_VALUE_ATTRIBUTE = "ConstantValue";
+    private final String CODE_ATTRIBUTE = "Code";
+
+    /** Attributes that cannot refer to numeric or string constants */
+    private final Set<String> CONSTANT_FREE_ATTRIBUTES = new HashSet<>(Arrays.asList(
+            "SourceFile", "SourceDebugExtension", "InnerClasses", "EnclosingMethod", "Signature", "Synthetic",
+            "Deprecated", "Exceptions", "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable",
+            "StackMapTable", "MethodParameters", "NestHost", "NestMembers", "PermittedSubclasses",
+            "Module", "ModulePackages", "ModuleMainClass"));
+
+    private final List<String> ANNOTATION_ATTRIBUTES = Arrays.asList("RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations");
+    private final List<String> PARAMETER_ANNOTATION_ATTRIBUTES = Arrays.asList("RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations");
+
+    /**
+     * @param bytes the class file
+     * @param fieldConstants the replaced fields by their name and descriptor, with values converted for the ConstantValue attribute
+     * @return the patched class file, or null if the class has to be transformed with ASM
+     */
+    public byte[] patch(byte[] bytes, Map<String, FieldConstantModification> fieldConstants) {
+        try {
+            return patchConstants(bytes, fieldConstants);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // malformed classes are left to ASM, which reports them
+            return null;
+        }
+    }
+
+    private byte[] patchConstants(byte[] bytes, Map<String, FieldConstantModification> fieldConstants) {
+        ClassReader reader = new ClassReader(bytes);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        int itemCount = reader.getItemCount();
+
+        // a reference to a replaced field means code reads or stores it, such as a static initializer
+        for (int i = 1; i < itemCount; i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || bytes[offset - 1] != 9) {
+                continue;
+            }
+            int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+            if (fieldConstants.containsKey(reader.readUTF8(nameAndType, buffer) + reader.readUTF8(nameAndType + 2, buffer))) {
+                return null;
+            }
+        }
+
+        Map<Integer, Object> replaced = new HashMap<>();
+        Set<Integer> referenced = new HashSet<>();
+        // the new values of the fields whose inlined copies keep the old value, by the offset of their ConstantValue index
+        Map<Integer, Object> repointed = new HashMap<>();
+
+        // access flags, this class, super class, then the interfaces
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+
+        int fieldCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            int access = reader.readUnsignedShort(offset);
+            FieldConstantModification modification = fieldConstants.get(reader.readUTF8(offset + 2, buffer) + reader.readUTF8(offset + 4, buffer));
+            boolean hasConstantValue = false;
+
+            int attributeCount = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = reader.readUTF8(offset, buffer);
+                int length = reader.readInt(offset + 2);
+                if (CONSTANT_VALUE_ATTRIBUTE.equals(attributeName)) {
+                    int index = reader.readUnsignedShort(offset + 6);
+                    if (modification == null) {
+                        referenced.add(index);
+                    } else if (!modification.isReplaceInlined()) {
+                        hasConstantValue = true;
+                        repointed.put(offset + 6, modification.getConstantValue());
+                    } else {
+                        hasConstantValue = true;
+                        Object previous = replaced.put(index, modification.getConstantValue());
+                        if (previous != null && !previous.equals(modification.getConstantValue())) {
+                            return null;
+                        }
+                    }
+                } else if (!scanAttribute(reader, attributeName, offset + 6, referenced, buffer)) {
+                    return null;
+                }
+                offset += 6 + length;
+            }
+
+            // a field computed in the static initializer only gets its ConstantValue on the ASM path
+            if (modification != null && ((access & Opcodes.ACC_STATIC) == 0 || !hasConstantValue)) {
+                return null;
+            }
+        }
+
+        int methodCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < methodCount; i++) {
+            offset = scanAttributes(reader, offset + 6, referenced, buffer);
+            if (offset < 0) {
+                return null;
+            }
+        }
+        if (scanAttributes(reader, offset, referenced, buffer) < 0) {
+            return null;
+        }
+
+        return writePatched(reader, bytes, replaced, referenced, repointed, buffer);
+    }
+
+    private byte[] writePatched(ClassReader reader, byte[] bytes, Map<Integer, Object> replaced, Set<Integer> referenced,
+                                Map<Integer, Object> repointed, char[] buffer) {
+        Map<Object, Integer> oldValues = new HashMap<>();
+        for (Map.Entry<Integer, Object> entry : replaced.entrySet()) {
+            Object oldValue = reader.readConst(entry.getKey(), buffer);
+            if (referenced.contains(entry.getKey()) || oldValue.getClass() != entry.getValue().getClass()) {
+                return null;
+            }
+            if (oldValues.put(oldValue, entry.getKey()) != null) {
+                return null;
+            }
+        }
+
+        // the ASM path replaces every LDC of the old value, so a second entry with the same value has to be absent
+        int itemCount = reader.getItemCount();
+        for (int i = 1; i < itemCount; i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || replaced.containsKey(i)) {
+                continue;
+            }
+            int tag = bytes[offset - 1];
+            if (tag >= 3 && tag <= 6 || tag == 8) {
+                if (oldValues.containsKey(reader.readConst(i, buffer))) {
+                    return null;
+                }
+            }
+        }
+
+        byte[] patched = Arrays.copyOf(bytes, bytes.length);
+        ByteArrayOutputStream addedEntries = new ByteArrayOutputStream();
+        int addedCount = 0;
+        try {
+            DataOutputStream out = new DataOutputStream(addedEntries);
+            for (Map.Entry<Integer, Object> entry : replaced.entrySet()) {
+                int offset = reader.getItem(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Integer) {
+                    writeInt(patched, offset, (Integer) value);
+                } else if (value instanceof Float) {
+                    writeInt(patched, offset, Float.floatToRawIntBits((Float) value));
+                } else if (value instanceof Long) {
+                    writeLong(patched, offset, (Long) value);
+                } else if (value instanceof Double) {
+                    writeLong(patched, offset, Double.doubleToRawLongBits((Double) value));
+                } else {
+                    // the old text may be shared with names and descriptors, so the string points to a new entry at the end of the pool
+                    out.writeByte(1);
+                    out.writeUTF((String) value);
+                    int index = itemCount + addedCount++;
+                    patched[offset] = (byte) (index >>> 8);
+                    patched[offset + 1] = (byte) index;
+                }
+            }
+
+            for (Map.Entry<Integer, Object> entry : repointed.entrySet()) {
+                int index = itemCount + addedCount;
+                addedCount += writeEntry(out, entry.getValue(), index);
+                if (entry.getValue() instanceof String) {
+                    // the string entry follows the text it points to
+                    index++;
+                }
+                patched[entry.getKey()] = (byte) (index >>> 8);
+                patched[entry.getKey() + 1] = (byte) index;
+            }
+        } catch (IOException e) {
+            // too long for a constant, which the ASM path rejects as well
+            return null;
+        }
+
+        if (addedCount == 0) {
+            return patched;
+        }
+        int count = itemCount + addedCount;
+        if (count > 0xFFFF) {
+            return null;
+        }
+        patched[8] = (byte) (count >>> 8);
+        patched[9] = (byte) count;
+
+        byte[] added = addedEntries.toByteArray();
+        byte[] result = new byte[patched.length + added.length];
+        System.arraycopy(patched, 0, result, 0, reader.header);
+        System.arraycopy(added, 0, result, reader.header, added.length);
+        System.arraycopy(patched, reader.header, result, reader.header + added.length, patched.length - reader.header);
+        return result;
+    }
+
+    /**
+     * Appends a constant for a ConstantValue attribute to the pool
+     *
+     * @param index the index of the first appended entry
+     * @return the number of pool indices the appended entries take
+     */
+    private int writeEntry(DataOutputStream out, Object value, int index) throws IOException {
+        if (value instanceof Integer) {
+            out.writeByte(3);
+            out.writeInt((Integer) value);
+            return 1;
+        } else if (value instanceof Float) {
+            out.writeByte(4);
+            out.writeInt(Float.floatToRawIntBits((Float) value));
+            return 1;
+        } else if (value instanceof Long) {
+            out.writeByte(5);
+            out.writeLong((Long) value);
+            return 2;
+        } else if (value instanceof Double) {
+            out.writeByte(6);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+            return 2;
+        }
+
+        out.writeByte(1);
+        out.writeUTF((String) value);
+        out.writeByte(8);
+        out.writeShort(index);
+        return 2;
+    }
+
+    private void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private void writeLong(byte[] bytes, int offset, long value) {
+        writeInt(bytes, offset, (int) (value >>> 32));
+        writeInt(bytes, offset + 4, (int) value);
+    }
+
+    /**
+     * @param offset the offset of the attribute count
+     * @return the offset after the attributes, or -1 if one of them may refer to constants in a way that is not scanned
+     */
+    private int scanAttributes(ClassReader reader, int offset, Set<Integer> referenced, char[] buffer) {
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            if (!scanAttribute(reader, reader.readUTF8(offset, buffer), offset + 6, referenced, buffer)) {
+                return -1;
+            }
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * Collects the constants an attribute refers to
+     *
+     * @param offset the start of the attribute's contents
+     * @return false if the attribute may refer to constants in a way that is not scanned
+     */
+    private boolean scanAttribute(ClassReader reader, String name, int offset, Set<Integer> referenced, char[] buffer) {
+        if (CONSTANT_FREE_ATTRIBUTES.contains(name)) {
+            return true;
+        }
+        if (CONSTANT_VALUE_ATTRIBUTE.equals(name)) {
+            referenced.add(reader.readUnsignedShort(offset));
+            return true;
+        }
+        if (ANNOTATION_ATTRIBUTES.contains(name)) {
+            scanAnnotations(reader, offset, referenced);
+            return true;
+        }
+        if (PARAMETER_ANNOTATION_ATTRIBUTES.contains(name)) {
+            int parameters = reader.readByte(offset);
+            offset++;
+            for (int i = 0; i < parameters; i++) {
+                offset = scanAnnotations(reader, offset, referenced);
+            }
+            return true;
+        }
+
+        switch (name) {
+            case "AnnotationDefault":
+                scanElementValue(reader, offset, referenced);
+                return true;
+            case "BootstrapMethods": {
+                int methods = reader.readUnsignedShort(offset);
+                offset += 2;
+                for (int i = 0; i < methods; i++) {
+                    int arguments = reader.readUnsignedShort(offset + 2);
+                    offset += 4;
+                    for (int j = 0; j < arguments; j++) {
+                        referenced.add(reader.readUnsignedShort(offset));
+                        offset += 2;
+                    }
+                }
+                return true;
+            }
+            case CODE_ATTRIBUTE: {
+                // the instructions may only load the constants, which is what the patch replaces
+                offset += 8 + reader.readInt(offset + 4);
+                offset += 2 + reader.readUnsignedShort(offset) * 8;
+                return scanAttributes(reader, offset, referenced, buffer) >= 0;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private int scanAnnotations(ClassReader reader, int offset, Set<Integer> referenced) {
+        int annotations = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < annotations; i++) {
+            offset = scanAnnotation(reader, offset, referenced);
+        }
+        return offset;
+    }
+
+    private int scanAnnotation(ClassReader reader, int offset, Set<Integer> referenced) {
+        int pairs = reader.readUnsignedShort(offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairs; i++) {
+            offset = scanElementValue(reader, offset + 2, referenced);
+        }
+        return offset;
+    }
+
+    private int scanElementValue(ClassReader reader, int offset, Set<Integer> referenced) {
+        char tag = (char) reader.readByte(offset);
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+                referenced.add(reader.readUnsignedShort(offset + 1));
+                return offset + 3;
+            case 's':
+            case 'c':
+                // strings of annotations refer to the text itself, which the patch leaves in place
+                return offset + 3;
+            case 'e':
+                return offset + 5;
+            case '@':
+                return scanAnnotation(reader, offset + 1, referenced);
+            case '[': {
+                int values = reader.readUnsignedShort(offset + 1);
+                offset += 3;
+                for (int i = 0; i < values; i++) {
+                    offset = scanElementValue(reader, offset, referenced);
+                }
+                return offset;
+            }
+            default:
+                throw new IllegalArgumentException("Invalid element value tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.brqnko.bytekin.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map with open addressing, for registries that are complete once they are built.
+ * <p>
+ * Keys and values are kept next to each other in one array that is at most half full, so an entry costs two
+ * references instead of a node of a {@link java.util.HashMap}. Lookups probe linearly from the spread hash of the key.
+ * Null keys and values are not allowed.
+ */
+public final class FrozenMap<K, V> extends AbstractMap<K, V> {
+
+    private static final FrozenMap<?, ?> EMPTY = new FrozenMap<>(new Object[2], 0);
+
+    /** The key of slot i at 2 * i, its value at 2 * i + 1 */
+    private final Object[] table;
+    private final int size;
+
+    private FrozenMap(Object[] table, int size) {
+        this.table = table;
+        this.size = size;
+    }
+
+    /**
+     * @return the map itself if it is already frozen, otherwise a frozen copy of it
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> copyOf(Map<K, V> map) {
+        if (map instanceof FrozenMap) {
+            return map;
+        }
+        if (map.isEmpty()) {
+            return (Map<K, V>) EMPTY;
+        }
+
+        int slots = Integer.highestOneBit(map.size()) << 2;
+        Object[] table = new Object[slots * 2];
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new IllegalArgumentException("Frozen maps cannot hold null: " + entry);
+            }
+
+            int slot = slot(entry.getKey(), slots - 1);
+            while (table[slot * 2] != null) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot * 2] = entry.getKey();
+            table[slot * 2 + 1] = entry.getValue();
+        }
+        return new FrozenMap<>(table, map.size());
+    }
+
+    private static int slot(Object key, int mask) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        int mask = (table.length >> 1) - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            Object candidate = table[slot * 2];
+            if (candidate == null) {
+                return null;
+            }
+            if (candidate.equals(key)) {
+                return (V) table[slot * 2 + 1];
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<Map.Entry<K, V>>() {
+                    private int slot = advance(0);
+
+                    private int advance(int from) {
+                        while (from < table.length >> 1 && table[from * 2] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < table.length >> 1;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<K, V> entry = new SimpleImmutableEntry<>((K) table[slot * 2], (V) table[slot * 2 + 1]);
+                        slot = advance(slot + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.brqnko.bytekin.util;
+
+import io.github.brqnko.bytekin.data.MethodData;
+import lombok.experimental.UtilityClass;
+import org.objectweb.asm.ClassReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@UtilityClass
+public class MethodSizeReader {
+
+    private final String CODE_ATTRIBUTE = "Code";
+
+    /**
+     * Reads the length of the bytecode of every method with a body straight from the class file, without visiting the code
+     *
+     * @param bytes the class file
+     * @return the code length of each method, abstract and native methods are left out
+     */
+    public Map<MethodData, Integer> readCodeSizes(byte[] bytes) {
+        return readCodeSizes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param offset the start of the class file in the array
+     * @param length the length of the class file
+     */
+    public Map<MethodData, Integer> readCodeSizes(byte[] bytes, int offset, int length) {
+        return readCodeAttributes(new ClassReader(bytes, offset, length), false);
+    }
+
+    /**
+     * Reads the number of locals of every method with a body, the first index a transformer can add a local at
+     *
+     * @return the max locals of each method, abstract and native methods are left out
+     */
+    public Map<MethodData, Integer> readMaxLocals(ClassReader reader) {
+        return readCodeAttributes(reader, true);
+    }
+
+    private Map<MethodData, Integer> readCodeAttributes(ClassReader reader, boolean maxLocals) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Map<MethodData, Integer> values = new HashMap<>();
+
+        // access flags, this class, super class, then the interfaces
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+
+        int fieldCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            offset = skipAttributes(reader, offset + 6);
+        }
+
+        int methodCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < methodCount; i++) {
+            String name = reader.readUTF8(offset + 2, buffer);
+            String descriptor = reader.readUTF8(offset + 4, buffer);
+
+            int attributeCount = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                if (CODE_ATTRIBUTE.equals(reader.readUTF8(offset, buffer))) {
+                    // max stack and max locals come before the code length
+                    int value = maxLocals ? reader.readUnsignedShort(offset + 8) : reader.readInt(offset + 10);
+                    values.put(new MethodData(name, descriptor), value);
+                }
+                offset += 6 + reader.readInt(offset + 2);
+            }
+        }
+
+        return values;
+    }
+
+    private int skipAttributes(ClassReader reader, int offset) {
+        int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+}
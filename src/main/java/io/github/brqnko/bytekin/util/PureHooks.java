@@ -0,0 +1,64 @@
+package io.github.brqnko.bytekin.util;
+
+import io.github.brqnko.bytekin.injection.Pure;
+import lombok.experimental.UtilityClass;
+import org.objectweb.asm.Type;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+@UtilityClass
+public class PureHooks {
+
+    /**
+     * Finds the hook without initializing its class, so hooks that are not {@link Pure} are not touched before they run
+     *
+     * @return the static hook if it is annotated with {@link Pure}, otherwise null
+     */
+    public Method findPureHook(String owner, String name, String desc) {
+        return findHook(owner, name, desc, Pure.class);
+    }
+
+    /**
+     * Finds the hook without initializing its class
+     *
+     * @return the static hook if it is annotated with the annotation, otherwise null
+     */
+    public Method findHook(String owner, String name, String desc, Class<? extends Annotation> annotation) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = PureHooks.class.getClassLoader();
+        }
+
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(owner.replace('/', '.'), false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals(name) && Type.getMethodDescriptor(method).equals(desc)
+                    && Modifier.isStatic(method.getModifiers()) && method.isAnnotationPresent(annotation)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calls a pure hook while the target is transformed
+     */
+    public Object evaluate(Method hook, Object... args) {
+        try {
+            hook.setAccessible(true);
+            return hook.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Pure hook " + hook + " threw while it was evaluated", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not evaluate pure hook " + hook, e);
+        }
+    }
+}
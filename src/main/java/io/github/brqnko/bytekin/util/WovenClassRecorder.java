@@ -0,0 +1,57 @@
+package io.github.brqnko.bytekin.util;
+
+import io.github.brqnko.bytekin.transformer.api.IClassTransformListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Records the classes a training run transformed, so they can be written to a jar and served from a CDS archive.
+ * <p>
+ * Classes changed by a ClassFileTransformer are not taken from a CDS archive, the woven layer moves the
+ * transformation out of the process:
+ * <ol>
+ *     <li>run the application with the transformer and this recorder, then {@link #writeLayer} at the end</li>
+ *     <li>run it without the transformer, the layer ahead of the classpath, and {@code -XX:ArchiveClassesAtExit=app.jsa}</li>
+ *     <li>start it the same way with {@code -XX:SharedArchiveFile=app.jsa}, the woven classes come from the archive</li>
+ * </ol>
+ * CDS checks the size and time of every classpath jar, the layer must not be written again between the last two steps.
+ */
+public class WovenClassRecorder implements IClassTransformListener {
+
+    private static final long ENTRY_TIME = 0L;
+
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    @Override
+    public void onClassTransformed(String className, byte[] transformed) {
+        classes.put(className, transformed);
+    }
+
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Writes the recorded classes to a jar, in name order and with fixed times so the same classes give the same jar
+     */
+    public void writeLayer(Path jar) throws IOException {
+        Map<String, byte[]> sorted = new TreeMap<>(classes);
+        try (OutputStream file = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(file)) {
+            for (Map.Entry<String, byte[]> entry : sorted.entrySet()) {
+                JarEntry jarEntry = new JarEntry(entry.getKey().replace('.', '/') + ".class");
+                jarEntry.setTime(ENTRY_TIME);
+                out.putNextEntry(jarEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.brqnko.bytekin.test.batch;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TransformAllTest {
+
+    private static final String PACKAGE = "io.github.brqnko.bytekin.test.batch.target.";
+    private static final String BASE = PACKAGE + "Base";
+    private static final String FIRST = PACKAGE + "First";
+    private static final String SECOND = PACKAGE + "Second";
+    private static final String PICKER = PACKAGE + "Picker";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.batch.TransformAllTest";
+
+    private static String internal(String className) {
+        return className.replace('.', '/');
+    }
+
+    private static byte[] generateClass(String className, String superName) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, internal(className), null, superName, null);
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void newInstance(MethodVisitor mv, String className) {
+        mv.visitTypeInsn(Opcodes.NEW, internal(className));
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, internal(className), "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+    }
+
+    /**
+     * Both branches store a different subclass into the same local, so the frame after them needs their common
+     * superclass, which no class loader can find because the classes only exist in the batch. Java 8 class files
+     * are not verified again without frames when they fail.
+     */
+    private static byte[] generatePicker() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return internal(BASE);
+            }
+        };
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, internal(PICKER), null, "java/lang/Object", null);
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(I)L" + internal(BASE) + ";", null, null);
+        mv.visitCode();
+        Label second = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitLdcInsn(100000);
+        mv.visitJumpInsn(Opcodes.IF_ICMPLE, second);
+        newInstance(mv, FIRST);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(second);
+        newInstance(mv, SECOND);
+        mv.visitLabel(end);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(3, 2);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        GeneratedClassLoader(Map<String, byte[]> classes) {
+            super(TransformAllTest.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Test
+    void transformAllTest() throws Exception {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        classes.put(BASE, generateClass(BASE, "java/lang/Object"));
+        classes.put(FIRST, generateClass(FIRST, internal(BASE)));
+        classes.put(SECOND, generateClass(SECOND, internal(BASE)));
+        classes.put(PICKER, generatePicker());
+
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .modifyConstant(PICKER, new ConstantModification("pick", "(I)L" + internal(BASE) + ";", 100000, -1, HOOKS, "threshold"))
+                .build();
+
+        Map<String, byte[]> results = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            transformer.transformAll(classes, Opcodes.ASM9, executor, results::put).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        // every class is passed on, the ones without a transformer unchanged
+        Assertions.assertEquals(classes.keySet(), results.keySet());
+        Assertions.assertSame(classes.get(BASE), results.get(BASE));
+        Assertions.assertNotSame(classes.get(PICKER), results.get(PICKER));
+
+        // the verifier only accepts the frame if it was computed from the batch
+        Class<?> picker = new GeneratedClassLoader(results).loadClass(PICKER);
+        Assertions.assertEquals(SECOND, picker.getMethod("pick", int.class).invoke(null, 150000).getClass().getName());
+        Assertions.assertEquals(FIRST, picker.getMethod("pick", int.class).invoke(null, 250000).getClass().getName());
+    }
+
+    @SuppressWarnings("unused")
+    public static int threshold(int value) {
+        return value * 2;
+    }
+}
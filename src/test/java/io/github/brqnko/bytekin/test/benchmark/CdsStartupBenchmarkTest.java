@@ -0,0 +1,184 @@
+package io.github.brqnko.bytekin.test.benchmark;
+
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Compares the startup of an application woven by an agent at load time with the same application started from a
+ * dynamic CDS archive of its woven layer, see {@link io.github.brqnko.bytekin.util.WovenClassRecorder}.
+ * Run with {@code gradlew benchmark}, the normal test task leaves it out.
+ */
+@Tag("benchmark")
+public class CdsStartupBenchmarkTest {
+
+    static final String APP_CLASS_PREFIX = "bench.app.C";
+    static final String HOOKS_CLASS = "bench.app.Hooks";
+    static final String MAIN_CLASS = "bench.app.Main";
+    static final int CONSTANT = 100000;
+
+    private static final int CLASSES = 400;
+    private static final int RUNS = 5;
+
+    private static void writeClass(JarOutputStream out, String className, ClassWriter writer) throws IOException {
+        out.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+        out.write(writer.toByteArray());
+        out.closeEntry();
+    }
+
+    private static ClassWriter startClass(String className) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className.replace('.', '/'), null, "java/lang/Object", null);
+        return writer;
+    }
+
+    /**
+     * Classes that each return the constant plus their index, a hook doubles the constant, and a main class that
+     * prints the sum of all of them
+     */
+    private static void writeApplication(Path jar) throws IOException {
+        try (OutputStream file = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(file)) {
+            for (int i = 0; i < CLASSES; i++) {
+                ClassWriter writer = startClass(APP_CLASS_PREFIX + i);
+                MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "value", "()I", null, null);
+                mv.visitCode();
+                mv.visitLdcInsn(CONSTANT);
+                mv.visitIntInsn(Opcodes.SIPUSH, i);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitInsn(Opcodes.IRETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+                writeClass(out, APP_CLASS_PREFIX + i, writer);
+            }
+
+            ClassWriter hooks = startClass(HOOKS_CLASS);
+            MethodVisitor mv = hooks.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "value", "(I)I", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ILOAD, 0);
+            mv.visitInsn(Opcodes.ICONST_2);
+            mv.visitInsn(Opcodes.IMUL);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            writeClass(out, HOOKS_CLASS, hooks);
+
+            ClassWriter main = startClass(MAIN_CLASS);
+            mv = main.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+            mv.visitCode();
+            mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            mv.visitInsn(Opcodes.ICONST_0);
+            for (int i = 0; i < CLASSES; i++) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, (APP_CLASS_PREFIX + i).replace('.', '/'), "value", "()I", false);
+                mv.visitInsn(Opcodes.IADD);
+            }
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            writeClass(out, MAIN_CLASS, main);
+        }
+    }
+
+    private static void writeAgent(Path jar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Premain-Class", CdsWeavingAgent.class.getName());
+        try (OutputStream file = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(file, manifest)) {
+            out.flush();
+        }
+    }
+
+    private static String locationOf(Class<?> clazz) throws URISyntaxException {
+        return Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private static String run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        String text = new String(output.toByteArray(), StandardCharsets.UTF_8).trim();
+        Assertions.assertEquals(0, process.waitFor(), text);
+        return text;
+    }
+
+    private static long median(List<String> command, String expected) throws IOException, InterruptedException {
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            Assertions.assertEquals(expected, run(command));
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static List<String> command(String... arguments) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(arguments));
+        command.add(MAIN_CLASS);
+        return command;
+    }
+
+    @Test
+    void cdsStartupBenchmark() throws Exception {
+        String specification = System.getProperty("java.specification.version");
+        if (specification.startsWith("1.") || Integer.parseInt(specification) < 13) {
+            System.out.println("Dynamic CDS archives need Java 13, skipped on " + specification);
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("bytekin-cds");
+        Path application = directory.resolve("app.jar");
+        Path agent = directory.resolve("agent.jar");
+        Path layer = directory.resolve("woven.jar");
+        Path archive = directory.resolve("app.jsa");
+        writeApplication(application);
+        writeAgent(agent);
+
+        String agentClasspath = String.join(File.pathSeparator, application.toString(),
+                locationOf(CdsWeavingAgent.class), locationOf(BytekinTransformer.class), locationOf(ClassReader.class));
+        String archivedClasspath = layer + File.pathSeparator + application;
+        String expected = String.valueOf(CLASSES * CONSTANT * 2 + CLASSES * (CLASSES - 1) / 2);
+
+        // the training run records the woven layer, which the next run archives without the agent
+        Assertions.assertEquals(expected, run(command("-javaagent:" + agent + "=" + CLASSES + "," + layer, "-cp", agentClasspath)));
+        Assertions.assertEquals(expected, run(command("-XX:ArchiveClassesAtExit=" + archive, "-cp", archivedClasspath)));
+
+        long agentOnly = median(command("-javaagent:" + agent + "=" + CLASSES, "-cp", agentClasspath), expected);
+        long archived = median(command("-XX:SharedArchiveFile=" + archive, "-cp", archivedClasspath), expected);
+
+        System.out.printf("%d woven classes, agent only: %.1f ms, archived layer: %.1f ms%n",
+                CLASSES, agentOnly / 1e6, archived / 1e6);
+        Assertions.assertTrue(archived < agentOnly, "starting from the archived layer should be faster than weaving at load time");
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.brqnko.bytekin.test.benchmark;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import io.github.brqnko.bytekin.util.WovenClassRecorder;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+
+/**
+ * Weaves the application of {@link CdsStartupBenchmarkTest} at load time. The arguments are the number of classes,
+ * followed by the path of the woven layer for a training run.
+ */
+public class CdsWeavingAgent {
+
+    public static void premain(String arguments, Instrumentation instrumentation) {
+        String[] parts = arguments.split(",");
+        int classes = Integer.parseInt(parts[0]);
+
+        WovenClassRecorder recorder = new WovenClassRecorder();
+        BytekinTransformer.Builder builder = new BytekinTransformer.Builder().transformListener(recorder);
+        for (int i = 0; i < classes; i++) {
+            builder.modifyConstant(CdsStartupBenchmarkTest.APP_CLASS_PREFIX + i, new ConstantModification(
+                    "value", "()I", CdsStartupBenchmarkTest.CONSTANT, -1, CdsStartupBenchmarkTest.HOOKS_CLASS, "value"));
+        }
+        BytekinTransformer transformer = builder.build();
+
+        instrumentation.addTransformer(new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] bytes) {
+                if (className == null) {
+                    return null;
+                }
+                byte[] transformed = transformer.transform(className.replace('/', '.'), bytes, Opcodes.ASM9);
+                return transformed == bytes ? null : transformed;
+            }
+        });
+
+        if (parts.length > 1) {
+            Path layer = Paths.get(parts[1]);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.writeLayer(layer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.brqnko.bytekin.test.benchmark;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.mapping.IMappingProvider;
+import io.github.brqnko.bytekin.transformer.BytekinClassTransformer;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap the built registry keeps for many hook targets, against the same registry left in the hash maps
+ * it is collected in. Run with {@code gradlew benchmark}, the normal test task leaves it out.
+ */
+@Tag("benchmark")
+public class RegistryFootprintBenchmarkTest {
+
+    private static final String CLASS_PREFIX = "bench.footprint.Target";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.benchmark.RegistryFootprintBenchmarkTest";
+    private static final int CLASSES = 2000;
+    private static final int METHODS = 10;
+
+    /** Keeps the measured registry reachable while the heap is measured */
+    private static Object retained;
+
+    /**
+     * Returns a fresh copy of every name, as a mapping that looks names up from a parsed file does
+     */
+    private static class FreshMappingProvider implements IMappingProvider {
+
+        @Override
+        public String getClassName(String className) {
+            return new String(className);
+        }
+
+        @Override
+        public String getMethodName(String className, String methodName, String methodDesc) {
+            return new String(methodName);
+        }
+
+        @Override
+        public String getFieldName(String className, String fieldName, String fieldDesc) {
+            return new String(fieldName);
+        }
+
+        @Override
+        public String getDesc(String desc) {
+            return new String(desc);
+        }
+    }
+
+    private static ConstantModification modification(int method) {
+        return new ConstantModification("method" + method, "(Ljava/lang/String;I)I", 100000, -1, HOOKS, "value");
+    }
+
+    private static BytekinTransformer buildFrozen() {
+        BytekinTransformer.Builder builder = new BytekinTransformer.Builder().mapping(new FreshMappingProvider());
+        for (int i = 0; i < CLASSES; i++) {
+            for (int j = 0; j < METHODS; j++) {
+                builder.modifyConstant(CLASS_PREFIX + i, modification(j));
+            }
+        }
+        return builder.build();
+    }
+
+    private static BytekinTransformer buildUnfrozen() {
+        IMappingProvider mapping = new FreshMappingProvider();
+        Map<String, BytekinClassTransformer> transformers = new HashMap<>();
+        for (int i = 0; i < CLASSES; i++) {
+            String className = mapping.getClassName(CLASS_PREFIX + i);
+            BytekinClassTransformer transformer = new BytekinClassTransformer();
+            for (int j = 0; j < METHODS; j++) {
+                transformer.addConstantModification(mapping, modification(j), className);
+            }
+            transformers.put(className, transformer);
+        }
+        return new BytekinTransformer(transformers);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long footprint(Supplier<BytekinTransformer> build) throws InterruptedException {
+        retained = null;
+        long before = usedHeap();
+        retained = build.get();
+        long footprint = usedHeap() - before;
+        retained = null;
+        return footprint;
+    }
+
+    @Test
+    void registryFootprintBenchmark() throws Exception {
+        // once each first, so the classes and interned names are loaded before anything is measured
+        footprint(RegistryFootprintBenchmarkTest::buildFrozen);
+        footprint(RegistryFootprintBenchmarkTest::buildUnfrozen);
+
+        long frozen = footprint(RegistryFootprintBenchmarkTest::buildFrozen);
+        long unfrozen = footprint(RegistryFootprintBenchmarkTest::buildUnfrozen);
+
+        int targets = CLASSES * METHODS;
+        System.out.printf("%d hook targets, frozen: %d bytes per target, hash maps: %d bytes per target%n",
+                targets, frozen / targets, unfrozen / targets);
+        Assertions.assertTrue(frozen < unfrozen, "the frozen registry should be smaller than the hash maps");
+    }
+
+    @SuppressWarnings("unused")
+    public static int value(int value) {
+        return value;
+    }
+}
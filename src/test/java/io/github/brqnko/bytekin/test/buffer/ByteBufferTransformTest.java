@@ -0,0 +1,97 @@
+package io.github.brqnko.bytekin.test.buffer;
+
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.util.ClassFiles;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+public class ByteBufferTransformTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.buffer.target.BufferTestTargetQ";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.buffer.ByteBufferTransformTest";
+
+    // without a mapping, so the names of the JDK stay as they are
+    private static BytekinTransformer redirect(String name, String desc) {
+        return new BytekinTransformer.Builder()
+                .redirect(TARGET, new RedirectData("mixQ", "(J)J", RedirectType.METHOD, "java.lang.Math", name, desc, -1, HOOKS, "abs"))
+                .build();
+    }
+
+    /**
+     * The class sits in the middle of a direct buffer, as an entry of a mapped jar would
+     */
+    private static ByteBuffer directInput(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 16);
+        buffer.position(8);
+        buffer.put(bytes);
+        buffer.position(8).limit(8 + bytes.length);
+        return buffer;
+    }
+
+    private static void assertWritten(byte[] expected, ByteBuffer input, int inputPosition) {
+        ByteBuffer output = ByteBuffer.allocateDirect(expected.length * 2);
+        output.position(4);
+
+        Assertions.assertTrue(redirect("abs", "(J)J").transform(TARGET, input, output, Opcodes.ASM9));
+        Assertions.assertEquals(inputPosition, input.position());
+        Assertions.assertEquals(4 + expected.length, output.position());
+
+        byte[] written = new byte[expected.length];
+        output.position(4);
+        output.get(written);
+        Assertions.assertArrayEquals(expected, written);
+    }
+
+    @Test
+    void directBufferTest() throws Exception {
+        byte[] bytes = ClassFiles.read(TARGET);
+        byte[] expected = redirect("abs", "(J)J").transform(TARGET, bytes, Opcodes.ASM9);
+
+        assertWritten(expected, directInput(bytes), 8);
+    }
+
+    @Test
+    void heapSliceTest() throws Exception {
+        byte[] bytes = ClassFiles.read(TARGET);
+        byte[] expected = redirect("abs", "(J)J").transform(TARGET, bytes, Opcodes.ASM9);
+
+        // the class is read where it is in the array, behind both the array offset of the slice and its position
+        byte[] array = new byte[bytes.length + 32];
+        System.arraycopy(bytes, 0, array, 24, bytes.length);
+        ByteBuffer slice = ByteBuffer.wrap(array, 16, bytes.length + 8).slice();
+        slice.position(8);
+
+        assertWritten(expected, slice, 8);
+    }
+
+    @Test
+    void unchangedTest() throws Exception {
+        ByteBuffer input = directInput(ClassFiles.read(TARGET));
+        ByteBuffer output = ByteBuffer.allocate(16);
+
+        // the class never calls Math.floorMod, so the filter rejects it from the buffer and nothing is written
+        Assertions.assertFalse(redirect("floorMod", "(JJ)J").transform(TARGET, input, output, Opcodes.ASM9));
+        Assertions.assertFalse(redirect("abs", "(J)J").transform("unknown.Target", input, output, Opcodes.ASM9));
+        Assertions.assertEquals(0, output.position());
+    }
+
+    @Test
+    void overflowTest() throws Exception {
+        ByteBuffer input = ByteBuffer.wrap(ClassFiles.read(TARGET));
+        ByteBuffer output = ByteBuffer.allocate(16);
+
+        Assertions.assertThrows(BufferOverflowException.class, () -> redirect("abs", "(J)J").transform(TARGET, input, output, Opcodes.ASM9));
+        Assertions.assertEquals(0, output.position());
+    }
+
+    @SuppressWarnings("unused")
+    public static long abs(long value) {
+        return Math.abs(value);
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.brqnko.bytekin.test.buffer.target;
+
+@SuppressWarnings("unused")
+public class BufferTestTargetQ {
+
+    public static long mixQ(long value) {
+        return Math.abs(value * 31) + 1;
+    }
+}
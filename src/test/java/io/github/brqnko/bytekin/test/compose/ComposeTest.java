@@ -0,0 +1,102 @@
+package io.github.brqnko.bytekin.test.compose;
+
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import io.github.brqnko.bytekin.data.Injection;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.test.compose.target.ComposeTargetQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ComposeTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.compose.target.ComposeTarget";
+    private static final String DESC = "(Ljava/lang/String;)Ljava/lang/String;";
+    private static final String OWNER = "io.github.brqnko.bytekin.test.compose.ComposeTest";
+
+    /**
+     * Each component outlines its hook, so both of them name a dispatcher bytekin$dispatch$0 on their own
+     */
+    private static BytekinTransformer component(String hook) {
+        return new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .outlineInjections()
+                .inject(TARGET, new Injection("greet", DESC, At.HEAD, OWNER, hook))
+                .build();
+    }
+
+    private static Class<?> load(BytekinTransformer transformer) throws Exception {
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+        return loader.loadClass(TARGET + "Q");
+    }
+
+    private static String greet(Class<?> clazz) {
+        return PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals("bytekin", clazz.getMethod("greetQ", String.class).invoke(clazz.getConstructor().newInstance(), "bytekin"));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+    }
+
+    @Test
+    void composeTest() throws Exception {
+        AtomicInteger passes = new AtomicInteger();
+        BytekinTransformer composite = BytekinTransformer.compose(
+                Arrays.asList(component("first"), component("second")),
+                null,
+                (className, transformed) -> passes.incrementAndGet());
+
+        Class<?> clazz = load(composite);
+
+        // one pass with both dispatchers, named apart
+        Assertions.assertEquals(1, passes.get());
+        Assertions.assertEquals(2, Arrays.stream(clazz.getDeclaredMethods()).filter(Method::isSynthetic).map(Method::getName).distinct().count());
+        Assertions.assertEquals("first\nsecond\nhello bytekin\n", greet(clazz));
+    }
+
+    @Test
+    void orderTest() throws Exception {
+        Class<?> clazz = load(BytekinTransformer.compose(component("second"), component("first")));
+
+        Assertions.assertEquals("second\nfirst\nhello bytekin\n", greet(clazz));
+    }
+
+    @Test
+    void conflictTest() {
+        BytekinTransformer first = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .modifyFieldConstant(TARGET, new FieldConstantModification("LIMIT", "I", 20))
+                .build();
+        BytekinTransformer second = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .modifyFieldConstant(TARGET, new FieldConstantModification("LIMIT", "I", 30))
+                .build();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> BytekinTransformer.compose(first, second));
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo first(ComposeTargetQ self, String name) {
+        System.out.println("first");
+        return CallbackInfo.empty();
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo second(ComposeTargetQ self, String name) {
+        System.out.println("second");
+        return CallbackInfo.empty();
+    }
+}
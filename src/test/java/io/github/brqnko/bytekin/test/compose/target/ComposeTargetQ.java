@@ -0,0 +1,12 @@
+package io.github.brqnko.bytekin.test.compose.target;
+
+@SuppressWarnings("unused")
+public class ComposeTargetQ {
+
+    public static final int LIMITQ = 10;
+
+    public String greetQ(String name) {
+        System.out.println("hello " + name);
+        return name;
+    }
+}
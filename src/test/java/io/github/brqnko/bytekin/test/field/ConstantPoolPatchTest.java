@@ -0,0 +1,201 @@
+package io.github.brqnko.bytekin.test.field;
+
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import io.github.brqnko.bytekin.mapping.IMappingProvider;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinClassTransformer;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinClassVisitor;
+import io.github.brqnko.bytekin.util.ConstantPoolPatcher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConstantPoolPatchTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.field.target.PatchTarget";
+    private static final String FALLBACK_TARGET = "io.github.brqnko.bytekin.test.field.target.FieldConstantTarget";
+
+    private static byte[] readClass(String name) throws IOException {
+        try (InputStream stream = ConstantPoolPatchTest.class.getClassLoader().getResourceAsStream(name.replace('.', '/') + ".class")) {
+            Assertions.assertNotNull(stream);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static BytekinClassTransformer createTransformer(String className, boolean replaceInlined) {
+        IMappingProvider mapping = new QMappingProvider();
+        BytekinClassTransformer transformer = new BytekinClassTransformer();
+        transformer.addFieldConstantModification(mapping, new FieldConstantModification("NAME", "Ljava/lang/String;", "tuned-name", replaceInlined), className);
+        transformer.addFieldConstantModification(mapping, new FieldConstantModification("SIZE", "I", 250000, replaceInlined), className);
+        transformer.addFieldConstantModification(mapping, new FieldConstantModification("TIMEOUT", "J", 5000L, replaceInlined), className);
+        transformer.addFieldConstantModification(mapping, new FieldConstantModification("RATIO", "D", 0.5, replaceInlined), className);
+        return transformer;
+    }
+
+    private static List<String> instructions(List<String> description) {
+        List<String> instructions = new ArrayList<>();
+        for (String line : description) {
+            if (line.startsWith("  ")) {
+                instructions.add(line);
+            }
+        }
+        return instructions;
+    }
+
+    /**
+     * The output of the ASM path, which the patch has to be equivalent to
+     */
+    private static byte[] transformWithAsm(BytekinClassTransformer transformer, byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        reader.accept(new BytekinClassVisitor(Opcodes.ASM9, writer, transformer, reader), 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Lists the members and instructions of a class, leaving out what the two paths may encode differently
+     */
+    private static List<String> describe(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                lines.add("field " + access + " " + name + descriptor + " = " + value);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                lines.add("method " + access + " " + name + descriptor);
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitInsn(int opcode) {
+                        lines.add("  insn " + opcode);
+                    }
+
+                    @Override
+                    public void visitIntInsn(int opcode, int operand) {
+                        lines.add("  int " + opcode + " " + operand);
+                    }
+
+                    @Override
+                    public void visitVarInsn(int opcode, int varIndex) {
+                        lines.add("  var " + opcode + " " + varIndex);
+                    }
+
+                    @Override
+                    public void visitTypeInsn(int opcode, String type) {
+                        lines.add("  type " + opcode + " " + type);
+                    }
+
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                        lines.add("  field " + opcode + " " + owner + "." + name + descriptor);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        lines.add("  method " + opcode + " " + owner + "." + name + descriptor);
+                    }
+
+                    @Override
+                    public void visitJumpInsn(int opcode, Label label) {
+                        lines.add("  jump " + opcode);
+                    }
+
+                    @Override
+                    public void visitLdcInsn(Object value) {
+                        lines.add("  ldc " + value.getClass().getSimpleName() + " " + value);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        return lines;
+    }
+
+    @Test
+    void patchMatchesAsmTest() throws IOException {
+        byte[] bytes = readClass(TARGET + "Q");
+        BytekinClassTransformer transformer = createTransformer(TARGET + "Q", true);
+
+        byte[] patched = ConstantPoolPatcher.patch(bytes, transformer.getFieldConstants());
+        Assertions.assertNotNull(patched);
+        Assertions.assertEquals(describe(transformWithAsm(transformer, bytes)), describe(patched));
+        Assertions.assertNotEquals(instructions(describe(bytes)), instructions(describe(patched)));
+
+        // the transformer takes the same path
+        Assertions.assertArrayEquals(patched, transformer.transform(bytes, Opcodes.ASM9));
+    }
+
+    @Test
+    void patchKeepsInlinedCopiesTest() throws IOException {
+        byte[] bytes = readClass(TARGET + "Q");
+        BytekinClassTransformer transformer = createTransformer(TARGET + "Q", false);
+
+        byte[] patched = ConstantPoolPatcher.patch(bytes, transformer.getFieldConstants());
+        Assertions.assertNotNull(patched);
+        Assertions.assertEquals(describe(transformWithAsm(transformer, bytes)), describe(patched));
+
+        // only the ConstantValue attributes point to the new values, the instructions still load the old ones
+        Assertions.assertNotEquals(describe(bytes), describe(patched));
+        Assertions.assertEquals(instructions(describe(bytes)), instructions(describe(patched)));
+        Assertions.assertArrayEquals(patched, transformer.transform(bytes, Opcodes.ASM9));
+    }
+
+    @Test
+    void patchedClassTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .modifyFieldConstant(TARGET, new FieldConstantModification("NAME", "Ljava/lang/String;", "tuned-name", true))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("SIZE", "I", 250000, true))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("TIMEOUT", "J", 5000L, true))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("RATIO", "D", 0.5))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Assertions.assertEquals("tuned-name", clazz.getMethod("nameQ").invoke(null));
+        Assertions.assertEquals(250001, clazz.getMethod("sizeQ", int.class).invoke(null, 1));
+        Assertions.assertEquals(5100L, clazz.getMethod("deadlineQ", long.class).invoke(null, 100L));
+        Assertions.assertEquals("tuned-name", clazz.getField("NAMEQ").get(null));
+        Assertions.assertEquals(5000L, clazz.getField("TIMEOUTQ").get(null));
+
+        // the ratio did not opt in, so the inlined copy keeps the old value while the field has the new one
+        Assertions.assertEquals(3.0, clazz.getMethod("scaleQ", double.class).invoke(null, 4.0));
+        Assertions.assertEquals(0.5, clazz.getField("RATIOQ").get(null));
+    }
+
+    @Test
+    void fallbackTest() throws IOException {
+        // COMPUTEDQ is stored by the static initializer, which only the ASM path rewrites
+        byte[] bytes = readClass(FALLBACK_TARGET + "Q");
+        BytekinClassTransformer transformer = new BytekinClassTransformer();
+        transformer.addFieldConstantModification(new QMappingProvider(), new FieldConstantModification("COMPUTED", "I", 42), FALLBACK_TARGET + "Q");
+
+        Assertions.assertNull(ConstantPoolPatcher.patch(bytes, transformer.getFieldConstants()));
+        Assertions.assertEquals(describe(transformWithAsm(transformer, bytes)), describe(transformer.transform(bytes, Opcodes.ASM9)));
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.brqnko.bytekin.test.field;
+
+import io.github.brqnko.bytekin.data.FieldConstantModification;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FieldConstantTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.field.target.FieldConstantTarget";
+
+    @Test
+    void fieldConstantTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .modifyFieldConstant(TARGET, new FieldConstantModification("NAME", "Ljava/lang/String;", "tuned-name", true))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("SIZE", "I", 250000, true))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("COMPUTED", "I", 42))
+                .build();
+
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.equals(TARGET + "Q")) {
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+
+        // the copies javac inlined into the class are replaced as well as the fields
+        Assertions.assertEquals("tuned-name", clazz.getMethod("nameQ").invoke(null));
+        Assertions.assertEquals(250000, clazz.getMethod("sizeQ").invoke(null));
+        Assertions.assertEquals(42, clazz.getMethod("computedQ").invoke(null));
+        Assertions.assertEquals("tuned-name", clazz.getField("NAMEQ").get(null));
+        Assertions.assertEquals(250000, clazz.getField("SIZEQ").get(null));
+        Assertions.assertEquals(42, clazz.getField("COMPUTEDQ").get(null));
+
+        Map<String, Object> constantValues = new HashMap<>();
+        new ClassReader(transformed.get()).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                constantValues.put(name, value);
+                return null;
+            }
+        }, 0);
+
+        // every field keeps a ConstantValue attribute, even the one that was computed in the static initializer
+        Assertions.assertEquals("tuned-name", constantValues.get("NAMEQ"));
+        Assertions.assertEquals(250000, constantValues.get("SIZEQ"));
+        Assertions.assertEquals(42, constantValues.get("COMPUTEDQ"));
+    }
+
+    @Test
+    void inlinedCopiesKeptTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .modifyFieldConstant(TARGET, new FieldConstantModification("NAME", "Ljava/lang/String;", "tuned-name"))
+                .modifyFieldConstant(TARGET, new FieldConstantModification("SIZE", "I", 250000))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+
+        // without opting in, only the fields change and the copies javac inlined keep the old value
+        Assertions.assertEquals("tuned-name", clazz.getField("NAMEQ").get(null));
+        Assertions.assertEquals(250000, clazz.getField("SIZEQ").get(null));
+        Assertions.assertEquals("bytekin-default-name", clazz.getMethod("nameQ").invoke(null));
+        Assertions.assertEquals(100000, clazz.getMethod("sizeQ").invoke(null));
+    }
+
+    @Test
+    void invalidConstantTest() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BytekinTransformer.Builder()
+                .modifyFieldConstant(TARGET, new FieldConstantModification("SIZE", "I", "not a number"))
+                .build());
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.brqnko.bytekin.test.field.target;
+
+@SuppressWarnings("unused")
+public class FieldConstantTargetQ {
+
+    public static final String NAMEQ = "bytekin-default-name";
+    public static final int SIZEQ = 100000;
+    public static final int COMPUTEDQ = Integer.parseInt("7");
+
+    public static String nameQ() {
+        return NAMEQ;
+    }
+
+    public static int sizeQ() {
+        return SIZEQ;
+    }
+
+    public static int computedQ() {
+        return COMPUTEDQ;
+    }
+}
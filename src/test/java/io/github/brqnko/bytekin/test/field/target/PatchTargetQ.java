@@ -0,0 +1,26 @@
+package io.github.brqnko.bytekin.test.field.target;
+
+@SuppressWarnings("unused")
+public class PatchTargetQ {
+
+    public static final String NAMEQ = "bytekin-default-name";
+    public static final int SIZEQ = 100000;
+    public static final long TIMEOUTQ = 30000L;
+    public static final double RATIOQ = 0.75;
+
+    public static String nameQ() {
+        return NAMEQ;
+    }
+
+    public static int sizeQ(int extra) {
+        return SIZEQ + extra;
+    }
+
+    public static long deadlineQ(long now) {
+        return now + TIMEOUTQ;
+    }
+
+    public static double scaleQ(double value) {
+        return value * RATIOQ;
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.brqnko.bytekin.test.frames;
+
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.injection.Redirect;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.frames.target.FramesTestTarget")
+public class IncrementalFramesTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.frames.target.FramesTestTargetQ";
+
+    private static List<String> methodNames(byte[] bytes) {
+        List<String> names = new ArrayList<>();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                names.add(name);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE);
+        return names;
+    }
+
+    /**
+     * @return the frames of the method, expanded so compressed and full frames compare equal
+     */
+    private static List<String> frames(byte[] bytes, String method) {
+        List<String> frames = new ArrayList<>();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!name.equals(method)) {
+                    return null;
+                }
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+                        frames.add(Arrays.toString(Arrays.copyOf(local, numLocal)) + Arrays.toString(Arrays.copyOf(stack, numStack)));
+                    }
+                };
+            }
+        }, ClassReader.EXPAND_FRAMES);
+        return frames;
+    }
+
+    @Test
+    void keptFramesTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect("io.github.brqnko.bytekin.test.frames.target.FramesTestTarget", new RedirectData(
+                        "sum", "([I)I",
+                        RedirectType.METHOD, "io.github.brqnko.bytekin.test.frames.target.FramesTestTarget", "scale", "(I)I", -1,
+                        IncrementalFramesTest.class.getName(), "scale", Linkage.STATIC))
+                .incrementalFrames()
+                .build();
+
+        AtomicReference<byte[]> original = new AtomicReference<>();
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.equals(TARGET)) {
+                        original.set(bytes);
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Class<?> clazz = loader.loadClass(TARGET);
+        Assertions.assertEquals(6 * (1 + 2 + 3), clazz.getMethod("sumQ", int[].class).invoke(null, (Object) new int[]{1, 2, 3}));
+
+        // the redirect keeps the frames, so the class is written without computing them and javac's frames stay
+        Assertions.assertEquals(frames(original.get(), "sumQ"), frames(transformed.get(), "sumQ"));
+    }
+
+    @Test
+    void incrementalFramesTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(IncrementalFramesTest.class)
+                .mapping(new QMappingProvider())
+                .incrementalFrames()
+                .fuseInjections()
+                .build();
+
+        AtomicReference<byte[]> original = new AtomicReference<>();
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.equals(TARGET)) {
+                        original.set(bytes);
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Class<?> clazz = loader.loadClass(TARGET);
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(6 * (1 + 2 + 3), clazz.getMethod("sumQ", int[].class).invoke(null, (Object) new int[]{1, 2, 3}));
+                Assertions.assertEquals("zero", clazz.getMethod("describeQ", int.class).invoke(null, 0));
+                Assertions.assertEquals("positive", clazz.getMethod("describeQ", int.class).invoke(null, 1));
+                Assertions.assertEquals(4, clazz.getMethod("absQ", int.class).invoke(null, -4));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("first 0\nsecond 0\nfirst 1\nsecond 1\n", capture);
+
+        // the fused hooks do not keep the frames, so the whole class is computed in one pass and the dispatcher is added at the end
+        List<String> names = methodNames(original.get());
+        Assertions.assertEquals(names, methodNames(transformed.get()).subList(0, names.size()));
+        Assertions.assertEquals(1, Arrays.stream(clazz.getDeclaredMethods()).filter(Method::isSynthetic).count());
+    }
+
+    @Redirect(
+            targetMethodName = "sum",
+            targetMethodDesc = "([I)I",
+            owner = "io.github.brqnko.bytekin.test.frames.target.FramesTestTarget",
+            name = "scale",
+            desc = "(I)I"
+    )
+    public static int scale(int value) {
+        return value * 6;
+    }
+
+    @Inject(methodName = "describe", methodDesc = "(I)Ljava/lang/String;", at = At.HEAD)
+    public static CallbackInfo first(int value) {
+        System.out.println("first " + value);
+        return CallbackInfo.empty();
+    }
+
+    @Inject(methodName = "describe", methodDesc = "(I)Ljava/lang/String;", at = At.HEAD)
+    public static CallbackInfo second(int value) {
+        System.out.println("second " + value);
+        return value == 0 ? new CallbackInfo(true, "zero", null) : CallbackInfo.empty();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.brqnko.bytekin.test.frames;
+
+import io.github.brqnko.bytekin.test.util.ClassFiles;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class UntouchedMethodTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.frames.target.FramesTestTargetQ";
+
+    /**
+     * @return the raw method_info structure of every method, by name
+     */
+    private static Map<String, byte[]> readMethods(byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Map<String, byte[]> methods = new HashMap<>();
+
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+        int fieldCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            offset = skipMember(reader, offset);
+        }
+
+        int methodCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < methodCount; i++) {
+            int end = skipMember(reader, offset);
+            methods.put(reader.readUTF8(offset + 2, buffer), Arrays.copyOfRange(bytes, offset, end));
+            offset = end;
+        }
+        return methods;
+    }
+
+    private static int skipMember(ClassReader reader, int offset) {
+        int attributeCount = reader.readUnsignedShort(offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    private static void assertCopied(BytekinTransformer transformer) throws Exception {
+        byte[] original = ClassFiles.read(TARGET);
+        Map<String, byte[]> before = readMethods(original);
+        Map<String, byte[]> after = readMethods(transformer.transform(TARGET, original, Opcodes.ASM9));
+
+        // untouched methods keep their bytes, including the constant pool indices and the frames
+        for (String name : Arrays.asList("<init>", "scaleQ", "absQ")) {
+            Assertions.assertArrayEquals(before.get(name), after.get(name), name);
+        }
+        Assertions.assertFalse(Arrays.equals(before.get("sumQ"), after.get("sumQ")));
+        Assertions.assertFalse(Arrays.equals(before.get("describeQ"), after.get("describeQ")));
+    }
+
+    @Test
+    void untouchedMethodTest() throws Exception {
+        assertCopied(new BytekinTransformer.Builder(IncrementalFramesTest.class)
+                .mapping(new QMappingProvider())
+                .build());
+    }
+
+    @Test
+    void untouchedMethodIncrementalFramesTest() throws Exception {
+        assertCopied(new BytekinTransformer.Builder(IncrementalFramesTest.class)
+                .mapping(new QMappingProvider())
+                .incrementalFrames()
+                .build());
+    }
+}
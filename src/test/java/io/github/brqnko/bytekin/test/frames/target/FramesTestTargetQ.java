@@ -0,0 +1,28 @@
+package io.github.brqnko.bytekin.test.frames.target;
+
+@SuppressWarnings("unused")
+public class FramesTestTargetQ {
+
+    public static int sumQ(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += scaleQ(value);
+        }
+        return total;
+    }
+
+    public static int scaleQ(int value) {
+        return value * 2;
+    }
+
+    public static String describeQ(int value) {
+        return value > 0 ? "positive" : "negative";
+    }
+
+    public static int absQ(int value) {
+        if (value < 0) {
+            return -value;
+        }
+        return value;
+    }
+}
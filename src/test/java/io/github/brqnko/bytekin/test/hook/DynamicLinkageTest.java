@@ -0,0 +1,56 @@
+package io.github.brqnko.bytekin.test.hook;
+
+import io.github.brqnko.bytekin.data.Injection;
+import io.github.brqnko.bytekin.hook.HookRegistry;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+
+public class DynamicLinkageTest {
+
+    private static final String HOOK_OWNER = "io.github.brqnko.bytekin.test.hook.DynamicLinkageTest";
+    private static final String HOOK_NAME = "injectAtHead";
+
+    @Test
+    void dynamicLinkageTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .inject("io.github.brqnko.bytekin.test.inject.target.InjectTestTarget", new Injection("runGameLoop", "([[Ljava/lang/String;I)Ljava/lang/String;", At.HEAD, HOOK_OWNER, HOOK_NAME, Linkage.DYNAMIC))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+        Method method = clazz.getMethod("runGameLoopQ", String[][].class, int.class);
+        Object instance = clazz.getConstructor().newInstance();
+
+        // no hook is registered yet, so the original method keeps running
+        Assertions.assertEquals("runGameLoop", method.invoke(instance, new String[0][0], 0));
+
+        HookRegistry.register(HOOK_OWNER, HOOK_NAME, InjectHook.class, (self, str, i) -> new CallbackInfo(true, "first hook", null));
+        Assertions.assertEquals("first hook", method.invoke(instance, new String[0][0], 0));
+
+        // swapping the hook retargets the site that is already linked
+        HookRegistry.register(HOOK_OWNER, HOOK_NAME, InjectHook.class, (self, str, i) -> new CallbackInfo(true, "second hook " + i, null));
+        Assertions.assertEquals("second hook 3", method.invoke(instance, new String[0][0], 3));
+
+        HookRegistry.unregister(HOOK_OWNER, HOOK_NAME);
+        Assertions.assertEquals("runGameLoop", method.invoke(instance, new String[0][0], 0));
+    }
+
+    @FunctionalInterface
+    public interface InjectHook {
+        CallbackInfo apply(Object self, String[][] str, int i);
+    }
+
+}
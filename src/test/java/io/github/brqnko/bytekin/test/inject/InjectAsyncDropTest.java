@@ -0,0 +1,100 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.hook.AsyncHookChannel;
+import io.github.brqnko.bytekin.injection.Async;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Backpressure;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+public class InjectAsyncDropTest {
+
+    private static final int EVENTS = 32;
+    private static final String KEY = AsyncHookChannel.key(InjectAsyncDropTest.class.getName(), "injectAsyncDrop", "(Ljava/lang/Object;[[Ljava/lang/String;I)V");
+
+    private static final List<Integer> RECEIVED = new CopyOnWriteArrayList<>();
+    private static final CountDownLatch ENTERED = new CountDownLatch(1);
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    @Test
+    void injectAsyncDropTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectAsyncDropTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+        Object instance = clazz.getConstructor().newInstance();
+        Method method = clazz.getMethod("runGameLoopQ", String[][].class, int.class);
+
+        // weaving alone does not start the consumer
+        Assertions.assertFalse(hasConsumerThread());
+
+        // the consumer stays in the hook with the first event until it is released, so the queue fills up
+        method.invoke(instance, new String[0][0], 0);
+        Assertions.assertTrue(ENTERED.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(hasConsumerThread());
+        for (int i = 1; i < EVENTS; i++) {
+            method.invoke(instance, new String[0][0], i);
+        }
+        RELEASE.countDown();
+
+        long dropped = AsyncHookChannel.getDroppedCount(KEY);
+        Assertions.assertTrue(dropped > 0);
+        awaitReceived((int) (EVENTS - dropped));
+
+        // the queue keeps the oldest events and drops the rest
+        for (int i = 0; i < RECEIVED.size(); i++) {
+            Assertions.assertEquals(i, (int) RECEIVED.get(i));
+        }
+    }
+
+    private static boolean hasConsumerThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("bytekin-async-" + KEY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void awaitReceived(List<Integer> received, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(count, received.size());
+    }
+
+    private static void awaitReceived(int count) throws InterruptedException {
+        awaitReceived(RECEIVED, count);
+    }
+
+    @SuppressWarnings("unused")
+    @Async(capacity = 4, backpressure = Backpressure.DROP, virtualThread = false)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+    public static void injectAsyncDrop(Object self, String[][] str, int i) throws InterruptedException {
+        RECEIVED.add(i);
+        if (i == 0) {
+            ENTERED.countDown();
+            RELEASE.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.hook.AsyncHookChannel;
+import io.github.brqnko.bytekin.injection.Async;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Backpressure;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+public class InjectAsyncOverloadTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ";
+    private static final String HEAD_KEY = AsyncHookChannel.key(InjectAsyncOverloadTest.class.getName(), "injectAsyncOverload", "(Ljava/lang/Object;[[Ljava/lang/String;I)V");
+    private static final String RETURN_KEY = AsyncHookChannel.key(InjectAsyncOverloadTest.class.getName(), "injectAsyncOverload", "(Ljava/lang/Object;[Ljava/lang/Object;I)V");
+
+    private static final List<Integer> HEAD_RECEIVED = new CopyOnWriteArrayList<>();
+    private static final List<Integer> RETURN_RECEIVED = new CopyOnWriteArrayList<>();
+
+    @Test
+    void injectAsyncOverloadTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectAsyncOverloadTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET);
+        Object instance = clazz.getConstructor().newInstance();
+        Method method = clazz.getMethod("runGameLoopQ", String[][].class, int.class);
+
+        // each overload has its own channel
+        method.invoke(instance, new String[0][0], 0);
+        InjectAsyncDropTest.awaitReceived(HEAD_RECEIVED, 1);
+        InjectAsyncDropTest.awaitReceived(RETURN_RECEIVED, 1);
+
+        // an unregistered channel drops its events instead of being looked up again
+        AsyncHookChannel.unregister(HEAD_KEY);
+        Assertions.assertNull(AsyncHookChannel.claim(HEAD_KEY));
+        method.invoke(instance, new String[0][0], 1);
+        InjectAsyncDropTest.awaitReceived(RETURN_RECEIVED, 2);
+        Assertions.assertEquals(Collections.singletonList(0), HEAD_RECEIVED);
+    }
+
+    @Test
+    void asyncArityTest() {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(ArityHooks.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> loader.loadClass(TARGET));
+    }
+
+    @SuppressWarnings("unused")
+    @Async(capacity = 8, backpressure = Backpressure.BLOCK, virtualThread = false)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+    public static void injectAsyncOverload(Object self, String[][] str, int i) {
+        HEAD_RECEIVED.add(i);
+    }
+
+    @SuppressWarnings("unused")
+    @Async(capacity = 8, backpressure = Backpressure.BLOCK, virtualThread = false)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.RETURN)
+    public static void injectAsyncOverload(Object self, Object[] str, int i) {
+        RETURN_RECEIVED.add(i);
+    }
+
+    @ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+    public static class ArityHooks {
+
+        /**
+         * Misses the arguments of the target method, so the weave fails instead of the queue
+         */
+        @SuppressWarnings("unused")
+        @Async(capacity = 8, virtualThread = false)
+        @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+        public static void injectAsyncArity(Object self) {
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.hook.AsyncHookChannel;
+import io.github.brqnko.bytekin.injection.Async;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Backpressure;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+public class InjectAsyncSampleTest {
+
+    private static final int EVENTS = 32;
+    private static final String KEY = AsyncHookChannel.key(InjectAsyncSampleTest.class.getName(), "injectAsyncSample", "(Ljava/lang/Object;[[Ljava/lang/String;I)V");
+
+    private static final List<Integer> RECEIVED = new CopyOnWriteArrayList<>();
+    private static final CountDownLatch ENTERED = new CountDownLatch(1);
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    @Test
+    void injectAsyncSampleTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectAsyncSampleTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+        Object instance = clazz.getConstructor().newInstance();
+        Method method = clazz.getMethod("runGameLoopQ", String[][].class, int.class);
+
+        method.invoke(instance, new String[0][0], 0);
+        Assertions.assertTrue(ENTERED.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < EVENTS; i++) {
+            method.invoke(instance, new String[0][0], i);
+        }
+        RELEASE.countDown();
+
+        long dropped = AsyncHookChannel.getDroppedCount(KEY);
+        Assertions.assertTrue(dropped > 0);
+        InjectAsyncDropTest.awaitReceived(RECEIVED, (int) (EVENTS - dropped));
+
+        // once the queue is half full only every second event is kept, so there are gaps before the queue is full
+        Assertions.assertTrue(RECEIVED.get(RECEIVED.size() - 1) >= RECEIVED.size());
+        for (int i = 1; i < RECEIVED.size(); i++) {
+            Assertions.assertTrue(RECEIVED.get(i) > RECEIVED.get(i - 1));
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @Async(capacity = 8, backpressure = Backpressure.SAMPLE, sampleRate = 2, virtualThread = false)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+    public static void injectAsyncSample(Object self, String[][] str, int i) throws InterruptedException {
+        RECEIVED.add(i);
+        if (i == 0) {
+            ENTERED.countDown();
+            RELEASE.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+}
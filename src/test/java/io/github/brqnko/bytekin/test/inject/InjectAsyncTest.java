@@ -0,0 +1,74 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.injection.Async;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Backpressure;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+public class InjectAsyncTest {
+
+    private static final List<Integer> RECEIVED = new CopyOnWriteArrayList<>();
+    private static final CountDownLatch LATCH = new CountDownLatch(3);
+    private static volatile Thread hookThread;
+
+    @Test
+    void injectAsyncTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectAsyncTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+
+        // the hook never runs on the calling thread, so the target method is not affected
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Object instance = clazz.getConstructor().newInstance();
+                for (int i = 0; i < 3; i++) {
+                    String ret = (String) clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                            .invoke(instance, new String[0][0], i);
+                    Assertions.assertEquals("runGameLoop", ret);
+                }
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+        Assertions.assertEquals("Running game loop\nRunning game loop\nRunning game loop\n", capture);
+
+        Assertions.assertTrue(LATCH.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, RECEIVED.size());
+        Assertions.assertTrue(RECEIVED.containsAll(Arrays.asList(0, 1, 2)));
+        Assertions.assertNotEquals(Thread.currentThread(), hookThread);
+    }
+
+    /**
+     * Called on the consumer thread of the channel, the self reference is passed as is
+     */
+    @SuppressWarnings("unused")
+    @Async(capacity = 8, backpressure = Backpressure.BLOCK)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+    public static void injectAsync(Object self, String[][] str, int i) {
+        hookThread = Thread.currentThread();
+        RECEIVED.add(i);
+        LATCH.countDown();
+    }
+
+}
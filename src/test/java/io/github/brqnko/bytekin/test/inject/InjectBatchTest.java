@@ -0,0 +1,105 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.hook.HookBatch;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.Batch;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+public class InjectBatchTest {
+
+    private static final List<String> BATCHES = new ArrayList<>();
+
+    @Test
+    void injectBatchTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectBatchTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+        Object instance = clazz.getConstructor().newInstance();
+        for (int i = 0; i < 5; i++) {
+            String ret = (String) clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                    .invoke(instance, new String[0][0], i);
+            Assertions.assertEquals("runGameLoop", ret);
+        }
+
+        // full batches are delivered as soon as they fill up, the rest stays in the thread-local buffer
+        Assertions.assertEquals(2, BATCHES.size());
+
+        HookBatch.flush(InjectBatchTest.class.getName() + ".onBatch");
+        Assertions.assertEquals("[0, 1]\n[2, 3]\n[4]", String.join("\n", BATCHES));
+    }
+
+    @Test
+    void failingBatchTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(FailingHooks.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+        Object instance = clazz.getConstructor().newInstance();
+
+        List<Throwable> reported = new ArrayList<>();
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            // the call that fills the batch returns normally
+            String ret = (String) clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                    .invoke(instance, new String[0][0], 0);
+            Assertions.assertEquals("runGameLoop", ret);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+
+        Assertions.assertEquals(1, HookBatch.getFailedCount(FailingHooks.class.getName() + ".onFailingBatch"));
+        Assertions.assertEquals(1, reported.size());
+        Assertions.assertEquals("metrics are down", reported.get(0).getMessage());
+    }
+
+    /**
+     * Column 0 is the self reference, column 1 the String[][] and column 2 the int parameter
+     */
+    @SuppressWarnings("unused")
+    @Batch(size = 2)
+    @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+    public static void onBatch(HookBatch batch) {
+        List<Integer> values = new ArrayList<>();
+        for (int row = 0; row < batch.size(); row++) {
+            Assertions.assertNotNull(batch.getObject(0, row));
+            values.add(batch.getInt(2, row));
+        }
+        BATCHES.add(values.toString());
+    }
+
+    @ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget")
+    public static class FailingHooks {
+
+        @SuppressWarnings("unused")
+        @Batch(size = 1)
+        @Inject(methodName = "runGameLoop", methodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;", at = At.HEAD)
+        public static void onFailingBatch(HookBatch batch) {
+            throw new IllegalStateException("metrics are down");
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.data.Injection;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+public class InjectFusionTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget";
+    private static final String DESC = "([[Ljava/lang/String;I)Ljava/lang/String;";
+    private static final String OWNER = "io.github.brqnko.bytekin.test.inject.InjectFusionTest";
+
+    @Test
+    void fusedHooksTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "firstHead"))
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "secondHead"))
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.RETURN, OWNER, "firstReturn"))
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.RETURN, OWNER, "secondReturn"))
+                .fuseInjections()
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+
+        // one dispatcher for the HEAD hooks and one for the RETURN hooks
+        long dispatchers = Arrays.stream(clazz.getDeclaredMethods()).filter(Method::isSynthetic).count();
+        Assertions.assertEquals(2, dispatchers);
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                String ret = (String) clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                        .invoke(clazz.getConstructor().newInstance(), new String[0][0], 0);
+                Assertions.assertEquals("second return", ret);
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("first head\nsecond head\nRunning game loop\nfirst return\nsecond return\n", capture);
+    }
+
+    @Test
+    void unfusedByDefaultTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "firstHead"))
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "secondHead"))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+
+        // a retransformed class cannot add methods, so no dispatcher is added unless asked for
+        Assertions.assertEquals(0, Arrays.stream(clazz.getDeclaredMethods()).filter(Method::isSynthetic).count());
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                        .invoke(clazz.getConstructor().newInstance(), new String[0][0], 0);
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("first head\nsecond head\nRunning game loop\n", capture);
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo firstHead(InjectTestTargetQ self, String[][] str, int i) {
+        System.out.println("first head");
+        return CallbackInfo.empty();
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo secondHead(InjectTestTargetQ self, String[][] str, int i) {
+        System.out.println("second head");
+        return CallbackInfo.empty();
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo firstReturn(InjectTestTargetQ self, String[][] str, int i) {
+        System.out.println("first return");
+        return CallbackInfo.empty();
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo secondReturn(InjectTestTargetQ self, String[][] str, int i) {
+        System.out.println("second return");
+        return new CallbackInfo(true, "second return", null);
+    }
+
+}
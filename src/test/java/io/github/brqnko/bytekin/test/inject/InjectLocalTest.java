@@ -0,0 +1,96 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.data.MethodData;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.injection.Inject;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.inject.target.LocalTestTargetQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import io.github.brqnko.bytekin.util.MethodSizeReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.inject.target.LocalTestTarget")
+public class InjectLocalTest {
+
+    @Test
+    void injectLocalTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectLocalTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.inject.target.LocalTestTargetQ");
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Object instance = clazz.getConstructor().newInstance();
+
+                // the value returned by the HEAD hook reaches the RETURN hook of the same call
+                Assertions.assertEquals(6, clazz.getMethod("computeQ", int.class).invoke(instance, 3));
+
+                // and the THROW hook, which cancels the method instead of rethrowing
+                Assertions.assertEquals(-1, clazz.getMethod("computeQ", int.class).invoke(instance, -5));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Computing 3\nReturn 1003\nThrow negative 995\n", capture);
+    }
+
+    @Test
+    void addedLocalsTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InjectLocalTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.endsWith("LocalTestTargetQ")) {
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+        loader.loadClass("io.github.brqnko.bytekin.test.inject.target.LocalTestTargetQ");
+
+        // this and i, then the shared long, the CallbackInfo and the exception right after them
+        int maxLocals = MethodSizeReader.readMaxLocals(new ClassReader(transformed.get())).get(new MethodData("computeQ", "(I)I"));
+        Assertions.assertEquals(2 + 2 + 1 + 1, maxLocals);
+    }
+
+    @SuppressWarnings("unused")
+    @Inject(methodName = "compute", methodDesc = "(I)I", at = At.HEAD, local = "start")
+    public static long head(LocalTestTargetQ self, int i) {
+        return 1000L + i;
+    }
+
+    @SuppressWarnings("unused")
+    @Inject(methodName = "compute", methodDesc = "(I)I", at = At.RETURN, local = "start")
+    public static CallbackInfo onReturn(LocalTestTargetQ self, int i, long start) {
+        System.out.println("Return " + start);
+        return CallbackInfo.empty();
+    }
+
+    @SuppressWarnings("unused")
+    @Inject(methodName = "compute", methodDesc = "(I)I", at = At.THROW, local = "start")
+    public static CallbackInfo onThrow(LocalTestTargetQ self, int i, Throwable throwable, long start) {
+        System.out.println("Throw " + throwable.getMessage() + " " + start);
+        return new CallbackInfo(true, -1, null);
+    }
+
+}
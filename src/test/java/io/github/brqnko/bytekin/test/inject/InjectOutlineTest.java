@@ -0,0 +1,96 @@
+package io.github.brqnko.bytekin.test.inject;
+
+import io.github.brqnko.bytekin.data.InlineThreshold;
+import io.github.brqnko.bytekin.data.Injection;
+import io.github.brqnko.bytekin.injection.At;
+import io.github.brqnko.bytekin.injection.CallbackInfo;
+import io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InjectOutlineTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.inject.target.InjectTestTarget";
+    private static final String DESC = "([[Ljava/lang/String;I)Ljava/lang/String;";
+    private static final String OWNER = "io.github.brqnko.bytekin.test.inject.InjectOutlineTest";
+
+    private static Class<?> load(BytekinTransformer transformer) throws Exception {
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+        return loader.loadClass("io.github.brqnko.bytekin.test.inject.target.InjectTestTargetQ");
+    }
+
+    @Test
+    void sizeReportTest() throws Exception {
+        List<int[]> sizes = new ArrayList<>();
+        List<InlineThreshold> crossed = new ArrayList<>();
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .sizeListener((className, method, sizeBefore, sizeAfter, thresholds) -> {
+                    Assertions.assertEquals("runGameLoopQ", method.getName());
+                    sizes.add(new int[]{sizeBefore, sizeAfter});
+                    crossed.addAll(thresholds);
+                })
+                // a HEAD and a RETURN hook take the small target over the inlining limit
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "head"))
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.RETURN, OWNER, "head"))
+                .build();
+
+        load(transformer);
+
+        Assertions.assertEquals(1, sizes.size());
+        Assertions.assertTrue(sizes.get(0)[0] <= InlineThreshold.MAX_INLINE_SIZE.getLimit());
+        Assertions.assertTrue(sizes.get(0)[1] > InlineThreshold.MAX_INLINE_SIZE.getLimit());
+        Assertions.assertEquals(Arrays.asList(InlineThreshold.MAX_INLINE_SIZE), crossed);
+    }
+
+    @Test
+    void outlineTest() throws Exception {
+        int[] inlined = new int[1];
+        int[] outlined = new int[1];
+        load(new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .sizeListener((className, method, sizeBefore, sizeAfter, thresholds) -> inlined[0] = sizeAfter)
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "head"))
+                .build());
+        Class<?> clazz = load(new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .sizeListener((className, method, sizeBefore, sizeAfter, thresholds) -> outlined[0] = sizeAfter)
+                .outlineInjections()
+                .inject(TARGET, new Injection("runGameLoop", DESC, At.HEAD, OWNER, "head"))
+                .build());
+
+        // the single hook is called through a dispatcher, so the target keeps less of the boilerplate
+        Assertions.assertEquals(1, Arrays.stream(clazz.getDeclaredMethods()).filter(Method::isSynthetic).count());
+        Assertions.assertTrue(outlined[0] < inlined[0]);
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                String ret = (String) clazz.getMethod("runGameLoopQ", String[][].class, int.class)
+                        .invoke(clazz.getConstructor().newInstance(), new String[0][0], 0);
+                Assertions.assertEquals("runGameLoop", ret);
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("head\nRunning game loop\n", capture);
+    }
+
+    @SuppressWarnings("unused")
+    public static CallbackInfo head(InjectTestTargetQ self, String[][] str, int i) {
+        System.out.println("head");
+        return CallbackInfo.empty();
+    }
+}
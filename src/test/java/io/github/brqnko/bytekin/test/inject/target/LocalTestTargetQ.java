@@ -0,0 +1,13 @@
+package io.github.brqnko.bytekin.test.inject.target;
+
+@SuppressWarnings("unused")
+public class LocalTestTargetQ {
+
+    public int computeQ(int i) {
+        if (i < 0) {
+            throw new IllegalArgumentException("negative");
+        }
+        System.out.println("Computing " + i);
+        return i * 2;
+    }
+}
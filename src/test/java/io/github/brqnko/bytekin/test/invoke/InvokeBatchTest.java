@@ -0,0 +1,94 @@
+package io.github.brqnko.bytekin.test.invoke;
+
+import io.github.brqnko.bytekin.hook.HookBatch;
+import io.github.brqnko.bytekin.injection.Batch;
+import io.github.brqnko.bytekin.injection.Invoke;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.injection.Shift;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.invoke.target.InvokeTestTarget")
+public class InvokeBatchTest {
+
+    private static final List<String> BATCHES = new ArrayList<>();
+
+    @Test
+    void invokeBatchTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(InvokeBatchTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass("io.github.brqnko.bytekin.test.invoke.target.InvokeTestTargetQ");
+        Object instance = clazz.getConstructor().newInstance();
+        Method method = clazz.getMethod("runGameLoopQ", String[][].class, int.class);
+
+        // the hook cannot change the call, so the invoked method still prints its arguments
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    method.invoke(instance, new String[][]{{"arg " + i}}, i);
+                }
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+        Assertions.assertEquals("before invoke\narg 0\nafter invoke\nbefore invoke\narg 1\nafter invoke\nbefore invoke\narg 2\nafter invoke\n", capture);
+        Assertions.assertEquals(1, BATCHES.size());
+
+        // the call of a thread that has exited is still delivered by the next flush
+        Thread thread = new Thread(() -> {
+            try {
+                method.invoke(instance, new String[][]{{"arg 3"}}, 3);
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        HookBatch.flush(InvokeBatchTest.class.getName() + ".onBatch");
+        Assertions.assertEquals(3, BATCHES.size());
+        Assertions.assertEquals("[0, 1]", BATCHES.get(0));
+        Assertions.assertTrue(BATCHES.subList(1, 3).contains("[2]"));
+        Assertions.assertTrue(BATCHES.subList(1, 3).contains("[3]"));
+    }
+
+    /**
+     * Column 0 is the self reference, columns 1 and 2 the parameters of the target method and columns 3 and 4 the invoke arguments
+     */
+    @SuppressWarnings("unused")
+    @Batch(size = 2)
+    @Invoke(
+            targetMethodName = "runGameLoop",
+            targetMethodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;",
+            invokeMethodOwner = "io.github.brqnko.bytekin.test.invoke.target.InvokeTestTarget",
+            invokeMethodName = "invokeTarget",
+            invokeMethodDesc = "([[Ljava/lang/String;I)Ljava/lang/String;",
+            shift = Shift.BEFORE
+    )
+    public static void onBatch(HookBatch batch) {
+        List<Integer> values = new ArrayList<>();
+        for (int row = 0; row < batch.size(); row++) {
+            Assertions.assertNotNull(batch.getObject(0, row));
+            Assertions.assertEquals(batch.getInt(2, row), batch.getInt(4, row));
+            Assertions.assertEquals("arg " + batch.getInt(4, row), ((String[][]) batch.getObject(3, row))[0][0]);
+            values.add(batch.getInt(4, row));
+        }
+        BATCHES.add(values.toString());
+    }
+
+}
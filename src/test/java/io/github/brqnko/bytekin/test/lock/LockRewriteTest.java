@@ -0,0 +1,241 @@
+package io.github.brqnko.bytekin.test.lock;
+
+import io.github.brqnko.bytekin.data.LockRewrite;
+import io.github.brqnko.bytekin.injection.LockStrategy;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.injection.RewriteLock;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.lock.target.LockTestTarget")
+public class LockRewriteTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.lock.target.LockTestTarget";
+    private static final String OTHER_TARGET = "io.github.brqnko.bytekin.test.lock.target.LockTestOtherTarget";
+
+    @Test
+    void stripedLockTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(LockRewriteTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Object instance = clazz.getConstructor().newInstance();
+        Method blockHeld = clazz.getMethod("blockHeldQ", String.class);
+        Method methodHeld = clazz.getMethod("methodHeldQ", String.class);
+        Method fail = clazz.getMethod("failQ", String.class);
+
+        // the monitor is never taken anymore, and the synchronized flag is gone
+        Assertions.assertFalse((boolean) blockHeld.invoke(instance, "a"));
+        Assertions.assertFalse((boolean) methodHeld.invoke(instance, "a"));
+        Assertions.assertFalse(Modifier.isSynchronized(methodHeld.getModifiers()));
+
+        // the handler that released the monitor releases the stripe, so other threads can still take it
+        InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class, () -> fail.invoke(instance, "a"));
+        Assertions.assertEquals("fail a", e.getCause().getMessage());
+
+        // calls with the same key still exclude each other
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 10000; j++) {
+                        blockHeld.invoke(instance, "a");
+                        methodHeld.invoke(instance, "a");
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+
+        Assertions.assertEquals(2 + 4 * 10000 * 2, clazz.getMethod("getCountQ").invoke(instance));
+    }
+
+    @Test
+    void removeLockTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .rewriteLock(TARGET, new LockRewrite("readHeld", "()Z", LockStrategy.NONE, 0, 1))
+                .rewriteLock(TARGET, new LockRewrite("methodHeld", "(Ljava/lang/String;)Z", LockStrategy.READ, 0, 16))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Object instance = clazz.getConstructor().newInstance();
+
+        Assertions.assertFalse((boolean) clazz.getMethod("readHeldQ").invoke(instance));
+        Assertions.assertFalse((boolean) clazz.getMethod("methodHeldQ", String.class).invoke(instance, "a"));
+
+        // methods that are not rewritten keep their monitor
+        Assertions.assertTrue((boolean) clazz.getMethod("blockHeldQ", String.class).invoke(instance, "a"));
+    }
+
+    @Test
+    void nestedLockTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .rewriteLock(TARGET, new LockRewrite("blockHeld", "(Ljava/lang/String;)Z", LockStrategy.STRIPED, 0, 64))
+                .rewriteLock(TARGET, new LockRewrite("reenter", "(Ljava/lang/String;)Z", LockStrategy.STRIPED, 0, 64))
+                .rewriteLock(TARGET, new LockRewrite("readHeld", "()Z", LockStrategy.READ, 0, 16))
+                .rewriteLock(TARGET, new LockRewrite("writeThenRead", "()Z", LockStrategy.WRITE, 0, 16))
+                .rewriteLock(TARGET, new LockRewrite("readThenWrite", "()Z", LockStrategy.READ, 0, 16))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Object instance = clazz.getConstructor().newInstance();
+        Method writeThenRead = clazz.getMethod("writeThenReadQ");
+
+        // the same monitor and key choose the same stripe, which the thread can take again
+        Assertions.assertFalse((boolean) clazz.getMethod("reenterQ", String.class).invoke(instance, "a"));
+        Assertions.assertEquals(1, clazz.getMethod("getCountQ").invoke(instance));
+
+        // a writer may read the same monitor
+        Assertions.assertFalse((boolean) writeThenRead.invoke(instance));
+
+        // a reader may not write, the read lock cannot be upgraded
+        InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class,
+                () -> clazz.getMethod("readThenWriteQ").invoke(instance));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+
+        // the read lock was released by the handler, so another thread can still write
+        Thread thread = new Thread(() -> {
+            try {
+                writeThenRead.invoke(instance);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        thread.start();
+        thread.join(10000);
+        Assertions.assertFalse(thread.isAlive());
+    }
+
+    @Test
+    void sharedMonitorTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .rewriteLock(TARGET, new LockRewrite("count", "([ILjava/lang/String;)V", LockStrategy.STRIPED, 1, 64))
+                .rewriteLock(OTHER_TARGET, new LockRewrite("countKey", "([ILjava/lang/String;)V", LockStrategy.STRIPED, 1, 4))
+                .rewriteLock(OTHER_TARGET, new LockRewrite("count", "([I)V", LockStrategy.WRITE, 0, 16))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Class<?> otherClazz = loader.loadClass(OTHER_TARGET + "Q");
+        Object instance = clazz.getConstructor().newInstance();
+        Object otherInstance = otherClazz.getConstructor().newInstance();
+        Method count = clazz.getMethod("countQ", int[].class, String.class);
+        Method otherCountKey = otherClazz.getMethod("countKeyQ", int[].class, String.class);
+        Method otherCount = otherClazz.getMethod("countQ", int[].class);
+
+        // methods of different classes, strategies and stripes still exclude each other on the same monitor and key
+        int[] counter = new int[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 10000; j++) {
+                        count.invoke(instance, counter, "a");
+                        otherCountKey.invoke(otherInstance, counter, "a");
+                        otherCount.invoke(otherInstance, (Object) counter);
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+
+        Assertions.assertEquals(4 * 10000 * 3, counter[0]);
+    }
+
+    @Test
+    void unrelatedMonitorTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .rewriteLock(TARGET, new LockRewrite("readOnThenWrite", "(Ljava/lang/Object;Ljava/lang/Object;)Z", LockStrategy.READ, 0, 16))
+                .rewriteLock(TARGET, new LockRewrite("writeOn", "(Ljava/lang/Object;)Z", LockStrategy.WRITE, 0, 16))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Object instance = clazz.getConstructor().newInstance();
+        Method readOnThenWrite = clazz.getMethod("readOnThenWriteQ", Object.class, Object.class);
+
+        // holding the read side of one monitor never blocks the write side of another
+        Object read = new Object();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertFalse((boolean) readOnThenWrite.invoke(instance, read, new Object()));
+        }
+    }
+
+    @Test
+    void waitRejectedTestWithoutAnnotation() {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .rewriteLock(TARGET, new LockRewrite("waitHeld", "()V", LockStrategy.WRITE, 0, 1))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // wait needs the monitor that is never locked anymore
+        Assertions.assertThrows(IllegalStateException.class, () -> loader.loadClass(TARGET + "Q"));
+    }
+
+    @SuppressWarnings("unused")
+    @RewriteLock(methodName = "blockHeld", methodDesc = "(Ljava/lang/String;)Z", strategy = LockStrategy.STRIPED)
+    public static void blockHeld() {
+    }
+
+    @SuppressWarnings("unused")
+    @RewriteLock(methodName = "methodHeld", methodDesc = "(Ljava/lang/String;)Z", strategy = LockStrategy.STRIPED)
+    public static void methodHeld() {
+    }
+
+    @SuppressWarnings("unused")
+    @RewriteLock(methodName = "fail", methodDesc = "(Ljava/lang/String;)V", strategy = LockStrategy.STRIPED)
+    public static void fail() {
+    }
+
+}
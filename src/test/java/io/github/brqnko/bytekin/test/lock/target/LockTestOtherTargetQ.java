@@ -0,0 +1,17 @@
+package io.github.brqnko.bytekin.test.lock.target;
+
+@SuppressWarnings("unused")
+public class LockTestOtherTargetQ {
+
+    public void countQ(int[] counter) {
+        synchronized (counter) {
+            counter[0]++;
+        }
+    }
+
+    public void countKeyQ(int[] counter, String key) {
+        synchronized (counter) {
+            counter[0]++;
+        }
+    }
+}
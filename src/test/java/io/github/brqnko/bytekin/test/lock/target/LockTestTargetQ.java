@@ -0,0 +1,77 @@
+package io.github.brqnko.bytekin.test.lock.target;
+
+@SuppressWarnings("unused")
+public class LockTestTargetQ {
+
+    private int count;
+
+    public boolean blockHeldQ(String key) {
+        synchronized (this) {
+            count++;
+            return Thread.holdsLock(this);
+        }
+    }
+
+    public synchronized boolean methodHeldQ(String key) {
+        count++;
+        return Thread.holdsLock(this);
+    }
+
+    public void failQ(String key) {
+        synchronized (this) {
+            throw new IllegalStateException("fail " + key);
+        }
+    }
+
+    public boolean readHeldQ() {
+        synchronized (this) {
+            return Thread.holdsLock(this);
+        }
+    }
+
+    public boolean reenterQ(String key) {
+        synchronized (this) {
+            return blockHeldQ(key);
+        }
+    }
+
+    public boolean writeThenReadQ() {
+        synchronized (this) {
+            return readHeldQ();
+        }
+    }
+
+    public boolean readThenWriteQ() {
+        synchronized (this) {
+            return writeThenReadQ();
+        }
+    }
+
+    public void waitHeldQ() throws InterruptedException {
+        synchronized (this) {
+            wait(1);
+        }
+    }
+
+    public void countQ(int[] counter, String key) {
+        synchronized (counter) {
+            counter[0]++;
+        }
+    }
+
+    public boolean readOnThenWriteQ(Object read, Object write) {
+        synchronized (read) {
+            return writeOnQ(write);
+        }
+    }
+
+    public boolean writeOnQ(Object monitor) {
+        synchronized (monitor) {
+            return Thread.holdsLock(monitor);
+        }
+    }
+
+    public int getCountQ() {
+        return count;
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.brqnko.bytekin.test.mapping;
+
+import io.github.brqnko.bytekin.mapping.impl.TextMappingProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class TextMappingProviderTest {
+
+    private static final String MAPPING = String.join("\n",
+            "# a comment",
+            "class net.example.Player a",
+            "class net.example.World b",
+            "",
+            "method net.example.Player damage (Lnet/example/World;F)V c",
+            "field net.example.Player health F d");
+
+    @Test
+    void textMappingTest() throws IOException {
+        TextMappingProvider mapping = new TextMappingProvider(new StringReader(MAPPING));
+
+        Assertions.assertEquals("a", mapping.getClassName("net.example.Player"));
+        Assertions.assertEquals("java.lang.String", mapping.getClassName("java.lang.String"));
+
+        // members are found by the original and the mapped class name
+        Assertions.assertEquals("c", mapping.getMethodName("net.example.Player", "damage", "(Lnet/example/World;F)V"));
+        Assertions.assertEquals("c", mapping.getMethodName("a", "damage", "(Lnet/example/World;F)V"));
+        Assertions.assertEquals("d", mapping.getFieldName("a", "health", "F"));
+        Assertions.assertEquals("heal", mapping.getMethodName("a", "heal", "()V"));
+
+        Assertions.assertEquals("(Lb;[La;Ljava/lang/String;I)La;", mapping.getDesc("(Lnet/example/World;[Lnet/example/Player;Ljava/lang/String;I)Lnet/example/Player;"));
+    }
+
+    @Test
+    void invalidLineTest() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TextMappingProvider(new StringReader("class only-one-name")));
+    }
+}
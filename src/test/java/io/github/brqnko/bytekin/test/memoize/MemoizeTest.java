@@ -0,0 +1,149 @@
+package io.github.brqnko.bytekin.test.memoize;
+
+import io.github.brqnko.bytekin.data.Memoization;
+import io.github.brqnko.bytekin.injection.Memoize;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.memoize.target.MemoizeTestTarget")
+public class MemoizeTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.memoize.target.MemoizeTestTarget";
+
+    @Test
+    void memoizeTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(MemoizeTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Method square = clazz.getMethod("squareQ", int.class);
+        Method join = clazz.getMethod("joinQ", String.class, long.class);
+        Method fail = clazz.getMethod("failQ", int.class);
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Object instance = clazz.getConstructor().newInstance();
+
+                // a single int parameter of a static method is keyed without boxing
+                Assertions.assertEquals(9, square.invoke(null, 3));
+                Assertions.assertEquals(9, square.invoke(null, 3));
+                Assertions.assertEquals(16, square.invoke(null, 4));
+
+                // other methods are keyed on the receiver and all arguments
+                Assertions.assertEquals("a1", join.invoke(instance, "a", 1L));
+                Assertions.assertEquals("a1", join.invoke(instance, "a", 1L));
+                Assertions.assertEquals("a1", join.invoke(clazz.getConstructor().newInstance(), "a", 1L));
+
+                // failures are not cached
+                for (int i = 0; i < 2; i++) {
+                    InvocationTargetException e = Assertions.assertThrows(InvocationTargetException.class, () -> fail.invoke(null, 5));
+                    Assertions.assertEquals("fail 5", e.getCause().getMessage());
+                }
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Computing square 3\nComputing square 4\nComputing join a1\nComputing join a1\nComputing fail 5\nComputing fail 5\n", capture);
+    }
+
+    @Test
+    void memoizeSingleFlightTestWithoutAnnotation() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .memoize(TARGET, new Memoization("slow", "(J)J", 16, 0))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Method slow = clazz.getMethod("slowQ", long.class);
+
+        // concurrent misses of the same key run the original code only once
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger correct = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    if ((long) slow.invoke(null, 7L) == 8L) {
+                        correct.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertEquals(8, correct.get());
+        Assertions.assertEquals(1, ((AtomicInteger) clazz.getField("CALLS").get(null)).get());
+    }
+
+    @Test
+    void memoizeSeparateLoadersTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(MemoizeTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        // the same class loaded twice has its own cache, a value cached by one is never returned by the other
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                for (int i = 0; i < 2; i++) {
+                    TestClassLoader loader = new TestClassLoader(
+                            Test.class.getClassLoader(),
+                            (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+                    Method square = loader.loadClass(TARGET + "Q").getMethod("squareQ", int.class);
+                    Assertions.assertEquals(36, square.invoke(null, 6));
+                    Assertions.assertEquals(36, square.invoke(null, 6));
+                }
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Computing square 6\nComputing square 6\n", capture);
+    }
+
+    @SuppressWarnings("unused")
+    @Memoize(methodName = "square", methodDesc = "(I)I")
+    public static void square() {
+    }
+
+    @SuppressWarnings("unused")
+    @Memoize(methodName = "join", methodDesc = "(Ljava/lang/String;J)Ljava/lang/String;", maximumSize = 2)
+    public static void join() {
+    }
+
+    @SuppressWarnings("unused")
+    @Memoize(methodName = "fail", methodDesc = "(I)I")
+    public static void fail() {
+    }
+
+}
@@ -0,0 +1,30 @@
+package io.github.brqnko.bytekin.test.memoize.target;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SuppressWarnings("unused")
+public class MemoizeTestTargetQ {
+
+    public static final AtomicInteger CALLS = new AtomicInteger();
+
+    public static int squareQ(int i) {
+        System.out.println("Computing square " + i);
+        return i * i;
+    }
+
+    public String joinQ(String prefix, long i) {
+        System.out.println("Computing join " + prefix + i);
+        return prefix + i;
+    }
+
+    public static long slowQ(long i) throws InterruptedException {
+        CALLS.incrementAndGet();
+        Thread.sleep(200);
+        return i + 1;
+    }
+
+    public static int failQ(int i) {
+        System.out.println("Computing fail " + i);
+        throw new IllegalStateException("fail " + i);
+    }
+}
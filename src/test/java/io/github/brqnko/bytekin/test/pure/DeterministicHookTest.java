@@ -0,0 +1,105 @@
+package io.github.brqnko.bytekin.test.pure;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.injection.Deterministic;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeterministicHookTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.pure.target.GeneratedTarget";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.pure.DeterministicHookTest";
+
+    private static final AtomicInteger CALLS = new AtomicInteger();
+
+    /**
+     * Dynamic constants need a Java 11 class file, so the target is generated instead of compiled
+     */
+    private static byte[] generateTarget(int version) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        writer.visit(version, Opcodes.ACC_PUBLIC, TARGET.replace('.', '/'), null, "java/lang/Object", null);
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "greeting", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("hello");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "limit", "()I", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(100000);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static Class<?> load(int version) {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .modifyConstant(TARGET, new ConstantModification("greeting", "()Ljava/lang/String;", "hello", -1, HOOKS, "greeting"))
+                .modifyConstant(TARGET, new ConstantModification("limit", "()I", 100000, -1, HOOKS, "limit"))
+                .build();
+        byte[] bytes = transformer.transform(TARGET, generateTarget(version), Opcodes.ASM9);
+
+        return new GeneratedClassLoader().define(TARGET, bytes);
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader() {
+            super(DeterministicHookTest.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Test
+    void dynamicConstantTest() throws Exception {
+        CALLS.set(0);
+        Class<?> clazz = load(Opcodes.V11);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("hello world", clazz.getMethod("greeting").invoke(null));
+            Assertions.assertEquals(200000, clazz.getMethod("limit").invoke(null));
+        }
+
+        // each site called its hook on its first execution only
+        Assertions.assertEquals(2, CALLS.get());
+    }
+
+    @Test
+    void oldClassFileTest() throws Exception {
+        CALLS.set(0);
+        Class<?> clazz = load(Opcodes.V1_8);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("hello world", clazz.getMethod("greeting").invoke(null));
+        }
+
+        // without dynamic constants the hook is called on every execution
+        Assertions.assertEquals(3, CALLS.get());
+    }
+
+    @Deterministic
+    @SuppressWarnings("unused")
+    public static String greeting(String value) {
+        CALLS.incrementAndGet();
+        return value + " world";
+    }
+
+    @Deterministic
+    @SuppressWarnings("unused")
+    public static int limit(int value) {
+        CALLS.incrementAndGet();
+        return value * 2;
+    }
+}
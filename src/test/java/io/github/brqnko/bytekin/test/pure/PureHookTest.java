@@ -0,0 +1,113 @@
+package io.github.brqnko.bytekin.test.pure;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.Pure;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PureHookTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.pure.target.PureTestTarget";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.pure.PureHookTest";
+
+    private static final AtomicInteger EVALUATIONS = new AtomicInteger();
+
+    @Test
+    void pureHookTest() throws Exception {
+        EVALUATIONS.set(0);
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect(TARGET, new RedirectData("limit", "()I", RedirectType.FIELD_GET, TARGET, "LIMIT", "I", -1, HOOKS, "limit"))
+                .modifyConstant(TARGET, new ConstantModification("greeting", "()Ljava/lang/String;", "hello", -1, HOOKS, "greeting"))
+                .build();
+
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.equals(TARGET + "Q")) {
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(1000, clazz.getMethod("limitQ").invoke(null));
+            Assertions.assertEquals("hello world", clazz.getMethod("greetingQ").invoke(null));
+        }
+
+        // both hooks ran once while the class was transformed, the class does not call them
+        Assertions.assertEquals(2, EVALUATIONS.get());
+        Assertions.assertFalse(new String(transformed.get(), StandardCharsets.ISO_8859_1).contains("PureHookTest"));
+    }
+
+    @Test
+    void pureHookWithoutConstantTest() throws Exception {
+        EVALUATIONS.set(0);
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect(TARGET, new RedirectData("boxed", "()Ljava/lang/Integer;", RedirectType.FIELD_GET, TARGET, "BOXED", "Ljava/lang/Integer;", -1, HOOKS, "boxed"))
+                .redirect(TARGET, new RedirectData("unit", "()Ljava/util/concurrent/TimeUnit;", RedirectType.FIELD_GET, TARGET, "UNIT", "Ljava/util/concurrent/TimeUnit;", -1, HOOKS, "unit"))
+                .build();
+
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.equals(TARGET + "Q")) {
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+        Assertions.assertEquals(2000, clazz.getMethod("boxedQ").invoke(null));
+        Assertions.assertEquals(TimeUnit.MINUTES, clazz.getMethod("unitQ").invoke(null));
+
+        // a boxed value or an enum cannot be written as a constant, so the class still calls the hooks
+        Assertions.assertEquals(2, EVALUATIONS.get());
+        Assertions.assertTrue(new String(transformed.get(), StandardCharsets.ISO_8859_1).contains("PureHookTest"));
+    }
+
+    @Pure
+    @SuppressWarnings("unused")
+    public static Integer boxed() {
+        EVALUATIONS.incrementAndGet();
+        return 2000;
+    }
+
+    @Pure
+    @SuppressWarnings("unused")
+    public static TimeUnit unit() {
+        EVALUATIONS.incrementAndGet();
+        return TimeUnit.MINUTES;
+    }
+
+    @Pure
+    @SuppressWarnings("unused")
+    public static int limit() {
+        EVALUATIONS.incrementAndGet();
+        return 1000;
+    }
+
+    @Pure
+    @SuppressWarnings("unused")
+    public static String greeting(String value) {
+        EVALUATIONS.incrementAndGet();
+        return value + " world";
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.brqnko.bytekin.test.pure.target;
+
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings("unused")
+public class PureTestTargetQ {
+
+    public static int LIMITQ = 10;
+
+    public static int limitQ() {
+        return LIMITQ;
+    }
+
+    public static Integer BOXEDQ = 10;
+
+    public static TimeUnit UNITQ = TimeUnit.SECONDS;
+
+    public static Integer boxedQ() {
+        return BOXEDQ;
+    }
+
+    public static TimeUnit unitQ() {
+        return UNITQ;
+    }
+
+    public static String greetingQ() {
+        return "hello";
+    }
+}
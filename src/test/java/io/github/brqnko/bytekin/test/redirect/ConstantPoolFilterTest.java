@@ -0,0 +1,80 @@
+package io.github.brqnko.bytekin.test.redirect;
+
+import io.github.brqnko.bytekin.data.ConstantModification;
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.util.ClassFiles;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+public class ConstantPoolFilterTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.redirect.target.FilterTestTargetQ";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.redirect.ConstantPoolFilterTest";
+
+    private static RedirectData redirect(String name, String desc) {
+        return new RedirectData("mixQ", "(J)J", RedirectType.METHOD, "java.lang.Math", name, desc, -1, HOOKS, "abs");
+    }
+
+    // without a mapping, so the names of the JDK stay as they are
+    @Test
+    void skipWithoutCallSiteTest() throws Exception {
+        byte[] bytes = ClassFiles.read(TARGET);
+        byte[] result = new BytekinTransformer.Builder()
+                .redirect(TARGET, redirect("floorMod", "(JJ)J"))
+                .build()
+                .transform(TARGET, bytes, Opcodes.ASM9);
+
+        // the class never calls Math.floorMod, so the input is returned without being parsed
+        Assertions.assertSame(bytes, result);
+    }
+
+    @Test
+    void transformWithCallSiteTest() throws Exception {
+        byte[] bytes = ClassFiles.read(TARGET);
+        byte[] result = new BytekinTransformer.Builder()
+                .redirect(TARGET, redirect("abs", "(J)J"))
+                .build()
+                .transform(TARGET, bytes, Opcodes.ASM9);
+
+        Assertions.assertNotSame(bytes, result);
+    }
+
+    @Test
+    void constantTest() throws Exception {
+        byte[] original = ClassFiles.read(TARGET);
+
+        // the string constant is in the pool after the long and double constants, which take two entries
+        Assertions.assertNotSame(original, new BytekinTransformer.Builder()
+                .modifyConstant(TARGET, new ConstantModification("mixQ", "(J)J", "salt", -1, HOOKS, "salt"))
+                .build()
+                .transform(TARGET, original, Opcodes.ASM9));
+
+        Assertions.assertSame(original, new BytekinTransformer.Builder()
+                .modifyConstant(TARGET, new ConstantModification("mixQ", "(J)J", "pepper", -1, HOOKS, "salt"))
+                .build()
+                .transform(TARGET, original, Opcodes.ASM9));
+    }
+
+    @Test
+    void skipWithoutTargetMethodTest() throws Exception {
+        byte[] original = ClassFiles.read(TARGET);
+
+        Assertions.assertSame(original, new BytekinTransformer.Builder()
+                .modifyConstant(TARGET, new ConstantModification("mixQ", "(I)J", "salt", -1, HOOKS, "salt"))
+                .build()
+                .transform(TARGET, original, Opcodes.ASM9));
+    }
+
+    @SuppressWarnings("unused")
+    public static long abs(long value) {
+        return Math.abs(value);
+    }
+
+    @SuppressWarnings("unused")
+    public static String salt(String value) {
+        return value;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.brqnko.bytekin.test.redirect;
+
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.injection.Redirect;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.redirect.target.SquareQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.redirect.target.DevirtualizeTestTarget")
+public class DevirtualizeTest {
+
+    private static final String PACKAGE = "io.github.brqnko.bytekin.test.redirect.target.";
+
+    private static int totalArea(TestClassLoader loader) throws Exception {
+        Class<?> shape = loader.loadClass(PACKAGE + "ShapeQ");
+        Object shapes = Array.newInstance(shape, 3);
+        Array.set(shapes, 0, loader.loadClass(PACKAGE + "SquareQ").getConstructor(int.class).newInstance(3));
+        Array.set(shapes, 1, loader.loadClass(PACKAGE + "RectangleQ").getConstructor(int.class, int.class).newInstance(2, 5));
+        Array.set(shapes, 2, loader.loadClass(PACKAGE + "SquareQ").getConstructor(int.class).newInstance(1));
+
+        Class<?> clazz = loader.loadClass(PACKAGE + "DevirtualizeTestTargetQ");
+        return (int) clazz.getMethod("totalAreaQ", shapes.getClass(), int.class).invoke(null, shapes, 2);
+    }
+
+    @Test
+    void devirtualizeWithHookTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(DevirtualizeTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // squares take the hook, the rectangle falls back to the interface call
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(2 * (9 + 10 + 1), totalArea(loader));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Square area 9\nSquare area 1\n", capture);
+    }
+
+    @Test
+    void devirtualizeWithoutHookTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect(PACKAGE + "DevirtualizeTestTarget", new RedirectData(
+                        "totalArea", "([L" + (PACKAGE + "ShapeQ").replace('.', '/') + ";I)I",
+                        RedirectType.DEVIRTUALIZE, PACKAGE + "Shape", "area", "()I", -1,
+                        null, null, Linkage.STATIC, Arrays.asList(PACKAGE + "Square", PACKAGE + "Rectangle")))
+                .build();
+
+        AtomicReference<byte[]> transformed = new AtomicReference<>();
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> {
+                    byte[] result = transformer.transform(name, bytes, Opcodes.ASM9);
+                    if (name.endsWith("DevirtualizeTestTargetQ")) {
+                        transformed.set(result);
+                    }
+                    return result;
+                });
+
+        Assertions.assertEquals(2 * (9 + 10 + 1), totalArea(loader));
+
+        // the concrete receivers are only referenced by the guards
+        String constants = new String(transformed.get(), StandardCharsets.ISO_8859_1);
+        Assertions.assertTrue(constants.contains("target/SquareQ"));
+        Assertions.assertTrue(constants.contains("target/RectangleQ"));
+    }
+
+    @Test
+    void devirtualizeInterfaceReceiverTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect(PACKAGE + "DevirtualizeTestTarget", new RedirectData(
+                        "totalArea", "([L" + (PACKAGE + "ShapeQ").replace('.', '/') + ";I)I",
+                        RedirectType.DEVIRTUALIZE, PACKAGE + "Shape", "area", "()I", -1,
+                        null, null, Linkage.STATIC, Arrays.asList(PACKAGE + "Shape", PACKAGE + "Square")))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // an interface receiver is called through the interface instead of failing to link
+        Assertions.assertEquals(2 * (9 + 10 + 1), totalArea(loader));
+    }
+
+    @SuppressWarnings("unused")
+    @Redirect(
+            targetMethodName = "totalArea",
+            targetMethodDesc = "([Lio/github/brqnko/bytekin/test/redirect/target/ShapeQ;I)I",
+            owner = "io.github.brqnko.bytekin.test.redirect.target.Shape",
+            name = "area",
+            desc = "()I",
+            type = RedirectType.DEVIRTUALIZE,
+            receivers = "io.github.brqnko.bytekin.test.redirect.target.Square"
+    )
+    public static int area(SquareQ square) {
+        int area = square.areaQ();
+        System.out.println("Square area " + area);
+        return area;
+    }
+
+}
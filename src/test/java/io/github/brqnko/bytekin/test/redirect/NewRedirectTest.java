@@ -0,0 +1,161 @@
+package io.github.brqnko.bytekin.test.redirect;
+
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.injection.Linkage;
+import io.github.brqnko.bytekin.injection.ModifyClass;
+import io.github.brqnko.bytekin.injection.Redirect;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.test.redirect.target.PointQ;
+import io.github.brqnko.bytekin.test.util.PrintCapture;
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+@ModifyClass(className = "io.github.brqnko.bytekin.test.redirect.target.NewRedirectTestTarget")
+public class NewRedirectTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.redirect.target.NewRedirectTestTargetQ";
+
+    private static int invoke(TestClassLoader loader, String method, Class<?>[] types, Object... args) throws Exception {
+        Class<?> clazz = loader.loadClass(TARGET);
+        return (int) clazz.getMethod(method, types).invoke(null, args);
+    }
+
+    @Test
+    void newRedirectTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(NewRedirectTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(2 * (1 + 3 + 5), invoke(loader, "sumQ", new Class<?>[]{int.class}, 3));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Point 0 1\nPoint 1 2\nPoint 2 3\n", capture);
+    }
+
+    @Test
+    void newRedirectNestedTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(NewRedirectTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // without an ordinal only the first constructor call is redirected, the inner allocation finishes first
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(12 + 3, invoke(loader, "nestedQ", new Class<?>[0]));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Point 1 2\n", capture);
+    }
+
+    private static String nestedWithOrdinal(int ordinal, int expected) throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .redirect("io.github.brqnko.bytekin.test.redirect.target.NewRedirectTestTarget", new RedirectData(
+                        "nested", "()I",
+                        RedirectType.NEW, "io.github.brqnko.bytekin.test.redirect.target.Point", "<init>", "(II)V", ordinal,
+                        NewRedirectTest.class.getName(), "point", Linkage.STATIC))
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        return PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(expected, invoke(loader, "nestedQ", new Class<?>[0]));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+    }
+
+    @Test
+    void newRedirectOrdinalTest() throws Exception {
+        // the outer allocation calls the constructor second
+        Assertions.assertEquals("Point 11 3\n", nestedWithOrdinal(1, 22 + 6));
+
+        // the allocation of another constructor is not counted, so there is no third call
+        Assertions.assertEquals("", nestedWithOrdinal(2, 11 + 3));
+    }
+
+    @Test
+    void newRedirectOtherConstructorFirstTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder(NewRedirectTest.class)
+                .mapping(new QMappingProvider())
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // the first allocation calls another constructor, so it does not use up the redirect
+        String capture = PrintCapture.captureOutput(() -> {
+            try {
+                Assertions.assertEquals(3 + 2, invoke(loader, "otherFirstQ", new Class<?>[]{boolean.class}, true));
+                Assertions.assertEquals(4 + 2, invoke(loader, "otherFirstQ", new Class<?>[]{boolean.class}, false));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+        });
+
+        Assertions.assertEquals("Point 1 2\nPoint 1 2\n", capture);
+    }
+
+    @Redirect(
+            targetMethodName = "sum",
+            targetMethodDesc = "(I)I",
+            owner = "io.github.brqnko.bytekin.test.redirect.target.Point",
+            name = "<init>",
+            desc = "(II)V",
+            type = RedirectType.NEW
+    )
+    public static PointQ point(int x, int y) {
+        System.out.println("Point " + x + " " + y);
+        return new PointQ(x * 2, y * 2);
+    }
+
+    @Redirect(
+            targetMethodName = "nested",
+            targetMethodDesc = "()I",
+            owner = "io.github.brqnko.bytekin.test.redirect.target.Point",
+            name = "<init>",
+            desc = "(II)V",
+            type = RedirectType.NEW
+    )
+    public static PointQ nestedPoint(int x, int y) {
+        return point(x, y);
+    }
+
+    @Redirect(
+            targetMethodName = "otherFirst",
+            targetMethodDesc = "(Z)I",
+            owner = "io.github.brqnko.bytekin.test.redirect.target.Point",
+            name = "<init>",
+            desc = "(II)V",
+            type = RedirectType.NEW
+    )
+    public static PointQ otherFirstPoint(int x, int y) {
+        return point(x, y);
+    }
+
+}
@@ -0,0 +1,13 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+@SuppressWarnings("unused")
+public class DevirtualizeTestTargetQ {
+
+    public static int totalAreaQ(ShapeQ[] shapes, int scale) {
+        int total = 0;
+        for (ShapeQ shape : shapes) {
+            total += shape.areaQ() * scale;
+        }
+        return total;
+    }
+}
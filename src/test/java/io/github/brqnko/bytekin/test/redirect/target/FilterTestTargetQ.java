@@ -0,0 +1,10 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+@SuppressWarnings("unused")
+public class FilterTestTargetQ {
+
+    public static long mixQ(long value) {
+        double scale = 2.5;
+        return Math.abs(value * 0x123456789L) + (long) scale + "salt".length();
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+@SuppressWarnings("unused")
+public class NewRedirectTestTargetQ {
+
+    public static int sumQ(int count) {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            PointQ point = new PointQ(i, i + 1);
+            total += point.xQ() + point.yQ();
+        }
+        return total;
+    }
+
+    public static int nestedQ() {
+        PointQ point = new PointQ(new PointQ(1, 2).xQ() + 10, new PointQ(3).yQ());
+        return point.xQ() + point.yQ();
+    }
+
+    public static int otherFirstQ(boolean flag) {
+        PointQ first = new PointQ(flag ? 3 : 4);
+        PointQ second = new PointQ(1, 2);
+        return first.yQ() + second.xQ();
+    }
+}
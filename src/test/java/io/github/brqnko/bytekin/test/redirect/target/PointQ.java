@@ -0,0 +1,24 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+public final class PointQ {
+
+    private final int x;
+    private final int y;
+
+    public PointQ(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public PointQ(int value) {
+        this(value, value);
+    }
+
+    public int xQ() {
+        return x;
+    }
+
+    public int yQ() {
+        return y;
+    }
+}
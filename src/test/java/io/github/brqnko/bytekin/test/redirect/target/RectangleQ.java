@@ -0,0 +1,17 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+public final class RectangleQ implements ShapeQ {
+
+    private final int width;
+    private final int height;
+
+    public RectangleQ(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int areaQ() {
+        return width * height;
+    }
+}
@@ -0,0 +1,6 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+public interface ShapeQ {
+
+    int areaQ();
+}
@@ -0,0 +1,15 @@
+package io.github.brqnko.bytekin.test.redirect.target;
+
+public final class SquareQ implements ShapeQ {
+
+    private final int side;
+
+    public SquareQ(int side) {
+        this.side = side;
+    }
+
+    @Override
+    public int areaQ() {
+        return side * side;
+    }
+}
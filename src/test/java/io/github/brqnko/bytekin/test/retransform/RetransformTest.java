@@ -0,0 +1,61 @@
+package io.github.brqnko.bytekin.test.retransform;
+
+import io.github.brqnko.bytekin.data.RedirectData;
+import io.github.brqnko.bytekin.data.VariableModification;
+import io.github.brqnko.bytekin.injection.RedirectType;
+import io.github.brqnko.bytekin.injection.VariableTarget;
+import io.github.brqnko.bytekin.test.util.ClassFiles;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+public class RetransformTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.retransform.target.RetransformTestTargetQ";
+    private static final String HOOKS = "io.github.brqnko.bytekin.test.retransform.RetransformTest";
+
+    // without a mapping, so the names of the JDK stay as they are
+    private static BytekinTransformer transformer() {
+        return new BytekinTransformer.Builder()
+                .redirect(TARGET, new RedirectData("sumQ", "(I)I", RedirectType.METHOD, "java.lang.Math", "abs", "(I)I", 1, HOOKS, "keep"))
+                .modifyVariable(TARGET, new VariableModification("sumQ", "(I)I", VariableTarget.STORE, 1, -1, false, false, "I", HOOKS, "twice"))
+                .build();
+    }
+
+    @Test
+    void transformTwiceTest() throws Exception {
+        byte[] bytes = ClassFiles.read(TARGET);
+        BytekinTransformer transformer = transformer();
+
+        // the transformers count the call sites and stores of every method again, so the second class is the same
+        byte[] first = transformer.transform(TARGET, bytes, Opcodes.ASM9);
+        byte[] second = transformer.transform(TARGET, bytes, Opcodes.ASM9);
+        Assertions.assertArrayEquals(first, second);
+    }
+
+    @Test
+    void loadRetransformedTest() throws Exception {
+        BytekinTransformer transformer = transformer();
+        transformer.transform(TARGET, ClassFiles.read(TARGET), Opcodes.ASM9);
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+
+        // the second abs call keeps its sign and the second store is doubled: 3 + (3 - 10) * 2
+        Class<?> clazz = loader.loadClass(TARGET);
+        Assertions.assertEquals(-11, clazz.getMethod("sumQ", int.class).invoke(null, 3));
+    }
+
+    @SuppressWarnings("unused")
+    public static int keep(int value) {
+        return value;
+    }
+
+    @SuppressWarnings("unused")
+    public static int twice(int value) {
+        return value * 2;
+    }
+}
@@ -0,0 +1,11 @@
+package io.github.brqnko.bytekin.test.retransform.target;
+
+@SuppressWarnings("unused")
+public class RetransformTestTargetQ {
+
+    public static int sumQ(int value) {
+        int first = Math.abs(value);
+        int second = Math.abs(value - 10);
+        return first + second;
+    }
+}
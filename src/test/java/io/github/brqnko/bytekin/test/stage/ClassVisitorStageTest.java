@@ -0,0 +1,129 @@
+package io.github.brqnko.bytekin.test.stage;
+
+import io.github.brqnko.bytekin.test.util.QMappingProvider;
+import io.github.brqnko.bytekin.test.util.TestClassLoader;
+import io.github.brqnko.bytekin.transformer.BytekinTransformer;
+import io.github.brqnko.bytekin.transformer.api.IBytekinMethodTransformer;
+import io.github.brqnko.bytekin.transformer.visitor.BytekinMethodVisitor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClassVisitorStageTest {
+
+    private static final String TARGET = "io.github.brqnko.bytekin.test.stage.target.StageTarget";
+
+    /**
+     * Makes valueQ return 2 instead of 1
+     */
+    private static class ConstantTransformer implements IBytekinMethodTransformer {
+
+        @Override
+        public boolean transformInsn(MethodVisitor mv, BytekinMethodVisitor visitor, int opcode) {
+            if (opcode != Opcodes.ICONST_1) {
+                return false;
+            }
+            mv.visitInsn(Opcodes.ICONST_2);
+            return true;
+        }
+    }
+
+    /**
+     * Records the constants of every method and adds a method that returns a string
+     */
+    private static ClassVisitor addMethodStage(int api, ClassVisitor next, List<Integer> seen) {
+        return new ClassVisitor(api, next) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(api, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                    @Override
+                    public void visitInsn(int opcode) {
+                        if (opcode >= Opcodes.ICONST_0 && opcode <= Opcodes.ICONST_5) {
+                            seen.add(opcode - Opcodes.ICONST_0);
+                        }
+                        super.visitInsn(opcode);
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                MethodVisitor mv = super.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "stagedQ", "()Ljava/lang/String;", null, null);
+                mv.visitCode();
+                mv.visitLdcInsn("staged");
+                mv.visitInsn(Opcodes.ARETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+                super.visitEnd();
+            }
+        };
+    }
+
+    /**
+     * Replaces the string constants with their upper case
+     */
+    private static ClassVisitor upperCaseStage(int api, ClassVisitor next) {
+        return new ClassVisitor(api, next) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(api, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                    @Override
+                    public void visitLdcInsn(Object value) {
+                        super.visitLdcInsn(value instanceof String ? ((String) value).toUpperCase() : value);
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    void stageTest() throws Exception {
+        List<Integer> seen = new ArrayList<>();
+        AtomicInteger passes = new AtomicInteger();
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .transformListener((className, transformed) -> passes.incrementAndGet())
+                .transformMethod(TARGET, "value", "()I", new ConstantTransformer())
+                .visitClass(TARGET, (api, next) -> addMethodStage(api, next, seen))
+                .visitClass(TARGET, ClassVisitorStageTest::upperCaseStage)
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+
+        Assertions.assertEquals(1, passes.get());
+        Assertions.assertEquals(2, clazz.getMethod("valueQ").invoke(null));
+
+        // the first stage saw the transformed method, the second one the method the first stage added
+        Assertions.assertTrue(seen.contains(2));
+        Assertions.assertFalse(seen.contains(1));
+        Assertions.assertEquals("TARGET", clazz.getMethod("nameQ").invoke(null));
+        Assertions.assertEquals("STAGED", clazz.getMethod("stagedQ").invoke(null));
+    }
+
+    @Test
+    void stageOnlyTest() throws Exception {
+        BytekinTransformer transformer = new BytekinTransformer.Builder()
+                .mapping(new QMappingProvider())
+                .incrementalFrames()
+                .visitClass(TARGET, ClassVisitorStageTest::upperCaseStage)
+                .build();
+
+        TestClassLoader loader = new TestClassLoader(
+                Test.class.getClassLoader(),
+                (name, bytes) -> transformer.transform(name, bytes, Opcodes.ASM9));
+        Class<?> clazz = loader.loadClass(TARGET + "Q");
+
+        // a class with only a stage is not skipped by the constant pool filter
+        Assertions.assertEquals("TARGET", clazz.getMethod("nameQ").invoke(null));
+        Assertions.assertEquals(1, clazz.getMethod("valueQ").invoke(null));
+    }
+}
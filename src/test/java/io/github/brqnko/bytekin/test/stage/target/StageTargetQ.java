@@ -0,0 +1,13 @@
+package io.github.brqnko.bytekin.test.stage.target;
+
+@SuppressWarnings("unused")
+public class StageTargetQ {
+
+    public static int valueQ() {
+        return 1;
+    }
+
+    public static String nameQ() {
+        return "target";
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.brqnko.bytekin.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ClassFiles {
+
+    /**
+     * Reads the class file of a test class from the test classpath, to the end of the stream
+     *
+     * @param className the binary name of the class, with dots
+     */
+    public static byte[] read(String className) throws IOException {
+        String resource = className.replace('.', '/') + ".class";
+        try (InputStream stream = ClassFiles.class.getClassLoader().getResourceAsStream(resource)) {
+            if (stream == null) {
+                throw new IOException("Class file not found: " + resource);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -2,15 +2,15 @@ package io.github.brqnko.bytekin.test.util;
 
 import org.junit.jupiter.api.Assertions;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * A custom ClassLoader with customizable class transformation
  */
 public class TestClassLoader extends ClassLoader {
 
+    private static final String TEST_PACKAGE = "io.github.brqnko.bytekin.test.";
+
     private final ClassTransformer transformer;
 
     public TestClassLoader(ClassLoader parent, ClassTransformer transformer) {
@@ -20,8 +20,18 @@ public class TestClassLoader extends ClassLoader {
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
+        // bytekin runtime classes such as HookRegistry have to be shared with the test itself
+        if (!name.startsWith(TEST_PACKAGE)) {
+            return super.loadClass(name);
+        }
+
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded != null) {
+            return loaded;
+        }
+
         try {
-            byte[] classData = loadClassData(name.replaceAll("\\.", "/") + ".class");
+            byte[] classData = ClassFiles.read(name);
 
             byte[] transformed = transformer.apply(name, classData);
 
@@ -36,17 +46,6 @@ public class TestClassLoader extends ClassLoader {
         return super.loadClass(name);
     }
 
-    private byte[] loadClassData(String name) throws IOException {
-        InputStream stream = getClass().getClassLoader().getResourceAsStream(name);
-        assert stream != null;
-        int size = stream.available();
-        byte[] buff = new byte[size];
-        DataInputStream in = new DataInputStream(stream);
-        in.readFully(buff);
-        in.close();
-        return buff;
-    }
-
     @FunctionalInterface
     public interface ClassTransformer {
 